@@ -0,0 +1,127 @@
+package com.ankai.config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 限流配置
+ * 规则按顺序匹配，命中第一条即生效；启动时校验配置，容量或补充速率不为正数的规则会导致启动失败
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Data
+@Component
+@Validated
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    /**
+     * 是否启用限流
+     */
+    private boolean enabled = true;
+
+    /**
+     * 本地租约令牌的最长持有时间（毫秒），超时未用完的令牌作废
+     */
+    @Positive
+    private long leaseTtlMs = 1000;
+
+    /**
+     * 本地限流状态最多保留的key数量
+     */
+    @Positive
+    private int maxLocalKeys = 50000;
+
+    /**
+     * 限流规则
+     */
+    @Valid
+    private List<Rule> rules = new ArrayList<>();
+
+    /**
+     * 按路径匹配规则
+     *
+     * @param path 应用内路径
+     * @return 第一条匹配的规则，没有匹配时返回null
+     */
+    public Rule matchRule(String path) {
+        for (Rule rule : rules) {
+            if (PATH_MATCHER.match(rule.getPattern(), path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 限流规则
+     */
+    @Data
+    public static class Rule {
+
+        /**
+         * 规则名称，同时作为Redis key的一部分
+         */
+        @NotBlank
+        private String name;
+
+        /**
+         * 匹配路径（Ant风格，不含context-path）
+         */
+        @NotBlank
+        private String pattern;
+
+        /**
+         * 限流维度：user按登录用户（未登录时按IP），ip按客户端IP
+         */
+        @NotNull
+        private KeyType keyType = KeyType.USER;
+
+        /**
+         * 令牌桶容量（允许的突发请求数）
+         */
+        @Positive
+        private int capacity;
+
+        /**
+         * 每秒补充的令牌数
+         */
+        @Positive
+        private double refillPerSecond;
+
+        /**
+         * 每次从Redis租用到本地的令牌数，0表示按容量的1/10自动计算
+         */
+        @PositiveOrZero
+        private int leaseSize;
+
+        /**
+         * 实际租约大小
+         */
+        public int effectiveLeaseSize() {
+            return leaseSize > 0 ? Math.min(leaseSize, capacity) : Math.max(1, capacity / 10);
+        }
+    }
+
+    /**
+     * 限流维度
+     */
+    public enum KeyType {
+        USER,
+        IP
+    }
+}
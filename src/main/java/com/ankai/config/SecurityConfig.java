@@ -1,8 +1,12 @@
 package com.ankai.config;
 
+import com.ankai.security.BoundedPasswordEncoder;
 import com.ankai.security.JwtAuthenticationEntryPoint;
 import com.ankai.security.JwtAuthenticationFilter;
+import com.ankai.security.PublicRoutes;
+import com.ankai.security.RateLimitFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -15,7 +19,6 @@ import org.springframework.security.config.annotation.web.configurers.AbstractHt
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
@@ -39,12 +42,37 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
+    @Autowired
+    private PublicRoutes publicRoutes;
+
+    // 密码哈希线程数，0表示使用CPU核数
+    @Value("${security.password-hashing.threads:0}")
+    private int hashingThreads;
+
+    // 密码哈希等待队列容量
+    @Value("${security.password-hashing.queue-capacity:64}")
+    private int hashingQueueCapacity;
+
+    // 单次哈希最长等待时间（毫秒）
+    @Value("${security.password-hashing.max-wait-ms:3000}")
+    private long hashingMaxWaitMillis;
+
+    // 饱和时建议客户端重试间隔（秒）
+    @Value("${security.password-hashing.retry-after:2}")
+    private long hashingRetryAfter;
+
     /**
      * 密码编码器
+     * BCrypt运算在专用有界线程池中执行，不占用请求线程的CPU时间
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public BoundedPasswordEncoder passwordEncoder() {
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), threads, hashingQueueCapacity,
+                hashingMaxWaitMillis, hashingRetryAfter);
     }
 
     /**
@@ -80,21 +108,8 @@ public class SecurityConfig {
 
                 // 配置请求授权（注意：这个要在异常处理之前）
                 .authorizeHttpRequests(auth -> auth
-                        // 公开接口 - 完全放行，不需要任何认证
-                        .requestMatchers("/auth/**").permitAll()
-                        .requestMatchers("/test/**").permitAll()
-                        .requestMatchers("/password/**").permitAll()
-                        .requestMatchers("/health/**").permitAll()
-                        // Swagger相关路径
-                        .requestMatchers("/swagger-ui/**").permitAll()
-                        .requestMatchers("/swagger-ui.html").permitAll()
-                        .requestMatchers("/v3/api-docs/**").permitAll()
-                        .requestMatchers("/v3/api-docs.yaml").permitAll()
-                        .requestMatchers("/swagger-resources/**").permitAll()
-                        .requestMatchers("/webjars/**").permitAll()
-                        // 静态资源和错误页面
-                        .requestMatchers("/error", "/favicon.ico").permitAll()
-                        .requestMatchers("/css/**", "/js/**", "/images/**").permitAll()
+                        // 公开接口 - 完全放行，不需要任何认证（列表见PublicRoutes）
+                        .requestMatchers(publicRoutes).permitAll()
 
                         // 管理员接口
                         .requestMatchers("/admin/**").hasRole("ADMIN")
@@ -116,6 +131,9 @@ public class SecurityConfig {
         // 添加JWT过滤器
         http.addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
 
+        // 添加限流过滤器（在JWT过滤器之后，以便按用户限流）
+        http.addFilterAfter(rateLimitFilter, JwtAuthenticationFilter.class);
+
         return http.build();
     }
 }
@@ -0,0 +1,35 @@
+package com.ankai.config;
+
+import com.ankai.websocket.EventWebSocketHandler;
+import com.ankai.websocket.WebSocketAuthInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * WebSocket配置
+ * 与SSE推送共用事件通道，同时承载客户端到服务端的命令
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private EventWebSocketHandler eventWebSocketHandler;
+
+    @Autowired
+    private WebSocketAuthInterceptor webSocketAuthInterceptor;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(eventWebSocketHandler, "/ws")
+                .addInterceptors(webSocketAuthInterceptor)
+                // 与CorsConfig保持一致
+                .setAllowedOriginPatterns("*");
+    }
+}
@@ -3,6 +3,7 @@ package com.ankai.controller;
 import com.ankai.common.Result;
 import com.ankai.dto.LoginRequest;
 import com.ankai.dto.LoginResponse;
+import com.ankai.dto.RefreshTokenRequest;
 import com.ankai.service.AuthService;
 import com.ankai.utils.LogUtil;
 import io.swagger.v3.oas.annotations.Operation;
@@ -10,6 +11,10 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
@@ -42,6 +47,16 @@ public class AuthController {
         return Result.success(response);
     }
 
+    /**
+     * 刷新Token
+     */
+    @PostMapping("/refresh")
+    @Operation(summary = "刷新Token", description = "使用刷新令牌换取新的访问Token，刷新令牌同时轮换")
+    public Result<LoginResponse> refresh(@Valid @RequestBody RefreshTokenRequest request) {
+        LoginResponse response = authService.refresh(request.getRefreshToken());
+        return Result.success(response);
+    }
+
     /**
      * 用户登出
      */
@@ -58,19 +73,34 @@ public class AuthController {
 
     /**
      * 获取当前用户信息
+     * 支持条件请求：If-None-Match与当前资料版本一致时返回304，不访问数据库
      */
     @GetMapping("/currentUser")
     @Operation(summary = "获取当前用户信息")
-    public Result<LoginResponse.UserInfo> getCurrentUser(
-            @Parameter(description = "Authorization头中的token") @RequestHeader(value = "Authorization", required = false) String authorization) {
+    public ResponseEntity<Result<LoginResponse.UserInfo>> getCurrentUser(
+            @Parameter(description = "Authorization头中的token") @RequestHeader(value = "Authorization", required = false) String authorization,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String token = extractToken(authorization);
-        LoginResponse.UserInfo userInfo = authService.getCurrentUser(token);
+        String version = authService.getCurrentUserVersion(token);
+        if (version == null) {
+            return ResponseEntity.ok(Result.error(401, "未登录或token已过期"));
+        }
 
+        String etag = "\"" + version + "\"";
+        if (etagMatches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        LoginResponse.UserInfo userInfo = authService.getCurrentUser(token);
         if (userInfo == null) {
-            return Result.error(401, "未登录或token已过期");
+            return ResponseEntity.ok(Result.error(401, "未登录或token已过期"));
         }
 
-        return Result.success(userInfo);
+        // 资料因用户而异，只允许客户端缓存，且每次使用前需重新验证
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(Result.success(userInfo));
     }
 
     /**
@@ -86,6 +116,25 @@ public class AuthController {
         return Result.success(valid);
     }
 
+    /**
+     * 判断If-None-Match是否包含当前ETag（忽略弱校验前缀）
+     */
+    private boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 从Authorization头中提取token
      */
@@ -0,0 +1,45 @@
+package com.ankai.controller;
+
+import com.ankai.common.Result;
+import com.ankai.dto.BatchSendMessageRequest;
+import com.ankai.security.JwtAuthenticationFilter;
+import com.ankai.service.MessageService;
+import com.ankai.utils.JwtUtil;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 站内信管理Controller（仅管理员）
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@RestController
+@RequestMapping("/admin/message")
+@Tag(name = "站内信管理", description = "批量发送消息")
+public class MessageAdminController {
+
+    @Autowired
+    private MessageService messageService;
+
+    /**
+     * 向指定用户和/或角色下的所有用户批量发送消息
+     */
+    @PostMapping("/batch-send")
+    @Operation(summary = "批量发送消息", description = "返回实际发送的接收者数量")
+    public Result<Integer> batchSend(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
+            @Valid @RequestBody BatchSendMessageRequest request) {
+        int sent = messageService.sendBatchMessage(verifiedToken.getUserId(), verifiedToken.getUsername(),
+                request.getReceiverIds(), request.getRoleCodes(), request.getContent());
+        return Result.success(sent);
+    }
+}
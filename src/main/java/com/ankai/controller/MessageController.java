@@ -1,6 +1,7 @@
 package com.ankai.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.ankai.common.CursorPage;
 import com.ankai.common.PageRequest;
 import com.ankai.common.Result;
 import com.ankai.dto.ChatSession;
@@ -9,9 +10,11 @@ import com.ankai.entity.Message;
 import com.ankai.entity.User;
 import com.ankai.service.MessageService;
 import com.ankai.service.UserService;
+import com.ankai.security.JwtAuthenticationFilter;
 import com.ankai.utils.JwtUtil;
 import com.ankai.utils.LogUtil;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
@@ -39,21 +42,17 @@ public class MessageController {
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 发送消息（聊天风格）
      */
     @PostMapping("/send")
-    @Operation(summary = "发送消息")
-    public Result<Boolean> sendMessage(
-            @RequestHeader("Authorization") String authorization,
+    @Operation(summary = "发送消息", description = "返回消息ID")
+    public Result<Long> sendMessage(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @Valid @RequestBody SendMessageRequest request) {
 
-        String token = extractToken(authorization);
-        Long senderId = jwtUtil.getUserIdFromToken(token);
-        String senderName = jwtUtil.getUsernameFromToken(token);
+        Long senderId = verifiedToken.getUserId();
+        String senderName = verifiedToken.getUsername();
 
         // 获取接收者信息
         User receiver = userService.getById(request.getReceiverId());
@@ -61,40 +60,58 @@ public class MessageController {
             return Result.error("接收者不存在");
         }
 
-        boolean result = messageService.sendMessage(
+        Long messageId = messageService.sendMessage(
                 senderId, senderName,
                 request.getReceiverId(), receiver.getUsername(),
                 request.getContent());
 
         LogUtil.info(logger, "发送消息: {} -> {}", senderName, receiver.getUsername());
-        return result ? Result.success(true) : Result.error("发送失败");
+        return messageId != null ? Result.success(messageId) : Result.error("发送失败");
     }
 
     /**
-     * 获取聊天会话列表
+     * 分页获取聊天会话列表（current、size查询参数）
      */
     @GetMapping("/sessions")
-    @Operation(summary = "获取聊天会话列表")
-    public Result<List<ChatSession>> getChatSessions(@RequestHeader("Authorization") String authorization) {
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+    @Operation(summary = "分页获取聊天会话列表")
+    public Result<Page<ChatSession>> getChatSessions(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
+            @Valid PageRequest pageRequest) {
+        Long userId = verifiedToken.getUserId();
 
-        List<ChatSession> sessions = messageService.getChatSessions(userId);
+        Page<ChatSession> sessions = messageService.getChatSessions(userId, pageRequest);
         return Result.success(sessions);
     }
 
+    /**
+     * 按游标获取与指定用户的聊天记录（向前翻页，不统计总数）
+     * 首页不传before，之后传上一页返回的nextCursor
+     */
+    @GetMapping("/chat/{otherUserId}/history")
+    @Operation(summary = "按游标获取与指定用户的聊天记录")
+    public Result<CursorPage<Message>> getChatHistoryBefore(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
+            @PathVariable Long otherUserId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int size) {
+
+        Long userId = verifiedToken.getUserId();
+
+        CursorPage<Message> page = messageService.getChatHistoryBefore(userId, otherUserId, before, size);
+        return Result.success(page);
+    }
+
     /**
      * 获取与指定用户的聊天记录
      */
     @PostMapping("/chat/{otherUserId}")
     @Operation(summary = "获取与指定用户的聊天记录")
     public Result<Page<Message>> getChatHistory(
-            @RequestHeader("Authorization") String authorization,
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @PathVariable Long otherUserId,
             @RequestBody PageRequest pageRequest) {
 
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
 
         Page<Message> page = messageService.getChatHistory(userId, otherUserId, pageRequest);
         return Result.success(page);
@@ -106,11 +123,10 @@ public class MessageController {
     @PostMapping("/received")
     @Operation(summary = "获取收到的消息列表")
     public Result<Page<Message>> getReceivedMessages(
-            @RequestHeader("Authorization") String authorization,
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @RequestBody PageRequest pageRequest) {
 
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
 
         Page<Message> page = messageService.pageReceivedMessages(userId, pageRequest);
         return Result.success(page);
@@ -122,11 +138,10 @@ public class MessageController {
     @PostMapping("/sent")
     @Operation(summary = "获取发送的消息列表")
     public Result<Page<Message>> getSentMessages(
-            @RequestHeader("Authorization") String authorization,
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @RequestBody PageRequest pageRequest) {
 
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
 
         Page<Message> page = messageService.pageSentMessages(userId, pageRequest);
         return Result.success(page);
@@ -138,11 +153,10 @@ public class MessageController {
     @PutMapping("/chat/{otherUserId}/read")
     @Operation(summary = "标记与某用户的聊天为已读")
     public Result<Boolean> markChatAsRead(
-            @RequestHeader("Authorization") String authorization,
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @PathVariable Long otherUserId) {
 
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
 
         // 标记来自该用户的所有未读消息为已读
         boolean result = messageService.markChatAsRead(userId, otherUserId);
@@ -155,11 +169,10 @@ public class MessageController {
     @PutMapping("/{id}/read")
     @Operation(summary = "标记消息为已读")
     public Result<Boolean> markAsRead(
-            @RequestHeader("Authorization") String authorization,
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @PathVariable Long id) {
 
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
 
         boolean result = messageService.markAsRead(id, userId);
         return result ? Result.success(true) : Result.error("操作失败");
@@ -171,11 +184,10 @@ public class MessageController {
     @PutMapping("/batch-read")
     @Operation(summary = "批量标记为已读")
     public Result<Boolean> batchMarkAsRead(
-            @RequestHeader("Authorization") String authorization,
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @RequestBody List<Long> ids) {
 
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
 
         boolean result = messageService.batchMarkAsRead(ids, userId);
         return result ? Result.success(true) : Result.error("操作失败");
@@ -186,9 +198,9 @@ public class MessageController {
      */
     @PutMapping("/read-all")
     @Operation(summary = "标记所有消息为已读")
-    public Result<Boolean> markAllAsRead(@RequestHeader("Authorization") String authorization) {
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+    public Result<Boolean> markAllAsRead(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken) {
+        Long userId = verifiedToken.getUserId();
 
         boolean result = messageService.markAllAsRead(userId);
         return result ? Result.success(true) : Result.error("操作失败");
@@ -199,9 +211,9 @@ public class MessageController {
      */
     @GetMapping("/unread-count")
     @Operation(summary = "获取未读消息数量")
-    public Result<Integer> getUnreadCount(@RequestHeader("Authorization") String authorization) {
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+    public Result<Integer> getUnreadCount(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken) {
+        Long userId = verifiedToken.getUserId();
 
         int count = messageService.getUnreadCount(userId);
         return Result.success(count);
@@ -213,20 +225,12 @@ public class MessageController {
     @DeleteMapping("/{id}")
     @Operation(summary = "删除消息")
     public Result<Boolean> deleteMessage(
-            @RequestHeader("Authorization") String authorization,
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
             @PathVariable Long id) {
 
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
 
         boolean result = messageService.deleteMessage(id, userId);
         return result ? Result.success(true) : Result.error("删除失败");
     }
-
-    private String extractToken(String authorization) {
-        if (authorization != null && authorization.startsWith("Bearer ")) {
-            return authorization.substring(7);
-        }
-        return authorization;
-    }
 }
@@ -0,0 +1,127 @@
+package com.ankai.controller;
+
+import com.ankai.common.Result;
+import com.ankai.security.BoundedPasswordEncoder;
+import com.ankai.security.PrincipalCache;
+import com.ankai.security.ProfileSnapshotCache;
+import com.ankai.security.RedisRateLimiter;
+import com.ankai.security.RefreshTokenService;
+import com.ankai.security.TokenRevocationService;
+import com.ankai.security.TokenVersionService;
+import com.ankai.service.MessageStreamConsumer;
+import com.ankai.service.SseService;
+import com.ankai.service.UnreadCounterService;
+import com.ankai.sse.SseAdmission;
+import com.ankai.sse.SseCoalescer;
+import com.ankai.sse.SseDispatcher;
+import com.ankai.sse.SseEventLog;
+import com.ankai.sse.SseHeartbeatScheduler;
+import com.ankai.sse.SsePublisher;
+import com.ankai.sse.SseRouter;
+import com.ankai.utils.JwtUtil;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 服务监控Controller
+ * 汇总各组件的运行指标
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@RestController
+@RequestMapping("/monitor")
+@Tag(name = "服务监控", description = "运行指标查询接口")
+public class MonitorController {
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private BoundedPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private RedisRateLimiter rateLimiter;
+
+    @Autowired
+    private ProfileSnapshotCache profileSnapshotCache;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private SseRouter sseRouter;
+
+    @Autowired
+    private SseDispatcher sseDispatcher;
+
+    @Autowired
+    private SseHeartbeatScheduler sseHeartbeatScheduler;
+
+    @Autowired
+    private SseEventLog sseEventLog;
+
+    @Autowired
+    private SsePublisher ssePublisher;
+
+    @Autowired
+    private SseCoalescer sseCoalescer;
+
+    @Autowired
+    private SseAdmission sseAdmission;
+
+    @Autowired
+    private SseService sseService;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private MessageStreamConsumer messageStreamConsumer;
+
+    /**
+     * 获取运行指标
+     */
+    @GetMapping("/metrics")
+    @Operation(summary = "获取运行指标")
+    public Result<Map<String, Object>> metrics() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("jwtVerifyCache", jwtUtil.getVerifyCacheStats());
+        data.put("principalCache", principalCache.getStats());
+        data.put("tokenVersion", tokenVersionService.getStats());
+        data.put("tokenRevocation", tokenRevocationService.getStats());
+        data.put("passwordHashing", passwordEncoder.getStats());
+        data.put("rateLimit", rateLimiter.getStats());
+        data.put("profileSnapshot", profileSnapshotCache.getStats());
+        data.put("refreshToken", refreshTokenService.getStats());
+        data.put("sseRouting", sseRouter.getStats());
+        Map<String, Object> sseDispatch = sseDispatcher.getStats();
+        sseDispatch.put("connections", sseService.getConnectionCount());
+        sseDispatch.put("queueDepth", sseService.getQueuedEventCount());
+        data.put("sseDispatch", sseDispatch);
+        data.put("sseHeartbeat", sseHeartbeatScheduler.getStats());
+        data.put("sseReplay", sseEventLog.getStats());
+        data.put("ssePublish", ssePublisher.getStats());
+        data.put("sseCoalesce", sseCoalescer.getStats());
+        data.put("sseAdmission", sseAdmission.getStats());
+        data.put("messageUnread", unreadCounterService.getStats());
+        data.put("messageWriteBehind", messageStreamConsumer.getStats());
+        return Result.success(data);
+    }
+}
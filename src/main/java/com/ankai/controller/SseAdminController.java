@@ -0,0 +1,61 @@
+package com.ankai.controller;
+
+import com.ankai.common.Result;
+import com.ankai.sse.SseAdmission;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * SSE连接管理Controller（仅管理员）
+ * 用于发布前或节点过载时排空本节点的SSE连接
+ *
+ * @author AnKai
+ */
+@RestController
+@RequestMapping("/admin/sse")
+@Tag(name = "SSE连接管理", description = "本节点SSE连接准入与排空")
+public class SseAdminController {
+
+    @Autowired
+    private SseAdmission sseAdmission;
+
+    /**
+     * 查看本节点连接准入状态
+     */
+    @GetMapping("/admission")
+    @Operation(summary = "查看连接准入状态")
+    public Result<Map<String, Object>> admission() {
+        return Result.success(sseAdmission.getStats());
+    }
+
+    /**
+     * 进入排空模式：拒绝新连接，并分批断开已有连接（客户端按随机间隔重连到其他节点）
+     */
+    @PostMapping("/drain")
+    @Operation(summary = "进入排空模式")
+    public Result<Map<String, Object>> startDrain(
+            @Parameter(description = "目标连接数，默认0（断开全部）") @RequestParam(defaultValue = "0") int target) {
+        sseAdmission.startDrain(target);
+        return Result.success(sseAdmission.getStats());
+    }
+
+    /**
+     * 退出排空模式，恢复接受新连接
+     */
+    @DeleteMapping("/drain")
+    @Operation(summary = "退出排空模式")
+    public Result<Map<String, Object>> stopDrain() {
+        sseAdmission.stopDrain();
+        return Result.success(sseAdmission.getStats());
+    }
+}
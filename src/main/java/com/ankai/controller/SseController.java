@@ -1,13 +1,20 @@
 package com.ankai.controller;
 
+import com.ankai.exception.ServiceUnavailableException;
+import com.ankai.exception.TooManyRequestsException;
 import com.ankai.service.SseService;
+import com.ankai.security.JwtAuthenticationFilter;
 import com.ankai.utils.JwtUtil;
 import com.ankai.utils.LogUtil;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
@@ -26,34 +33,54 @@ public class SseController {
     @Autowired
     private SseService sseService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 订阅SSE事件流
-     * 前端通过 EventSource 连接此接口
+     * 前端通过 EventSource 连接此接口；EventSource自动重连时会携带Last-Event-ID请求头，
+     * 前端手动重建连接时可通过lastEventId参数传入最后收到的事件ID，服务端回放错过的事件。
+     * 收到resync事件时说明错过的事件无法完整回放，前端应重新拉取未读数等状态。
      */
     @GetMapping(value = "/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @Operation(summary = "订阅SSE事件流")
-    public SseEmitter subscribe(@RequestHeader("Authorization") String authorization) {
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+    public ResponseEntity<SseEmitter> subscribe(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
+            @Parameter(hidden = true) @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @Parameter(description = "最后收到的事件ID") @RequestParam(required = false) String lastEventId) {
+        Long userId = verifiedToken.getUserId();
+        String resumeFrom = lastEventIdHeader != null ? lastEventIdHeader : lastEventId;
 
-        LogUtil.info(logger, "用户订阅SSE: userId={}", userId);
-        return sseService.createConnection(userId);
+        LogUtil.info(logger, "用户订阅SSE: userId={}, lastEventId={}", userId, resumeFrom);
+        try {
+            return ResponseEntity.ok(sseService.createConnection(userId, resumeFrom));
+        } catch (TooManyRequestsException e) {
+            // 直接返回429状态码，EventSource收到非200响应后不会自动重连
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
+        } catch (ServiceUnavailableException e) {
+            // 本节点容量已满或正在排空（拒绝方式配置为UNAVAILABLE时）
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
+        }
     }
 
     /**
      * 断开SSE连接
+     * 指定connectionId时只断开该连接，否则断开该用户的所有连接
      */
     @DeleteMapping("/unsubscribe")
     @Operation(summary = "断开SSE连接")
-    public void unsubscribe(@RequestHeader("Authorization") String authorization) {
-        String token = extractToken(authorization);
-        Long userId = jwtUtil.getUserIdFromToken(token);
+    public void unsubscribe(
+            @Parameter(hidden = true) @RequestAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE) JwtUtil.VerifiedToken verifiedToken,
+            @Parameter(description = "连接ID（connected事件中返回）") @RequestParam(required = false) String connectionId) {
+        Long userId = verifiedToken.getUserId();
 
-        LogUtil.info(logger, "用户断开SSE: userId={}", userId);
-        sseService.removeConnection(userId);
+        LogUtil.info(logger, "用户断开SSE: userId={}, connectionId={}", userId, connectionId);
+        if (connectionId != null) {
+            sseService.removeConnection(userId, connectionId);
+        } else {
+            sseService.removeConnection(userId);
+        }
     }
 
     /**
@@ -64,12 +91,5 @@ public class SseController {
     public int getOnlineCount() {
         return sseService.getOnlineCount();
     }
-
-    private String extractToken(String authorization) {
-        if (authorization != null && authorization.startsWith("Bearer ")) {
-            return authorization.substring(7);
-        }
-        return authorization;
-    }
 }
 
@@ -0,0 +1,49 @@
+package com.ankai.dto;
+
+import com.ankai.service.MessageService;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量发送消息请求DTO
+ * 接收者为指定用户与指定角色下用户的并集
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Data
+@Schema(description = "批量发送消息请求")
+public class BatchSendMessageRequest {
+
+    /**
+     * 接收者ID列表
+     */
+    @Schema(description = "接收者ID列表")
+    private List<Long> receiverIds;
+
+    /**
+     * 接收者角色编码列表
+     */
+    @Schema(description = "接收者角色编码列表")
+    private List<String> roleCodes;
+
+    /**
+     * 消息内容
+     */
+    @NotBlank(message = "消息内容不能为空")
+    @Size(max = MessageService.MAX_CONTENT_LENGTH, message = "消息内容不能超过" + MessageService.MAX_CONTENT_LENGTH + "个字符")
+    @Schema(description = "消息内容")
+    private String content;
+
+    @JsonIgnore
+    @AssertTrue(message = "接收者ID和角色编码不能同时为空")
+    public boolean isRecipientSpecified() {
+        return (receiverIds != null && !receiverIds.isEmpty()) || (roleCodes != null && !roleCodes.isEmpty());
+    }
+}
@@ -30,9 +30,21 @@ public class LoginResponse {
     /**
      * 过期时间（秒）
      */
-    @Schema(description = "过期时间（秒）", example = "7200")
+    @Schema(description = "过期时间（秒）", example = "900")
     private Long expiresIn;
 
+    /**
+     * 刷新令牌，每次刷新后轮换
+     */
+    @Schema(description = "刷新令牌")
+    private String refreshToken;
+
+    /**
+     * 刷新令牌过期时间（秒）
+     */
+    @Schema(description = "刷新令牌过期时间（秒）", example = "86400")
+    private Long refreshExpiresIn;
+
     /**
      * 用户信息
      */
@@ -0,0 +1,24 @@
+package com.ankai.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * 刷新令牌请求DTO
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Data
+@Schema(description = "刷新令牌请求")
+public class RefreshTokenRequest {
+
+    /**
+     * 刷新令牌
+     */
+    @NotBlank(message = "刷新令牌不能为空")
+    @Schema(description = "刷新令牌")
+    private String refreshToken;
+}
@@ -1,8 +1,10 @@
 package com.ankai.dto;
 
+import com.ankai.service.MessageService;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 
 /**
@@ -26,6 +28,7 @@ public class SendMessageRequest {
      * 消息内容
      */
     @NotBlank(message = "消息内容不能为空")
+    @Size(max = MessageService.MAX_CONTENT_LENGTH, message = "消息内容不能超过" + MessageService.MAX_CONTENT_LENGTH + "个字符")
     @Schema(description = "消息内容")
     private String content;
 }
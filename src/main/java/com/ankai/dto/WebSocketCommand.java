@@ -0,0 +1,43 @@
+package com.ankai.dto;
+
+import lombok.Data;
+
+/**
+ * WebSocket客户端命令DTO
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Data
+public class WebSocketCommand {
+
+    /**
+     * 命令类型：send_message、mark_chat_read、mark_announcement_read
+     */
+    private String type;
+
+    /**
+     * 客户端请求ID，原样放在ack事件中返回
+     */
+    private String requestId;
+
+    /**
+     * 接收者ID（send_message）
+     */
+    private Long receiverId;
+
+    /**
+     * 消息内容（send_message）
+     */
+    private String content;
+
+    /**
+     * 聊天对象ID（mark_chat_read）
+     */
+    private Long otherUserId;
+
+    /**
+     * 公告ID（mark_announcement_read）
+     */
+    private Long announcementId;
+}
@@ -0,0 +1,83 @@
+package com.ankai.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 聊天会话实体类
+ * 每对用户每一方一行，发送消息和标记已读时在同一事务中维护
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Data
+@TableName("sys_conversation")
+@Schema(description = "聊天会话")
+public class Conversation {
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.AUTO)
+    @Schema(description = "主键ID")
+    private Long id;
+
+    /**
+     * 会话所属用户ID
+     */
+    @Schema(description = "会话所属用户ID")
+    private Long ownerId;
+
+    /**
+     * 对方用户ID
+     */
+    @Schema(description = "对方用户ID")
+    private Long peerId;
+
+    /**
+     * 对方用户名
+     */
+    @Schema(description = "对方用户名")
+    private String peerName;
+
+    /**
+     * 最后一条消息ID
+     */
+    @Schema(description = "最后一条消息ID")
+    private Long lastMessageId;
+
+    /**
+     * 最后一条消息内容（截断）
+     */
+    @Schema(description = "最后一条消息内容")
+    private String lastMessage;
+
+    /**
+     * 最后消息时间
+     */
+    @Schema(description = "最后消息时间")
+    private LocalDateTime lastTime;
+
+    /**
+     * 所属用户未读的消息数
+     */
+    @Schema(description = "未读消息数")
+    private Integer unreadCount;
+
+    /**
+     * 创建时间
+     */
+    @TableField(fill = FieldFill.INSERT)
+    @Schema(description = "创建时间")
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    @Schema(description = "更新时间")
+    private LocalDateTime updateTime;
+}
@@ -3,7 +3,9 @@ package com.ankai.exception;
 import com.ankai.common.Result;
 import com.ankai.utils.LogUtil;
 import org.slf4j.Logger;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -37,6 +39,28 @@ public class GlobalExceptionHandler {
         return Result.error(e.getCode(), e.getMessage());
     }
 
+    /**
+     * 处理请求过多异常，附带Retry-After响应头
+     */
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Result<Void>> handleTooManyRequestsException(TooManyRequestsException e) {
+        LogUtil.warn(logger, "请求过多: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Result.error(e.getCode(), e.getMessage()));
+    }
+
+    /**
+     * 处理服务暂不可用异常，附带Retry-After响应头
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<Result<Void>> handleServiceUnavailableException(ServiceUnavailableException e) {
+        LogUtil.warn(logger, "服务暂不可用: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Result.error(e.getCode(), e.getMessage()));
+    }
+
     /**
      * 处理参数校验异常 - @RequestBody
      */
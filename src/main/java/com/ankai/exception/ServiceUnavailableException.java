@@ -0,0 +1,27 @@
+package com.ankai.exception;
+
+/**
+ * 服务暂不可用异常
+ * 本节点容量已满或正在排空时拒绝新的长连接，响应503并通过Retry-After提示客户端稍后重试
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+public class ServiceUnavailableException extends BusinessException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 建议重试间隔（秒）
+     */
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(503, message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
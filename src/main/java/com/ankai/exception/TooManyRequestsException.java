@@ -0,0 +1,27 @@
+package com.ankai.exception;
+
+/**
+ * 请求过多异常
+ * 服务端资源饱和时快速失败，响应429并通过Retry-After提示客户端稍后重试
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+public class TooManyRequestsException extends BusinessException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 建议重试间隔（秒）
+     */
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(429, message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,85 @@
+package com.ankai.mapper;
+
+import com.ankai.dto.ChatSession;
+import com.ankai.entity.Conversation;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 聊天会话Mapper
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Mapper
+public interface ConversationMapper extends BaseMapper<Conversation> {
+
+    /**
+     * 写入会话的最后一条消息，不存在时创建（多行）
+     * 只接受比当前更新的消息（并发发送时后提交的旧消息不会覆盖），last_message_id必须最后赋值；
+     * 调用方按 (owner_id, peer_id) 排序传入，保证并发写入时加锁顺序一致
+     *
+     * @param conversations 会话列表，unreadCount为所属用户的未读数增量（接收方为1，发送方为0）
+     */
+    @Insert("<script>INSERT INTO sys_conversation (owner_id, peer_id, peer_name, last_message_id, last_message, last_time, unread_count) VALUES " +
+            "<foreach collection='conversations' item='c' separator=','>" +
+            "(#{c.ownerId}, #{c.peerId}, #{c.peerName}, #{c.lastMessageId}, #{c.lastMessage}, #{c.lastTime}, #{c.unreadCount})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE " +
+            "peer_name = VALUES(peer_name), " +
+            "last_message = IF(VALUES(last_message_id) &gt; last_message_id, VALUES(last_message), last_message), " +
+            "last_time = IF(VALUES(last_message_id) &gt; last_message_id, VALUES(last_time), last_time), " +
+            "unread_count = unread_count + VALUES(unread_count), " +
+            "last_message_id = GREATEST(last_message_id, VALUES(last_message_id))</script>")
+    int upsertLastMessages(@Param("conversations") List<Conversation> conversations);
+
+    /**
+     * 未读数减一
+     */
+    @Update("UPDATE sys_conversation SET unread_count = unread_count - 1 " +
+            "WHERE owner_id = #{ownerId} AND peer_id = #{peerId} AND unread_count > 0")
+    int decrementUnread(@Param("ownerId") Long ownerId, @Param("peerId") Long peerId);
+
+    /**
+     * 清零与指定用户会话的未读数
+     */
+    @Update("UPDATE sys_conversation SET unread_count = 0 " +
+            "WHERE owner_id = #{ownerId} AND peer_id = #{peerId} AND unread_count > 0")
+    int clearUnread(@Param("ownerId") Long ownerId, @Param("peerId") Long peerId);
+
+    /**
+     * 清零用户所有会话的未读数
+     */
+    @Update("UPDATE sys_conversation SET unread_count = 0 WHERE owner_id = #{ownerId} AND unread_count > 0")
+    int clearAllUnread(@Param("ownerId") Long ownerId);
+
+    /**
+     * 按消息表重新统计指定会话的未读数（批量标记已读、删除消息后使用，走sender_id+receiver_id索引）
+     */
+    @Update("<script>UPDATE sys_conversation c SET c.unread_count = " +
+            "(SELECT COUNT(*) FROM sys_message m WHERE m.sender_id = c.peer_id AND m.receiver_id = c.owner_id " +
+            "AND m.is_read = 0 AND m.deleted = 0) " +
+            "WHERE c.owner_id = #{ownerId} AND c.peer_id IN " +
+            "<foreach collection='peerIds' item='peerId' open='(' separator=',' close=')'>#{peerId}</foreach>" +
+            "</script>")
+    int recountUnread(@Param("ownerId") Long ownerId, @Param("peerIds") Collection<Long> peerIds);
+
+    /**
+     * 分页查询用户的会话列表（按idx_owner_last_time索引顺序读取，按主键关联对方用户资料）
+     */
+    @Select("SELECT c.peer_id AS user_id, " +
+            "COALESCE(u.real_name, u.username, c.peer_name) AS username, " +
+            "u.avatar, c.last_message, c.last_time AS last_message_time, c.unread_count " +
+            "FROM sys_conversation c LEFT JOIN sys_user u ON u.id = c.peer_id " +
+            "WHERE c.owner_id = #{ownerId} " +
+            "ORDER BY c.last_time DESC, c.id DESC")
+    Page<ChatSession> selectSessionPage(Page<ChatSession> page, @Param("ownerId") Long ownerId);
+}
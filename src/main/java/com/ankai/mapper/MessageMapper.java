@@ -2,10 +2,17 @@ package com.ankai.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ankai.entity.Message;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 站内信Mapper
  *
@@ -20,5 +27,70 @@ public interface MessageMapper extends BaseMapper<Message> {
      */
     @Select("SELECT COUNT(*) FROM sys_message WHERE receiver_id = #{userId} AND is_read = 0 AND deleted = 0")
     int countUnreadByUserId(@Param("userId") Long userId);
+
+    /**
+     * 按接收者、发送者分组统计多个用户的未读消息数（未读计数核对使用）
+     */
+    @Select("<script>SELECT receiver_id AS receiverId, sender_id AS senderId, COUNT(*) AS unread FROM sys_message " +
+            "WHERE is_read = 0 AND deleted = 0 AND receiver_id IN " +
+            "<foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach>" +
+            " GROUP BY receiver_id, sender_id</script>")
+    List<Map<String, Object>> countUnreadGroupBySender(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 多行插入消息，回填自增ID（调用方控制每批行数）
+     */
+    @Insert("<script>INSERT INTO sys_message (sender_id, sender_name, receiver_id, receiver_name, content, message_type, is_read, create_time, deleted) VALUES " +
+            "<foreach collection='messages' item='m' separator=','>" +
+            "(#{m.senderId}, #{m.senderName}, #{m.receiverId}, #{m.receiverName}, #{m.content}, #{m.messageType}, #{m.isRead}, #{m.createTime}, #{m.deleted})" +
+            "</foreach></script>")
+    @Options(useGeneratedKeys = true, keyProperty = "messages.id", keyColumn = "id")
+    int insertBatch(@Param("messages") List<Message> messages);
+
+    /**
+     * 多行插入指定ID的消息，已存在的ID忽略（写后模式落库，重复投递时幂等）
+     */
+    @Insert("<script>INSERT IGNORE INTO sys_message (id, sender_id, sender_name, receiver_id, receiver_name, content, message_type, is_read, read_time, create_time, deleted) VALUES " +
+            "<foreach collection='messages' item='m' separator=','>" +
+            "(#{m.id}, #{m.senderId}, #{m.senderName}, #{m.receiverId}, #{m.receiverName}, #{m.content}, #{m.messageType}, #{m.isRead}, #{m.readTime}, #{m.createTime}, #{m.deleted})" +
+            "</foreach></script>")
+    int insertBatchWithId(@Param("messages") List<Message> messages);
+
+    /**
+     * 查询已存在的消息ID（包含已删除的消息）
+     */
+    @Select("<script>SELECT id FROM sys_message WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    List<Long> selectExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 查询当前最大消息ID（包含已删除的消息）
+     */
+    @Select("SELECT COALESCE(MAX(id), 0) FROM sys_message")
+    long selectMaxId();
+
+    /**
+     * 按游标查询两人之间的聊天记录（create_time、id倒序）
+     * 两个方向各自在idx_sender_receiver_time索引上做范围读取（以游标时间作为范围上界），
+     * 合并后取前limit条；不统计总数
+     *
+     * @param beforeTime 游标时间，为null时从最新消息开始
+     * @param beforeId   游标消息ID
+     */
+    @Select("<script>" +
+            "(SELECT * FROM sys_message WHERE sender_id = #{userId} AND receiver_id = #{otherUserId} AND deleted = 0" +
+            "<if test='beforeTime != null'> AND create_time &lt;= #{beforeTime} AND (create_time &lt; #{beforeTime} OR id &lt; #{beforeId})</if>" +
+            " ORDER BY create_time DESC, id DESC LIMIT #{limit})" +
+            "<if test='!userId.equals(otherUserId)'>" +
+            " UNION ALL " +
+            "(SELECT * FROM sys_message WHERE sender_id = #{otherUserId} AND receiver_id = #{userId} AND deleted = 0" +
+            "<if test='beforeTime != null'> AND create_time &lt;= #{beforeTime} AND (create_time &lt; #{beforeTime} OR id &lt; #{beforeId})</if>" +
+            " ORDER BY create_time DESC, id DESC LIMIT #{limit})" +
+            "</if>" +
+            " ORDER BY create_time DESC, id DESC LIMIT #{limit}" +
+            "</script>")
+    List<Message> selectChatHistoryBefore(@Param("userId") Long userId, @Param("otherUserId") Long otherUserId,
+                                          @Param("beforeTime") LocalDateTime beforeTime, @Param("beforeId") Long beforeId,
+                                          @Param("limit") int limit);
 }
 
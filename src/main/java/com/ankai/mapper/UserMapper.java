@@ -3,8 +3,12 @@ package com.ankai.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ankai.entity.User;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * 用户Mapper接口
  *
@@ -19,4 +23,24 @@ public interface UserMapper extends BaseMapper<User> {
      */
     @Select("SELECT * FROM sys_user WHERE username = #{username}")
     User selectByUsernameWithDeleted(String username);
+
+    /**
+     * 根据用户名查询认证所需的用户信息（不含密码，包含已删除的用户）
+     */
+    @Select("SELECT id, username, email, phone, real_name, avatar, status, deleted " +
+            "FROM sys_user WHERE username = #{username}")
+    User selectAuthInfoByUsername(String username);
+
+    /**
+     * 按用户ID和角色编码一次查询消息接收者（仅启用的用户，角色需启用）
+     */
+    @Select("<script>SELECT id, username FROM sys_user WHERE deleted = 0 AND status = 1 AND (" +
+            "<if test='userIds != null and !userIds.isEmpty()'>id IN " +
+            "<foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach></if>" +
+            "<if test='userIds != null and !userIds.isEmpty() and roleCodes != null and !roleCodes.isEmpty()'> OR </if>" +
+            "<if test='roleCodes != null and !roleCodes.isEmpty()'>id IN (SELECT ur.user_id FROM sys_user_role ur " +
+            "JOIN sys_role r ON r.id = ur.role_id WHERE r.deleted = 0 AND r.status = 1 AND r.role_code IN " +
+            "<foreach collection='roleCodes' item='roleCode' open='(' separator=',' close=')'>#{roleCode}</foreach>)</if>" +
+            ")</script>")
+    List<User> selectRecipients(@Param("userIds") Collection<Long> userIds, @Param("roleCodes") Collection<String> roleCodes);
 }
@@ -3,6 +3,11 @@ package com.ankai.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ankai.entity.UserRole;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 用户角色关联Mapper接口
@@ -13,4 +18,11 @@ import org.apache.ibatis.annotations.Mapper;
 @Mapper
 public interface UserRoleMapper extends BaseMapper<UserRole> {
 
+    /**
+     * 根据角色ID列表查询持有这些角色的用户ID
+     */
+    @Select("<script>SELECT DISTINCT user_id FROM sys_user_role WHERE role_id IN " +
+            "<foreach collection='roleIds' item='roleId' open='(' separator=',' close=')'>#{roleId}</foreach>" +
+            "</script>")
+    List<Long> selectUserIdsByRoleIds(@Param("roleIds") Collection<Long> roleIds);
 }
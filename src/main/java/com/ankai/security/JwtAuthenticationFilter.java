@@ -1,5 +1,6 @@
 package com.ankai.security;
 
+import com.ankai.entity.User;
 import com.ankai.utils.JwtUtil;
 import com.ankai.utils.LogUtil;
 import jakarta.servlet.FilterChain;
@@ -11,7 +12,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -30,11 +30,25 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LogUtil.getLogger(JwtAuthenticationFilter.class);
 
+    /**
+     * 已验证Token在请求属性中的key，Controller通过 @RequestAttribute 读取
+     */
+    public static final String VERIFIED_TOKEN_ATTRIBUTE = "ankai.verifiedToken";
+
     @Autowired
     private JwtUtil jwtUtil;
 
     @Autowired
-    private UserDetailsService userDetailsService;
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private PublicRoutes publicRoutes;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
@@ -46,7 +60,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String method = request.getMethod();
             LogUtil.info(logger, "JWT过滤器处理请求: {} {}", method, requestPath);
 
-            if (shouldSkipFilter(requestPath)) {
+            if (publicRoutes.matches(request)) {
                 LogUtil.info(logger, "跳过JWT验证，直接放行: {}", requestPath);
                 filterChain.doFilter(request, response);
                 return;
@@ -64,31 +78,37 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
             if (StringUtils.hasText(jwt)) {
                 LogUtil.info(logger, "开始验证Token...");
-                boolean isValid = jwtUtil.validateToken(jwt);
-                LogUtil.info(logger, "Token验证结果: {}", isValid);
+                // 只解析一次，后续统一读取该对象
+                JwtUtil.VerifiedToken verifiedToken = jwtUtil.verify(jwt);
+                LogUtil.info(logger, "Token验证结果: {}", verifiedToken != null);
+
+                // 已吊销（登出）的Token视为无效，本地判断无需访问Redis
+                if (verifiedToken != null && tokenRevocationService.isRevoked(verifiedToken.getJti())) {
+                    LogUtil.warn(logger, "Token已吊销: userId={}", verifiedToken.getUserId());
+                    verifiedToken = null;
+                }
 
-                if (isValid) {
-                    // 从Token中获取用户名
-                    String username = jwtUtil.getUsernameFromToken(jwt);
+                if (verifiedToken != null) {
+                    request.setAttribute(VERIFIED_TOKEN_ATTRIBUTE, verifiedToken);
+                    String username = verifiedToken.getUsername();
 
                     if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                        // 加载用户详情
-                        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-                        // 验证Token
-                        if (jwtUtil.validateToken(jwt, userDetails.getUsername())) {
-                            // 创建认证对象
-                            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                                    userDetails, null, userDetails.getAuthorities());
-                            authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-
-                            // 设置到Security上下文
-                            SecurityContextHolder.getContext().setAuthentication(authentication);
-
-                            LogUtil.info(logger, "用户 {} 认证成功，已设置到Security上下文", username);
-                        } else {
-                            LogUtil.warn(logger, "Token验证失败，用户名: {}", username);
+                        // 自包含Token且版本号未变更时直接由Token构建，否则加载用户详情
+                        // （进程内缓存，失效由PrincipalCache在集群内广播）
+                        UserDetails userDetails = buildSelfContainedPrincipal(verifiedToken);
+                        if (userDetails == null) {
+                            userDetails = userDetailsService.loadCachedUserByUsername(username);
                         }
+
+                        // 创建认证对象
+                        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                                userDetails, null, userDetails.getAuthorities());
+                        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+                        // 设置到Security上下文
+                        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+                        LogUtil.info(logger, "用户 {} 认证成功，已设置到Security上下文", username);
                     } else {
                         LogUtil.warn(logger, "无法从Token中获取用户名或用户已认证");
                     }
@@ -106,52 +126,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     }
 
     /**
-     * 判断是否应该跳过JWT过滤器
+     * 由自包含Token构建用户详情，无需访问数据库
+     *
+     * @return 用户详情；非自包含Token、未启用该模式或版本号已过期时返回null
      */
-    private boolean shouldSkipFilter(String requestPath) {
-        // 跳过认证相关的接口
-        if (requestPath.startsWith("/auth/")) {
-            return true;
-        }
-
-        // 跳过测试接口
-        if (requestPath.startsWith("/test/")) {
-            return true;
-        }
-
-        // 跳过密码工具接口
-        if (requestPath.startsWith("/password/")) {
-            return true;
-        }
-
-        // 跳过健康检查接口
-        if (requestPath.startsWith("/health/")) {
-            return true;
-        }
-
-        // 跳过Swagger相关接口
-        if (requestPath.startsWith("/swagger-ui/") ||
-                requestPath.startsWith("/v3/api-docs") ||
-                requestPath.equals("/swagger-ui.html") ||
-                requestPath.startsWith("/swagger-resources/") ||
-                requestPath.startsWith("/webjars/")) {
-            return true;
+    private CustomUserDetails buildSelfContainedPrincipal(JwtUtil.VerifiedToken verifiedToken) {
+        if (!jwtUtil.isSelfContained() || !verifiedToken.isSelfContained()) {
+            return null;
         }
-
-        // 跳过静态资源
-        if (requestPath.startsWith("/css/") ||
-                requestPath.startsWith("/js/") ||
-                requestPath.startsWith("/images/") ||
-                requestPath.equals("/favicon.ico")) {
-            return true;
-        }
-
-        // 跳过错误页面
-        if (requestPath.equals("/error")) {
-            return true;
+        long currentVersion = tokenVersionService.getVersion(verifiedToken.getUserId());
+        if (verifiedToken.getTokenVersion() != currentVersion) {
+            LogUtil.info(logger, "Token版本已过期，回退到用户详情加载: userId={}", verifiedToken.getUserId());
+            return null;
         }
 
-        return false;
+        User user = new User();
+        user.setId(verifiedToken.getUserId());
+        user.setUsername(verifiedToken.getUsername());
+        return new CustomUserDetails(
+                verifiedToken.getUserId(),
+                verifiedToken.getUsername(),
+                null,
+                true,
+                true,
+                true,
+                true,
+                UserDetailsServiceImpl.toAuthorities(verifiedToken.getRoles()),
+                user
+        );
     }
 
     /**
@@ -0,0 +1,188 @@
+package com.ankai.security;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.ankai.utils.LogUtil;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已认证用户快照缓存
+ * 进程内缓存CustomUserDetails（不含密码），通过Redis发布订阅在所有节点间失效
+ * 即使失效消息丢失，条目也会在TTL后过期，保证禁用用户在有限时间内失去访问权限
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class PrincipalCache {
+
+    private static final Logger logger = LogUtil.getLogger(PrincipalCache.class);
+
+    // 失效广播频道
+    private static final String EVICT_TOPIC = "auth:principal:evict";
+
+    // 失效全部用户的消息
+    private static final String EVICT_ALL = "*";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    // 缓存存活时间（秒）
+    @Value("${security.principal-cache.ttl:60}")
+    private long ttlSeconds;
+
+    // 缓存容量
+    @Value("${security.principal-cache.max-size:10000}")
+    private int maxSize;
+
+    /**
+     * Key: username, Value: 用户快照
+     */
+    private LRUCache<String, CustomUserDetails> cache;
+
+    /**
+     * Key: userId, Value: username，用于按用户ID失效
+     */
+    private final Map<Long, String> usernameIndex = new ConcurrentHashMap<>();
+
+    private RTopic evictTopic;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.cache = CacheUtil.newLRUCache(maxSize, ttlSeconds * 1000);
+        this.evictTopic = redissonClient.getTopic(EVICT_TOPIC, StringCodec.INSTANCE);
+        evictTopic.addListener(String.class, (channel, message) -> evictLocal(message));
+    }
+
+    /**
+     * 获取缓存的用户快照
+     *
+     * @param username 用户名
+     * @return 用户快照，不存在或已过期返回null
+     */
+    public CustomUserDetails get(String username) {
+        // 不刷新访问时间，保证条目在TTL后一定过期
+        CustomUserDetails userDetails = cache.get(username, false);
+        if (userDetails != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return userDetails;
+    }
+
+    /**
+     * 放入用户快照
+     *
+     * @param userDetails 用户快照（不含密码）
+     */
+    public void put(CustomUserDetails userDetails) {
+        usernameIndex.put(userDetails.getUserId(), userDetails.getUsername());
+        cache.put(userDetails.getUsername(), userDetails);
+    }
+
+    /**
+     * 失效指定用户（所有节点）
+     * 如果当前处于事务中，在事务提交后再广播，避免其他请求在提交前重新加载旧数据
+     *
+     * @param userId 用户ID
+     */
+    public void evictUser(Long userId) {
+        if (userId != null) {
+            publishAfterCommit(String.valueOf(userId));
+        }
+    }
+
+    /**
+     * 失效多个用户（所有节点）
+     *
+     * @param userIds 用户ID列表
+     */
+    public void evictUsers(Collection<?> userIds) {
+        if (userIds != null) {
+            userIds.forEach(id -> publishAfterCommit(String.valueOf(id)));
+        }
+    }
+
+    /**
+     * 失效所有用户（所有节点），用于角色变更等影响范围不确定的场景
+     */
+    public void evictAll() {
+        publishAfterCommit(EVICT_ALL);
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private void publishAfterCommit(String message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(message);
+                }
+            });
+        } else {
+            publish(message);
+        }
+    }
+
+    private void publish(String message) {
+        // 本节点先行失效，不依赖广播回环
+        evictLocal(message);
+        try {
+            evictTopic.publish(message);
+        } catch (Exception e) {
+            LogUtil.error(logger, "广播用户缓存失效消息失败: {}", message, e);
+        }
+    }
+
+    private void evictLocal(String message) {
+        evictions.increment();
+        if (EVICT_ALL.equals(message)) {
+            cache.clear();
+            usernameIndex.clear();
+            LogUtil.debug(logger, "清空用户快照缓存");
+            return;
+        }
+        try {
+            String username = usernameIndex.remove(Long.valueOf(message));
+            if (username != null) {
+                cache.remove(username);
+                LogUtil.debug(logger, "失效用户快照缓存: userId={}", message);
+            }
+        } catch (NumberFormatException e) {
+            LogUtil.warn(logger, "无法识别的用户缓存失效消息: {}", message);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ankai.security;
+
+import com.ankai.dto.LoginResponse;
+import com.ankai.utils.LogUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用户资料快照缓存
+ * 在Redis中缓存组装好的LoginResponse.UserInfo，快照key携带版本号：
+ * 用户版本号在用户编辑、角色分配时递增，全局版本号在角色或权限变更时递增，
+ * 版本号变化后旧快照不再被读取并自然过期。版本号同时作为ETag，
+ * 客户端资料未变化时只需读取两个版本号即可返回304。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class ProfileSnapshotCache {
+
+    private static final Logger logger = LogUtil.getLogger(ProfileSnapshotCache.class);
+
+    // 用户资料版本号Redis key前缀
+    private static final String USER_VERSION_KEY_PREFIX = "auth:profile-version:";
+
+    // 全局资料版本号Redis key（角色、权限变更）
+    private static final String GLOBAL_VERSION_KEY = "auth:profile-version:global";
+
+    // 资料快照Redis key前缀
+    private static final String SNAPSHOT_KEY_PREFIX = "auth:profile:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 快照存活时间（秒）
+    @Value("${security.profile-cache.ttl:3600}")
+    private long ttlSeconds;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 获取用户资料的当前版本标识（用作ETag）
+     *
+     * @param userId 用户ID
+     * @return 版本标识，形如 userId-用户版本-全局版本
+     */
+    public String currentVersion(Long userId) {
+        List<String> versions = stringRedisTemplate.opsForValue()
+                .multiGet(Arrays.asList(USER_VERSION_KEY_PREFIX + userId, GLOBAL_VERSION_KEY));
+        String userVersion = versions != null && versions.get(0) != null ? versions.get(0) : "0";
+        String globalVersion = versions != null && versions.get(1) != null ? versions.get(1) : "0";
+        return userId + "-" + userVersion + "-" + globalVersion;
+    }
+
+    /**
+     * 获取指定版本的资料快照
+     *
+     * @param version 版本标识
+     * @return 资料快照，不存在返回null
+     */
+    public LoginResponse.UserInfo get(String version) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(SNAPSHOT_KEY_PREFIX + version);
+            if (json != null) {
+                hits.increment();
+                return objectMapper.readValue(json, LoginResponse.UserInfo.class);
+            }
+        } catch (Exception e) {
+            LogUtil.error(logger, "读取用户资料快照失败: version={}", version, e);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入指定版本的资料快照
+     * 版本号必须在加载数据库之前读取，这样加载期间发生的变更会使该快照直接作废
+     *
+     * @param version  版本标识
+     * @param userInfo 资料快照
+     */
+    public void put(String version, LoginResponse.UserInfo userInfo) {
+        try {
+            stringRedisTemplate.opsForValue().set(SNAPSHOT_KEY_PREFIX + version,
+                    objectMapper.writeValueAsString(userInfo), ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            LogUtil.error(logger, "写入用户资料快照失败: version={}", version, e);
+        }
+    }
+
+    /**
+     * 递增用户资料版本号（事务提交后执行）
+     *
+     * @param userId 用户ID
+     */
+    public void bumpUser(Long userId) {
+        if (userId != null) {
+            incrementAfterCommit(USER_VERSION_KEY_PREFIX + userId);
+        }
+    }
+
+    /**
+     * 递增多个用户的资料版本号
+     *
+     * @param userIds 用户ID列表
+     */
+    public void bumpUsers(Collection<?> userIds) {
+        if (userIds != null) {
+            userIds.forEach(id -> bumpUser(Long.valueOf(id.toString())));
+        }
+    }
+
+    /**
+     * 递增全局资料版本号，所有用户的快照随之作废（用于角色、权限变更）
+     */
+    public void bumpGlobal() {
+        incrementAfterCommit(GLOBAL_VERSION_KEY);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    private void incrementAfterCommit(String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(key);
+                }
+            });
+        } else {
+            increment(key);
+        }
+    }
+
+    private void increment(String key) {
+        try {
+            stringRedisTemplate.opsForValue().increment(key);
+        } catch (Exception e) {
+            LogUtil.error(logger, "递增用户资料版本号失败: key={}", key, e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.ankai.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.util.List;
+
+/**
+ * 公开路由表
+ * 唯一的公开路径声明，启动时编译为按路径段组织的前缀树；
+ * JWT过滤器用它跳过Token解析，SecurityConfig用它放行请求，两处不再各自维护列表。
+ * 支持两种写法：精确路径（/error）和前缀通配（/auth/**，同时匹配/auth本身）。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class PublicRoutes implements RequestMatcher {
+
+    /**
+     * 公开路径（不含context-path）
+     */
+    public static final List<String> PUBLIC_PATTERNS = List.of(
+            // 认证相关接口
+            "/auth/**",
+            // 测试接口
+            "/test/**",
+            // 密码工具接口
+            "/password/**",
+            // 健康检查接口
+            "/health/**",
+            // WebSocket握手（握手拦截器自行校验Token）
+            "/ws",
+            // Swagger相关路径
+            "/swagger-ui/**",
+            "/swagger-ui.html",
+            "/v3/api-docs/**",
+            "/v3/api-docs.yaml",
+            "/swagger-resources/**",
+            "/webjars/**",
+            // 静态资源和错误页面
+            "/error",
+            "/favicon.ico",
+            "/css/**",
+            "/js/**",
+            "/images/**"
+    );
+
+    private static final String WILDCARD = "**";
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    private final Node root = new Node();
+
+    public PublicRoutes() {
+        this(PUBLIC_PATTERNS);
+    }
+
+    public PublicRoutes(List<String> patterns) {
+        patterns.forEach(this::add);
+    }
+
+    @Override
+    public boolean matches(HttpServletRequest request) {
+        return matches(urlPathHelper.getPathWithinApplication(request));
+    }
+
+    /**
+     * 判断路径是否公开
+     *
+     * @param path 应用内路径（不含context-path）
+     * @return 是否公开
+     */
+    public boolean matches(String path) {
+        Node node = root;
+        int length = path.length();
+        int start = 0;
+        while (start < length && path.charAt(start) == '/') {
+            start++;
+        }
+        while (start < length) {
+            if (node.prefix) {
+                return true;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.child(path, start, end);
+            if (node == null) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return node.exact || node.prefix;
+    }
+
+    private void add(String pattern) {
+        Node node = root;
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (WILDCARD.equals(segment)) {
+                node.prefix = true;
+                return;
+            }
+            if (segment.contains("*")) {
+                throw new IllegalArgumentException("公开路由只支持路径末尾的/**通配: " + pattern);
+            }
+            node = node.addChild(segment);
+        }
+        node.exact = true;
+    }
+
+    /**
+     * 前缀树节点
+     * 子节点存放在开放寻址表中，按路径片段的区间哈希查找，匹配时不需要截取子串
+     */
+    private static final class Node {
+
+        private String[] segments = new String[4];
+
+        private Node[] children = new Node[4];
+
+        private int size;
+
+        // 路径恰好在该节点结束时匹配
+        private boolean exact;
+
+        // 该节点及其所有子路径都匹配（/**）
+        private boolean prefix;
+
+        Node child(String path, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            int length = end - start;
+            int mask = segments.length - 1;
+            for (int index = spread(hash) & mask; ; index = (index + 1) & mask) {
+                String segment = segments[index];
+                if (segment == null) {
+                    return null;
+                }
+                if (segment.length() == length && segment.hashCode() == hash
+                        && path.regionMatches(start, segment, 0, length)) {
+                    return children[index];
+                }
+            }
+        }
+
+        Node addChild(String segment) {
+            int mask = segments.length - 1;
+            int index = spread(segment.hashCode()) & mask;
+            while (segments[index] != null) {
+                if (segments[index].equals(segment)) {
+                    return children[index];
+                }
+                index = (index + 1) & mask;
+            }
+            Node node = new Node();
+            segments[index] = segment;
+            children[index] = node;
+            // 保持装载因子不超过1/2
+            if (++size * 2 > segments.length) {
+                resize();
+            }
+            return node;
+        }
+
+        private void resize() {
+            String[] oldSegments = segments;
+            Node[] oldChildren = children;
+            segments = new String[oldSegments.length * 2];
+            children = new Node[oldChildren.length * 2];
+            int mask = segments.length - 1;
+            for (int i = 0; i < oldSegments.length; i++) {
+                if (oldSegments[i] != null) {
+                    int index = spread(oldSegments[i].hashCode()) & mask;
+                    while (segments[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    segments[index] = oldSegments[i];
+                    children[index] = oldChildren[i];
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.ankai.security;
+
+import com.ankai.common.Result;
+import com.ankai.config.RateLimitProperties;
+import com.ankai.utils.JwtUtil;
+import com.ankai.utils.LogUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+
+/**
+ * 限流过滤器
+ * 位于JWT认证过滤器之后，按配置的规则对登录用户或客户端IP限流，
+ * 超出预算时直接响应429并通过Retry-After提示重试时间
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LogUtil.getLogger(RateLimitFilter.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    @Autowired
+    private RedisRateLimiter rateLimiter;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+
+        if (!properties.isEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String path = urlPathHelper.getPathWithinApplication(request);
+        RateLimitProperties.Rule rule = properties.matchRule(path);
+        if (rule == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String identity = resolveIdentity(request, rule);
+        long waitMillis = rateLimiter.tryAcquire(rule, identity);
+        if (waitMillis > 0) {
+            LogUtil.warn(logger, "请求被限流: rule={}, identity={}, path={}", rule.getName(), identity, path);
+            writeTooManyRequests(response, waitMillis);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * 解析限流维度值：按用户限流时优先使用JWT中的用户ID，未登录请求退化为按IP
+     */
+    private String resolveIdentity(HttpServletRequest request, RateLimitProperties.Rule rule) {
+        if (rule.getKeyType() == RateLimitProperties.KeyType.USER) {
+            Object attribute = request.getAttribute(JwtAuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE);
+            if (attribute instanceof JwtUtil.VerifiedToken verifiedToken && verifiedToken.getUserId() != null) {
+                return "u" + verifiedToken.getUserId();
+            }
+        }
+        return "ip" + request.getRemoteAddr();
+    }
+
+    private void writeTooManyRequests(HttpServletResponse response, long waitMillis) throws IOException {
+        long retryAfterSeconds = Math.max(1, (waitMillis + 999) / 1000);
+        response.setContentType("application/json;charset=UTF-8");
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        Result<Object> result = Result.error(429, "请求过于频繁，请稍后重试");
+        response.getWriter().write(OBJECT_MAPPER.writeValueAsString(result));
+    }
+}
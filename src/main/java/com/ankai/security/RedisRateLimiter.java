@@ -0,0 +1,206 @@
+package com.ankai.security;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.ankai.config.RateLimitProperties;
+import com.ankai.utils.LogUtil;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 集群限流器（Redis令牌桶 + 本地租约）
+ * 令牌桶状态保存在Redis中，由Lua脚本原子地补充和扣减，所有节点共享同一预算；
+ * 每次访问Redis按批租用多个令牌到本地，之后的请求直接消耗本地令牌；
+ * 被拒绝的key在建议的等待时间内也直接在本地拒绝，因此大部分请求不访问Redis。
+ * 租到本地的令牌已在Redis中扣除，集群总放行量不会超过配置的预算。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class RedisRateLimiter {
+
+    private static final Logger logger = LogUtil.getLogger(RedisRateLimiter.class);
+
+    // 令牌桶Redis key前缀
+    private static final String BUCKET_KEY_PREFIX = "rate-limit:";
+
+    /**
+     * 令牌桶脚本
+     * KEYS[1]: 令牌桶key
+     * ARGV[1]: 容量, ARGV[2]: 每秒补充令牌数, ARGV[3]: 本次申请的令牌数
+     * 返回: {实际获得的令牌数, 获得0个时建议等待的毫秒数}
+     * 使用Redis服务器时间，避免各节点时钟偏差
+     */
+    private static final String TOKEN_BUCKET_SCRIPT =
+            "local capacity = tonumber(ARGV[1]) " +
+            "local rate = tonumber(ARGV[2]) " +
+            "local requested = tonumber(ARGV[3]) " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(bucket[1]) " +
+            "local ts = tonumber(bucket[2]) " +
+            "if tokens == nil or ts == nil then tokens = capacity ts = now end " +
+            "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000) " +
+            "local granted = math.min(requested, math.floor(tokens)) " +
+            "tokens = tokens - granted " +
+            "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now)) " +
+            "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate) + 1000) " +
+            "local wait = 0 " +
+            "if granted == 0 then wait = math.ceil((1 - tokens) * 1000 / rate) end " +
+            "return {granted, wait}";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    private RScript script;
+
+    private volatile String scriptSha;
+
+    /**
+     * 本地租约状态
+     * Key: 规则名:维度值
+     */
+    private LRUCache<String, LocalBucket> localBuckets;
+
+    private final LongAdder localAllowed = new LongAdder();
+    private final LongAdder localRejected = new LongAdder();
+    private final LongAdder redisCalls = new LongAdder();
+    private final LongAdder redisRejected = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.script = redissonClient.getScript(StringCodec.INSTANCE);
+        this.localBuckets = CacheUtil.newLRUCache(properties.getMaxLocalKeys());
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @param rule     限流规则
+     * @param identity 维度值（用户ID或IP）
+     * @return 0表示放行，大于0表示被限流并建议等待的毫秒数
+     */
+    public long tryAcquire(RateLimitProperties.Rule rule, String identity) {
+        String key = rule.getName() + ":" + identity;
+        LocalBucket bucket = localBuckets.get(key, false, LocalBucket::new);
+
+        synchronized (bucket) {
+            long now = System.currentTimeMillis();
+            if (bucket.blockedUntil > now) {
+                localRejected.increment();
+                return bucket.blockedUntil - now;
+            }
+            if (bucket.leased > 0 && bucket.leaseExpiresAt > now) {
+                bucket.leased--;
+                localAllowed.increment();
+                return 0;
+            }
+
+            // 本地令牌用完，向Redis批量租用
+            long[] result = acquireFromRedis(BUCKET_KEY_PREFIX + key, rule);
+            if (result == null) {
+                // Redis不可用时放行，限流不应成为可用性的单点
+                return 0;
+            }
+            long granted = result[0];
+            if (granted <= 0) {
+                redisRejected.increment();
+                long waitMillis = Math.max(1, result[1]);
+                bucket.blockedUntil = now + waitMillis;
+                bucket.leased = 0;
+                return waitMillis;
+            }
+            bucket.leased = granted - 1;
+            bucket.leaseExpiresAt = now + properties.getLeaseTtlMs();
+            return 0;
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("localKeys", localBuckets.size());
+        stats.put("localAllowed", localAllowed.sum());
+        stats.put("localRejected", localRejected.sum());
+        stats.put("redisCalls", redisCalls.sum());
+        stats.put("redisRejected", redisRejected.sum());
+        stats.put("redisErrors", redisErrors.sum());
+        return stats;
+    }
+
+    private long[] acquireFromRedis(String redisKey, RateLimitProperties.Rule rule) {
+        redisCalls.increment();
+        List<Object> keys = Collections.singletonList(redisKey);
+        Object[] args = {
+                String.valueOf(rule.getCapacity()),
+                String.valueOf(rule.getRefillPerSecond()),
+                String.valueOf(rule.effectiveLeaseSize())
+        };
+        try {
+            List<Object> result;
+            try {
+                result = script.evalSha(RScript.Mode.READ_WRITE, loadScript(), RScript.ReturnType.MULTI, keys, args);
+            } catch (RedisException e) {
+                if (e.getMessage() == null || !e.getMessage().contains("NOSCRIPT")) {
+                    throw e;
+                }
+                // Redis重启或执行过SCRIPT FLUSH，重新加载脚本
+                scriptSha = null;
+                result = script.evalSha(RScript.Mode.READ_WRITE, loadScript(), RScript.ReturnType.MULTI, keys, args);
+            }
+            return new long[]{toLong(result.get(0)), toLong(result.get(1))};
+        } catch (Exception e) {
+            redisErrors.increment();
+            LogUtil.error(logger, "限流脚本执行失败，放行请求: key={}", redisKey, e);
+            return null;
+        }
+    }
+
+    private String loadScript() {
+        String sha = scriptSha;
+        if (sha == null) {
+            sha = script.scriptLoad(TOKEN_BUCKET_SCRIPT);
+            scriptSha = sha;
+        }
+        return sha;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : Long.parseLong(value.toString());
+    }
+
+    /**
+     * 本地租约状态，访问时以自身为锁
+     */
+    private static final class LocalBucket {
+
+        // 剩余的已租用令牌数
+        private long leased;
+
+        // 租约过期时间
+        private long leaseExpiresAt;
+
+        // 被限流直到该时间
+        private long blockedUntil;
+    }
+}
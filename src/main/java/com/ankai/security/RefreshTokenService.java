@@ -0,0 +1,323 @@
+package com.ankai.security;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.ankai.exception.BusinessException;
+import com.ankai.utils.LogUtil;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 刷新令牌服务
+ * 刷新令牌为不透明随机串，Redis中只保存其SHA-256摘要；每次使用都会轮换出新令牌。
+ * 同一次登录产生的令牌属于同一个令牌族，族记录保存当前有效令牌的摘要：
+ * 已被轮换掉的旧令牌再次出现说明令牌可能泄露，此时整个令牌族立即作废。
+ * 并发刷新（多个标签页、网络重试）时，刚被轮换掉的上一个令牌在短暂宽限期内仍可使用，返回同一个新令牌，不视为重复使用；
+ * 宽限期内保存的新令牌以旧令牌派生的密钥加密（AES-GCM），只有持有旧令牌明文的一方能解密，Redis中不出现令牌明文。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class RefreshTokenService {
+
+    private static final Logger logger = LogUtil.getLogger(RefreshTokenService.class);
+
+    // 刷新令牌记录Redis key前缀（key为令牌摘要，value为 userId:familyId:rememberMe）
+    private static final String TOKEN_KEY_PREFIX = "auth:refresh:";
+
+    // 令牌族Redis key前缀（value为当前有效令牌的摘要）
+    private static final String FAMILY_KEY_PREFIX = "auth:refresh-family:";
+
+    // 宽限期记录Redis key前缀（key为旧令牌摘要，value为 新令牌摘要:加密的新令牌）
+    private static final String GRACE_KEY_PREFIX = "auth:refresh-grace:";
+
+    // 轮换脚本返回值：令牌族不存在（已过期或已登出）
+    private static final String ROTATE_MISSING = "0";
+
+    // 轮换脚本返回值：旧令牌被重复使用（令牌族已作废）
+    private static final String ROTATE_REUSED = "-1";
+
+    // 轮换脚本返回值：轮换成功
+    private static final String ROTATE_OK = "1";
+
+    // 宽限期密钥派生标签（以旧令牌明文为HMAC密钥，与Redis中保存的摘要无关）
+    private static final byte[] GRACE_KEY_LABEL = "ankai-refresh-grace".getBytes(StandardCharsets.UTF_8);
+
+    // AES-GCM随机数长度（字节）
+    private static final int GCM_IV_LENGTH = 12;
+
+    // AES-GCM认证标签长度（位）
+    private static final int GCM_TAG_BITS = 128;
+
+    /**
+     * 轮换脚本
+     * KEYS[1]: 令牌族key, KEYS[2]: 新令牌key, KEYS[3]: 旧令牌宽限期key
+     * ARGV[1]: 旧令牌摘要, ARGV[2]: 新令牌摘要, ARGV[3]: 新令牌记录, ARGV[4]: 有效期（毫秒）,
+     * ARGV[5]: 加密的新令牌, ARGV[6]: 宽限期（毫秒）
+     * 返回: 1轮换成功，0令牌族不存在，-1旧令牌被重复使用（令牌族已作废），
+     * 其他为宽限期内已轮换出的加密新令牌（仅当它仍是令牌族的当前令牌时）
+     */
+    private static final DefaultRedisScript<String> ROTATE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1]) " +
+            "if not current then return '0' end " +
+            "if current ~= ARGV[1] then " +
+            "  local grace = redis.call('GET', KEYS[3]) " +
+            "  if grace then " +
+            "    local sep = string.find(grace, ':', 1, true) " +
+            "    if string.sub(grace, 1, sep - 1) == current then return string.sub(grace, sep + 1) end " +
+            "  end " +
+            "  redis.call('DEL', KEYS[1]) return '-1' " +
+            "end " +
+            "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[4]) " +
+            "redis.call('SET', KEYS[2], ARGV[3], 'PX', ARGV[4]) " +
+            "if tonumber(ARGV[6]) > 0 then " +
+            "  redis.call('SET', KEYS[3], ARGV[2] .. ':' .. ARGV[5], 'PX', ARGV[6]) " +
+            "end " +
+            "return '1'",
+            String.class);
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 刷新令牌有效期（秒，默认1天）
+    @Value("${jwt.refresh.expiration:86400}")
+    private long expiration;
+
+    // 记住我时刷新令牌有效期（秒，默认7天）
+    @Value("${jwt.refresh.expiration-remember:604800}")
+    private long expirationRemember;
+
+    // 旧令牌轮换后的宽限期（秒，默认5秒），宽限期内再次使用返回同一个新令牌，0表示关闭
+    @Value("${jwt.refresh.reuse-grace-seconds:5}")
+    private long reuseGraceSeconds;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder rotated = new LongAdder();
+    private final LongAdder graceReused = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder reuseDetected = new LongAdder();
+
+    /**
+     * 登录时签发新的刷新令牌（新建令牌族）
+     *
+     * @param userId     用户ID
+     * @param rememberMe 是否记住我
+     * @return 签发结果
+     */
+    public RefreshGrant issue(Long userId, boolean rememberMe) {
+        String familyId = UUID.randomUUID().toString().replace("-", "");
+        String token = newToken();
+        String tokenHash = DigestUtil.sha256Hex(token);
+        long ttl = ttlSeconds(rememberMe);
+
+        stringRedisTemplate.opsForValue().set(TOKEN_KEY_PREFIX + tokenHash,
+                record(userId, familyId, rememberMe), ttl, TimeUnit.SECONDS);
+        stringRedisTemplate.opsForValue().set(FAMILY_KEY_PREFIX + familyId, tokenHash, ttl, TimeUnit.SECONDS);
+        issued.increment();
+        return new RefreshGrant(token, familyId, userId, rememberMe, ttl);
+    }
+
+    /**
+     * 使用刷新令牌换取新的刷新令牌（原令牌在宽限期后失效）
+     *
+     * @param refreshToken 刷新令牌
+     * @return 轮换结果
+     */
+    public RefreshGrant rotate(String refreshToken) {
+        String oldHash = DigestUtil.sha256Hex(refreshToken);
+        String record = stringRedisTemplate.opsForValue().get(TOKEN_KEY_PREFIX + oldHash);
+        if (record == null) {
+            rejected.increment();
+            throw BusinessException.of(401, "刷新令牌无效或已过期");
+        }
+
+        String[] parts = record.split(":");
+        Long userId = Long.valueOf(parts[0]);
+        String familyId = parts[1];
+        boolean rememberMe = "1".equals(parts[2]);
+        long ttl = ttlSeconds(rememberMe);
+
+        String token = newToken();
+        String tokenHash = DigestUtil.sha256Hex(token);
+        String result = stringRedisTemplate.execute(ROTATE_SCRIPT,
+                Arrays.asList(FAMILY_KEY_PREFIX + familyId, TOKEN_KEY_PREFIX + tokenHash, GRACE_KEY_PREFIX + oldHash),
+                oldHash, tokenHash, record(userId, familyId, rememberMe), String.valueOf(ttl * 1000),
+                sealSuccessor(refreshToken, token), String.valueOf(reuseGraceSeconds * 1000));
+
+        if (result == null || ROTATE_MISSING.equals(result)) {
+            rejected.increment();
+            throw BusinessException.of(401, "刷新令牌无效或已过期");
+        }
+        if (ROTATE_REUSED.equals(result)) {
+            reuseDetected.increment();
+            LogUtil.warn(logger, "检测到刷新令牌重复使用，已作废令牌族: userId={}, familyId={}", userId, familyId);
+            throw BusinessException.of(401, "刷新令牌已失效，请重新登录");
+        }
+        if (!ROTATE_OK.equals(result)) {
+            // 并发刷新：宽限期内返回已轮换出的同一个新令牌
+            String successor = openSuccessor(refreshToken, result);
+            if (successor == null) {
+                rejected.increment();
+                throw BusinessException.of(401, "刷新令牌无效或已过期");
+            }
+            graceReused.increment();
+            return new RefreshGrant(successor, familyId, userId, rememberMe, ttl);
+        }
+
+        rotated.increment();
+        return new RefreshGrant(token, familyId, userId, rememberMe, ttl);
+    }
+
+    /**
+     * 作废令牌族（登出时调用），该族所有刷新令牌立即失效
+     *
+     * @param familyId 令牌族ID
+     */
+    public void revokeFamily(String familyId) {
+        if (familyId == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.delete(FAMILY_KEY_PREFIX + familyId);
+        } catch (Exception e) {
+            LogUtil.error(logger, "作废刷新令牌族失败: familyId={}", familyId, e);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("issued", issued.sum());
+        stats.put("rotated", rotated.sum());
+        stats.put("graceReused", graceReused.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("reuseDetected", reuseDetected.sum());
+        return stats;
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[32];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * 以旧令牌派生的密钥加密新令牌（宽限期内保存在Redis中）
+     *
+     * @return base64url(随机数 + 密文)
+     */
+    private String sealSuccessor(String oldToken, String token) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, graceKey(oldToken), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(token.getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = new byte[iv.length + encrypted.length];
+            System.arraycopy(iv, 0, sealed, 0, iv.length);
+            System.arraycopy(encrypted, 0, sealed, iv.length, encrypted.length);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("加密刷新令牌失败", e);
+        }
+    }
+
+    /**
+     * 用旧令牌解密宽限期内保存的新令牌
+     *
+     * @return 新令牌，解密失败时返回null
+     */
+    private String openSuccessor(String oldToken, String sealedToken) {
+        try {
+            byte[] sealed = Base64.getUrlDecoder().decode(sealedToken);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, graceKey(oldToken), new GCMParameterSpec(GCM_TAG_BITS, sealed, 0, GCM_IV_LENGTH));
+            byte[] token = cipher.doFinal(sealed, GCM_IV_LENGTH, sealed.length - GCM_IV_LENGTH);
+            return new String(token, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            LogUtil.warn(logger, "宽限期刷新令牌解密失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 宽限期密钥：HMAC-SHA256(旧令牌明文, 标签)，只有持有旧令牌明文的一方能计算
+     */
+    private static SecretKeySpec graceKey(String oldToken) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(oldToken.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return new SecretKeySpec(mac.doFinal(GRACE_KEY_LABEL), "AES");
+    }
+
+    private long ttlSeconds(boolean rememberMe) {
+        return rememberMe ? expirationRemember : expiration;
+    }
+
+    private static String record(Long userId, String familyId, boolean rememberMe) {
+        return userId + ":" + familyId + ":" + (rememberMe ? "1" : "0");
+    }
+
+    /**
+     * 刷新令牌签发结果
+     */
+    @Getter
+    public static class RefreshGrant {
+
+        /**
+         * 刷新令牌（明文，只返回给客户端一次）
+         */
+        private final String token;
+
+        /**
+         * 令牌族ID
+         */
+        private final String familyId;
+
+        /**
+         * 用户ID
+         */
+        private final Long userId;
+
+        /**
+         * 是否记住我
+         */
+        private final boolean rememberMe;
+
+        /**
+         * 有效期（秒）
+         */
+        private final long expiresIn;
+
+        private RefreshGrant(String token, String familyId, Long userId, boolean rememberMe, long expiresIn) {
+            this.token = token;
+            this.familyId = familyId;
+            this.userId = userId;
+            this.rememberMe = rememberMe;
+            this.expiresIn = expiresIn;
+        }
+    }
+}
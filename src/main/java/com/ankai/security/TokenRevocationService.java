@@ -0,0 +1,246 @@
+package com.ankai.security;
+
+import com.ankai.utils.LogUtil;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token吊销服务（基于jti）
+ * 本地维护布隆过滤器 + 精确集合，请求校验无需访问网络；
+ * 吊销记录持久化在Redis有序集合中（score为Token过期时间），节点启动时加载，
+ * 新增吊销通过Redis发布订阅同步到所有节点；每条记录在Token过期后清除。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class TokenRevocationService {
+
+    private static final Logger logger = LogUtil.getLogger(TokenRevocationService.class);
+
+    // 吊销记录Redis key（ZSET，member为jti，score为过期时间戳）
+    private static final String REVOKED_KEY = "auth:revoked-jti";
+
+    // 吊销广播频道
+    private static final String REVOKED_TOPIC = "auth:revoked-jti";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    // 布隆过滤器预期容量
+    @Value("${jwt.revocation.bloom-expected-entries:100000}")
+    private int bloomExpectedEntries;
+
+    /**
+     * 精确集合
+     * Key: jti, Value: Token过期时间戳（毫秒）
+     */
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    /**
+     * 布隆过滤器，清理过期记录时整体重建
+     */
+    private volatile BloomFilter bloomFilter;
+
+    private RTopic revokedTopic;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder bloomPositives = new LongAdder();
+    private final LongAdder revokedHits = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.bloomFilter = new BloomFilter(bloomExpectedEntries);
+        this.revokedTopic = redissonClient.getTopic(REVOKED_TOPIC, StringCodec.INSTANCE);
+        revokedTopic.addListener(String.class, (channel, message) -> onRevokedMessage(message));
+        loadFromRedis();
+    }
+
+    /**
+     * 吊销Token
+     *
+     * @param jti        Token唯一标识
+     * @param expiration Token过期时间
+     */
+    public void revoke(String jti, Date expiration) {
+        long expiresAt = expiration.getTime();
+        if (expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        addLocal(jti, expiresAt);
+        try {
+            stringRedisTemplate.opsForZSet().add(REVOKED_KEY, jti, expiresAt);
+            revokedTopic.publish(jti + ":" + expiresAt);
+        } catch (Exception e) {
+            LogUtil.error(logger, "同步Token吊销记录失败: jti={}", jti, e);
+        }
+        LogUtil.info(logger, "Token已吊销: jti={}", jti);
+    }
+
+    /**
+     * 检查Token是否已吊销（纯本地判断）
+     *
+     * @param jti Token唯一标识
+     * @return 是否已吊销
+     */
+    public boolean isRevoked(String jti) {
+        checks.increment();
+        if (jti == null || !bloomFilter.mightContain(jti)) {
+            return false;
+        }
+        bloomPositives.increment();
+        Long expiresAt = revoked.get(jti);
+        if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+            revokedHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 定期清理已过期的吊销记录并重建布隆过滤器
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int before = revoked.size();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+
+        BloomFilter rebuilt = new BloomFilter(Math.max(bloomExpectedEntries, revoked.size() * 2));
+        revoked.keySet().forEach(rebuilt::put);
+        this.bloomFilter = rebuilt;
+        // 重建期间新增的记录补充写入
+        revoked.keySet().forEach(rebuilt::put);
+
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, Double.NEGATIVE_INFINITY, now);
+        } catch (Exception e) {
+            LogUtil.error(logger, "清理Redis中过期的Token吊销记录失败", e);
+        }
+        if (before != revoked.size()) {
+            LogUtil.info(logger, "清理过期Token吊销记录: {} -> {}", before, revoked.size());
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("revoked", revoked.size());
+        stats.put("checks", checks.sum());
+        stats.put("bloomPositives", bloomPositives.sum());
+        stats.put("revokedHits", revokedHits.sum());
+        return stats;
+    }
+
+    private void loadFromRedis() {
+        try {
+            Set<ZSetOperations.TypedTuple<String>> entries = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(REVOKED_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+            if (entries != null) {
+                entries.forEach(entry -> addLocal(entry.getValue(), entry.getScore().longValue()));
+            }
+            LogUtil.info(logger, "加载Token吊销记录: {}", revoked.size());
+        } catch (Exception e) {
+            LogUtil.error(logger, "加载Token吊销记录失败", e);
+        }
+    }
+
+    private void onRevokedMessage(String message) {
+        int separator = message.lastIndexOf(':');
+        if (separator <= 0) {
+            LogUtil.warn(logger, "无法识别的Token吊销消息: {}", message);
+            return;
+        }
+        addLocal(message.substring(0, separator), Long.parseLong(message.substring(separator + 1)));
+    }
+
+    private void addLocal(String jti, long expiresAt) {
+        // 先写精确集合再写布隆过滤器，保证布隆命中时精确集合一定可见
+        revoked.put(jti, expiresAt);
+        bloomFilter.put(jti);
+    }
+
+    /**
+     * 线程安全的布隆过滤器（1%误判率）
+     */
+    private static final class BloomFilter {
+
+        private final AtomicLongArray bits;
+        private final int bitSize;
+        private final int hashCount;
+
+        BloomFilter(int expectedEntries) {
+            // m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+            long m = (long) Math.ceil(-expectedEntries * Math.log(0.01) / (Math.log(2) * Math.log(2)));
+            this.bitSize = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedEntries * Math.log(2)));
+            this.bits = new AtomicLongArray((bitSize + 63) >>> 6);
+        }
+
+        void put(String value) {
+            long hash = hash64(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                int index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitSize;
+                int word = index >>> 6;
+                long mask = 1L << index;
+                long current;
+                do {
+                    current = bits.get(word);
+                    if ((current & mask) != 0) {
+                        break;
+                    }
+                } while (!bits.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash64(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                int index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitSize;
+                if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * FNV-1a 64位哈希
+         */
+        private static long hash64(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.ankai.security;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.ankai.utils.LogUtil;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用户Token版本服务
+ * 每个用户在Redis中维护一个版本号，自包含Token签发时写入当前版本；
+ * 用户状态、角色或角色权限变更时递增版本号，旧版本的Token即不再被信任。
+ * 版本号在本地缓存镜像，变更通过Redis发布订阅同步到所有节点。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class TokenVersionService {
+
+    private static final Logger logger = LogUtil.getLogger(TokenVersionService.class);
+
+    // 版本号Redis key前缀
+    private static final String VERSION_KEY_PREFIX = "auth:token-version:";
+
+    // 版本变更广播频道
+    private static final String VERSION_TOPIC = "auth:token-version";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    // 本地镜像存活时间（秒），广播丢失时的兜底刷新周期
+    @Value("${jwt.self-contained.version-cache-ttl:30}")
+    private long cacheTtlSeconds;
+
+    // 本地镜像容量
+    @Value("${jwt.self-contained.version-cache-max-size:50000}")
+    private int cacheMaxSize;
+
+    /**
+     * Key: userId, Value: 当前版本号
+     */
+    private LRUCache<Long, Long> versionCache;
+
+    private RTopic versionTopic;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisLoads = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.versionCache = CacheUtil.newLRUCache(cacheMaxSize, cacheTtlSeconds * 1000);
+        this.versionTopic = redissonClient.getTopic(VERSION_TOPIC, StringCodec.INSTANCE);
+        versionTopic.addListener(String.class, (channel, message) -> onVersionMessage(message));
+    }
+
+    /**
+     * 获取用户当前Token版本号
+     *
+     * @param userId 用户ID
+     * @return 版本号，从未变更过的用户为0
+     */
+    public long getVersion(Long userId) {
+        Long version = versionCache.get(userId, false);
+        if (version != null) {
+            localHits.increment();
+            return version;
+        }
+
+        redisLoads.increment();
+        String value = stringRedisTemplate.opsForValue().get(VERSION_KEY_PREFIX + userId);
+        long loaded = value != null ? Long.parseLong(value) : 0L;
+        versionCache.put(userId, loaded);
+        return loaded;
+    }
+
+    /**
+     * 递增用户Token版本号，使该用户已签发的自包含Token失效
+     * 如果当前处于事务中，在事务提交后再递增
+     *
+     * @param userId 用户ID
+     */
+    public void bump(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doBump(userId);
+                }
+            });
+        } else {
+            doBump(userId);
+        }
+    }
+
+    /**
+     * 递增多个用户的Token版本号
+     *
+     * @param userIds 用户ID列表
+     */
+    public void bumpAll(Collection<?> userIds) {
+        if (userIds != null) {
+            userIds.forEach(id -> bump(Long.valueOf(id.toString())));
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", versionCache.size());
+        stats.put("localHits", localHits.sum());
+        stats.put("redisLoads", redisLoads.sum());
+        return stats;
+    }
+
+    private void doBump(Long userId) {
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + userId);
+            versionCache.put(userId, version);
+            versionTopic.publish(userId + ":" + version);
+            LogUtil.info(logger, "用户Token版本递增: userId={}, version={}", userId, version);
+        } catch (Exception e) {
+            // 无法确认新版本时移除本地镜像，下次访问重新从Redis加载
+            versionCache.remove(userId);
+            LogUtil.error(logger, "递增用户Token版本失败: userId={}", userId, e);
+        }
+    }
+
+    private void onVersionMessage(String message) {
+        int separator = message.indexOf(':');
+        if (separator <= 0) {
+            LogUtil.warn(logger, "无法识别的Token版本消息: {}", message);
+            return;
+        }
+        Long userId = Long.valueOf(message.substring(0, separator));
+        long version = Long.parseLong(message.substring(separator + 1));
+        Long current = versionCache.get(userId, false);
+        // 只接受更新的版本，避免乱序消息回退
+        if (current == null || current < version) {
+            versionCache.put(userId, version);
+        }
+    }
+}
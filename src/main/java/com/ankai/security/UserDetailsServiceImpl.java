@@ -35,6 +35,9 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     private RoleMapper roleMapper;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         LogUtil.info(logger, "加载用户信息: {}", username);
@@ -57,20 +60,7 @@ public class UserDetailsServiceImpl implements UserDetailsService {
             throw new UsernameNotFoundException("用户已被禁用: " + username);
         }
 
-        // 查询用户角色
-        List<Role> roles = roleMapper.selectRolesByUserId(user.getId());
-        List<GrantedAuthority> authorities = new ArrayList<>();
-
-        // 添加角色权限（以ROLE_开头）
-        authorities.addAll(roles.stream()
-                .map(role -> new SimpleGrantedAuthority("ROLE_" + role.getRoleCode()))
-                .collect(Collectors.toList()));
-
-        // 添加权限（不以ROLE_开头）
-        authorities.addAll(roles.stream()
-                .map(role -> new SimpleGrantedAuthority(role.getRoleCode()))
-                .collect(Collectors.toList()));
-
+        List<GrantedAuthority> authorities = loadAuthorities(user.getId());
         LogUtil.info(logger, "用户 {} 拥有权限: {}", username, authorities);
 
         // 创建UserDetails对象
@@ -86,4 +76,71 @@ public class UserDetailsServiceImpl implements UserDetailsService {
                 user
         );
     }
+
+    /**
+     * 加载请求认证用的用户快照（JWT过滤器调用）
+     * 优先读取进程内缓存；未命中时查询不含密码的用户信息及角色并放入缓存
+     *
+     * @param username 用户名
+     * @return 用户快照（密码为null）
+     */
+    public CustomUserDetails loadCachedUserByUsername(String username) throws UsernameNotFoundException {
+        CustomUserDetails cached = principalCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
+        User user = userMapper.selectAuthInfoByUsername(username);
+        if (user == null || user.getDeleted() == 1 || user.getStatus() == 0) {
+            LogUtil.warn(logger, "用户不存在或不可用: {}", username);
+            throw new UsernameNotFoundException("用户不存在或不可用: " + username);
+        }
+
+        CustomUserDetails userDetails = new CustomUserDetails(
+                user.getId(),
+                user.getUsername(),
+                null,
+                true,
+                true,
+                true,
+                true,
+                loadAuthorities(user.getId()),
+                user
+        );
+        principalCache.put(userDetails);
+        return userDetails;
+    }
+
+    /**
+     * 查询用户角色并转换为权限列表
+     */
+    private List<GrantedAuthority> loadAuthorities(Long userId) {
+        List<String> roleCodes = roleMapper.selectRolesByUserId(userId).stream()
+                .map(Role::getRoleCode)
+                .collect(Collectors.toList());
+        return toAuthorities(roleCodes);
+    }
+
+    /**
+     * 角色编码转换为权限列表
+     * 每个角色同时生成 ROLE_ 前缀的角色权限和不带前缀的权限
+     *
+     * @param roleCodes 角色编码
+     * @return 权限列表
+     */
+    public static List<GrantedAuthority> toAuthorities(List<String> roleCodes) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+
+        // 添加角色权限（以ROLE_开头）
+        authorities.addAll(roleCodes.stream()
+                .map(roleCode -> new SimpleGrantedAuthority("ROLE_" + roleCode))
+                .collect(Collectors.toList()));
+
+        // 添加权限（不以ROLE_开头）
+        authorities.addAll(roleCodes.stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList()));
+
+        return authorities;
+    }
 }
@@ -19,6 +19,14 @@ public interface AuthService {
      */
     LoginResponse login(LoginRequest loginRequest);
 
+    /**
+     * 使用刷新令牌换取新的访问Token和刷新令牌
+     *
+     * @param refreshToken 刷新令牌
+     * @return 新的令牌（不含用户信息）
+     */
+    LoginResponse refresh(String refreshToken);
+
     /**
      * 用户登出
      *
@@ -35,6 +43,14 @@ public interface AuthService {
      */
     LoginResponse.UserInfo getCurrentUser(String token);
 
+    /**
+     * 获取当前用户资料的版本标识（用作ETag），不访问数据库
+     *
+     * @param token 令牌
+     * @return 版本标识，令牌无效返回null
+     */
+    String getCurrentUserVersion(String token);
+
     /**
      * 验证令牌
      *
@@ -2,10 +2,12 @@ package com.ankai.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.ankai.common.CursorPage;
 import com.ankai.common.PageRequest;
 import com.ankai.dto.ChatSession;
 import com.ankai.entity.Message;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -16,10 +18,33 @@ import java.util.List;
  */
 public interface MessageService extends IService<Message> {
 
+    /**
+     * 消息内容最大长度（字符）
+     */
+    int MAX_CONTENT_LENGTH = 2000;
+
     /**
      * 发送消息（聊天风格，无标题）
+     *
+     * @return 消息ID，发送失败时返回null
+     */
+    Long sendMessage(Long senderId, String senderName, Long receiverId, String receiverName, String content);
+
+    /**
+     * 批量发送消息（指定用户和/或角色下的所有用户）
+     *
+     * @return 实际发送的接收者数量
      */
-    boolean sendMessage(Long senderId, String senderName, Long receiverId, String receiverName, String content);
+    int sendBatchMessage(Long senderId, String senderName, Collection<Long> receiverIds,
+                         Collection<String> roleCodes, String content);
+
+    /**
+     * 持久化写入流中的消息（写后模式，由MessageStreamConsumer调用）
+     * 已落库的消息跳过，落库前接收者已读过的会话中的消息直接标记为已读
+     *
+     * @return 实际落库的消息数
+     */
+    int persistPendingMessages(List<Message> messages);
 
     /**
      * 获取与指定用户的聊天记录
@@ -27,9 +52,17 @@ public interface MessageService extends IService<Message> {
     Page<Message> getChatHistory(Long userId, Long otherUserId, PageRequest pageRequest);
 
     /**
-     * 获取聊天会话列表
+     * 按游标获取与指定用户的聊天记录（不统计总数，耗时与翻页深度无关）
+     *
+     * @param before 上一页返回的游标，为空时从最新消息开始
+     * @param size   每页条数
+     */
+    CursorPage<Message> getChatHistoryBefore(Long userId, Long otherUserId, String before, int size);
+
+    /**
+     * 分页获取聊天会话列表（按最后消息时间倒序）
      */
-    List<ChatSession> getChatSessions(Long userId);
+    Page<ChatSession> getChatSessions(Long userId, PageRequest pageRequest);
 
     /**
      * 分页查询收到的消息
@@ -0,0 +1,201 @@
+package com.ankai.service;
+
+import com.ankai.entity.Message;
+import com.ankai.mapper.MessageMapper;
+import com.ankai.utils.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 站内信写入流消费者
+ * 写后模式下定期从Redis Stream批量读取消息并落库，落库事务提交后确认并清理待落库数据；
+ * 整批落库失败时逐条重试，失败的消息保留在本节点的待确认列表中下个周期重试，
+ * 多次投递仍无法落库的消息移入死信流，不会阻塞后续消息。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Component
+public class MessageStreamConsumer {
+
+    private static final Logger logger = LogUtil.getLogger(MessageStreamConsumer.class);
+
+    // 单个周期最多落库的批次数，避免长时间占用调度线程
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    @Autowired
+    private MessageStreamService messageStreamService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    // 每批落库的最大消息数
+    @Value("${message.write-behind.batch-size:500}")
+    private int batchSize;
+
+    // 其他节点超过该时间未确认的消息由本节点接管（毫秒）
+    @Value("${message.write-behind.claim-idle-ms:60000}")
+    private long claimIdleMs;
+
+    // 单条消息最多投递次数，超过后移入死信流
+    @Value("${message.write-behind.max-deliveries:5}")
+    private int maxDeliveries;
+
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * 批量落库写入流中的消息
+     */
+    @Scheduled(fixedDelayString = "${message.write-behind.flush-interval-ms:100}")
+    public void drain() {
+        if (!messageStreamService.isEnabled()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                List<MapRecord<String, Object, Object>> records = messageStreamService.read(batchSize);
+                if (records.isEmpty()) {
+                    return;
+                }
+                persist(records);
+                if (records.size() < batchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "写入流消息落库失败，下个周期重试", e);
+        }
+    }
+
+    /**
+     * 定期接管其他节点超时未确认的消息
+     */
+    @Scheduled(fixedDelayString = "${message.write-behind.claim-idle-ms:60000}")
+    public void claimIdle() {
+        if (!messageStreamService.isEnabled()) {
+            return;
+        }
+        try {
+            messageStreamService.claimIdle(Duration.ofMillis(claimIdleMs), batchSize);
+        } catch (Exception e) {
+            LogUtil.error(logger, "接管超时未确认的消息失败", e);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = messageStreamService.getStats();
+        stats.put("persisted", persisted.sum());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("persistFailures", failures.sum());
+        return stats;
+    }
+
+    private void persist(List<MapRecord<String, Object, Object>> records) {
+        Map<RecordId, Message> messages = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            messages.put(record.getId(), messageStreamService.parse(record));
+        }
+        List<Message> valid = new ArrayList<>(messages.values());
+        valid.removeIf(Objects::isNull);
+
+        int inserted;
+        try {
+            inserted = valid.isEmpty() ? 0 : messageService.persistPendingMessages(valid);
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.warn(logger, "批量落库失败，逐条重试: size={}, error={}", valid.size(), e.getMessage());
+            persistEach(messages);
+            return;
+        }
+        // 事务已提交，确认后不再重复投递；确认失败时重复投递的消息落库时跳过
+        acknowledge(messages);
+        persisted.add(inserted);
+        duplicates.add(valid.size() - inserted);
+    }
+
+    /**
+     * 逐条落库，隔离无法落库的消息：落库成功的确认，失败的留在待确认列表中重试，
+     * 投递次数达到上限后移入死信流，避免一条消息阻塞后续所有消息
+     */
+    private void persistEach(Map<RecordId, Message> messages) {
+        Map<RecordId, Message> done = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<RecordId, Message> entry : messages.entrySet()) {
+                Message message = entry.getValue();
+                if (message != null) {
+                    try {
+                        int inserted = messageService.persistPendingMessages(List.of(message));
+                        persisted.add(inserted);
+                        duplicates.add(1 - inserted);
+                    } catch (Exception e) {
+                        failures.increment();
+                        handleFailure(entry.getKey(), message, e);
+                        continue;
+                    }
+                }
+                done.put(entry.getKey(), message);
+            }
+        } finally {
+            if (!done.isEmpty()) {
+                acknowledge(done);
+            }
+        }
+    }
+
+    /**
+     * 确认已落库的消息，并补做落库事务读取意图之后才记录的已读、删除操作
+     * 确认后待落库数据已清理，补做按已落库消息处理（已生效的操作不会重复生效）
+     */
+    private void acknowledge(Map<RecordId, Message> messages) {
+        messageStreamService.acknowledge(messages).forEach((message, intent) -> {
+            try {
+                if (MessageStreamService.INTENT_DELETE.equals(intent)) {
+                    messageService.deleteMessage(message.getId(), message.getReceiverId());
+                } else {
+                    messageService.markAsRead(message.getId(), message.getReceiverId());
+                }
+            } catch (Exception e) {
+                LogUtil.error(logger, "补做待落库消息意图失败: messageId={}, intent={}", message.getId(), intent, e);
+            }
+        });
+    }
+
+    /**
+     * 单条消息落库失败
+     * 数据库不可用时中止本周期（不计入死信判断）；数据库可用说明是这条消息本身的问题，投递次数达到上限后移入死信流
+     */
+    private void handleFailure(RecordId recordId, Message message, Exception error) {
+        // 探测数据库是否可用，不可用时抛出异常中止本周期
+        messageMapper.selectExistingIds(List.of(message.getId()));
+
+        long deliveries = messageStreamService.getDeliveryCount(recordId);
+        if (deliveries >= maxDeliveries) {
+            messageStreamService.deadLetter(recordId, message, error.getMessage());
+        } else {
+            LogUtil.warn(logger, "消息落库失败，等待重试: messageId={}, 投递次数={}, error={}",
+                    message.getId(), deliveries, error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,641 @@
+package com.ankai.service;
+
+import com.ankai.entity.Message;
+import com.ankai.exception.ServiceUnavailableException;
+import com.ankai.mapper.MessageMapper;
+import com.ankai.utils.LogUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 站内信写后（write-behind）写入服务
+ * 启用后发送消息不再同步写MySQL：消息ID由Redis序列生成，消息追加到Redis Stream后立即返回，
+ * 由消费组（MessageStreamConsumer）批量落库。落库前消息同时保存在按会话划分的有序集合中，
+ * 读取聊天记录时叠加这些消息，保证发送者立即可见；落库并确认后再移除。
+ * 落库前对消息的已读、删除操作记录为按消息ID的意图，落库时按意图写入已读或已删除状态；
+ * 待落库数只统计未读且未删除的消息，记录意图时同步扣减。
+ * 启用期间所有写入sys_message的消息ID都取自同一序列，集群内各节点的开关必须一致。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Service
+public class MessageStreamService {
+
+    private static final Logger logger = LogUtil.getLogger(MessageStreamService.class);
+
+    // 待落库消息流
+    private static final String STREAM_KEY = "msg:ingest";
+
+    // 落库消费组
+    private static final String GROUP = "msg-persist";
+
+    // 多次落库失败的消息（死信流，需人工处理）
+    private static final String DEAD_LETTER_KEY = "msg:ingest:dead";
+
+    // 消息ID序列，启动时不小于数据库中的最大ID
+    private static final String ID_SEQ_KEY = "msg:id-seq";
+
+    // 待落库消息Redis key前缀（有序集合，每个会话一个，member为消息JSON，score为消息ID）
+    private static final String PENDING_PREFIX = "msg:pending:";
+
+    // 各接收者待落库且未读、未删除的消息数（哈希，field为接收者ID）
+    private static final String PENDING_UNREAD_KEY = "msg:pending-unread";
+
+    // 待落库消息的会话索引（哈希，field为消息ID，value为 发送者ID:接收者ID）
+    private static final String PENDING_INDEX_KEY = "msg:pending-index";
+
+    // 待落库消息的已读/删除意图（哈希，field为消息ID，value为read或delete）
+    private static final String PENDING_INTENT_KEY = "msg:pending-intent";
+
+    // 接收者待落库消息Redis key前缀（有序集合，member与score均为消息ID），标记会话已读时遍历
+    private static final String INBOX_PREFIX = "msg:pending-inbox:";
+
+    /**
+     * 已读意图
+     */
+    public static final String INTENT_READ = "read";
+
+    /**
+     * 删除意图
+     */
+    public static final String INTENT_DELETE = "delete";
+
+    // 确认脚本返回值：记录已被确认过（重复确认）
+    private static final String ACK_NONE = "none";
+
+    // 确认脚本返回值：确认成功，没有意图
+    private static final String ACK_OK = "ok";
+
+    // 已读水位Redis key前缀（哈希，field为发送者ID或all，value为标记已读时的序列值）
+    private static final String READ_MARK_PREFIX = "msg:read-mark:";
+
+    // 全部已读的水位字段
+    private static final String ALL_FIELD = "all";
+
+    // 消息字段
+    private static final String MESSAGE_FIELD = "message";
+
+    /**
+     * 序列对齐脚本：序列值小于数据库最大ID时提升到该值
+     * KEYS[1]: 序列key
+     * ARGV[1]: 数据库最大ID
+     */
+    private static final DefaultRedisScript<Long> SEQUENCE_SCRIPT = new DefaultRedisScript<>(
+            "local current = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+            "local floor = tonumber(ARGV[1]) " +
+            "if current < floor then redis.call('SET', KEYS[1], ARGV[1]) return floor end " +
+            "return current",
+            Long.class);
+
+    /**
+     * 追加消息脚本：写入消息流、会话待落库集合、会话索引与接收者待落库集合；
+     * 消息ID不大于接收者已读水位时（分配ID后、追加前标记了已读）直接记录已读意图，否则累加接收者的待落库数
+     * KEYS[1]: 消息流, KEYS[2]: 会话待落库集合, KEYS[3]: 待落库数哈希, KEYS[4]: 会话索引,
+     * KEYS[5]: 接收者待落库集合, KEYS[6]: 接收者已读水位, KEYS[7]: 意图哈希
+     * ARGV[1]: 消息ID, ARGV[2]: 消息JSON, ARGV[3]: 接收者ID, ARGV[4]: 有效期（秒）, ARGV[5]: 发送者ID
+     */
+    private static final DefaultRedisScript<String> APPEND_SCRIPT = new DefaultRedisScript<>(
+            "local recordId = redis.call('XADD', KEYS[1], '*', 'message', ARGV[2]) " +
+            "redis.call('ZADD', KEYS[2], ARGV[1], ARGV[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[4]) " +
+            "redis.call('HSET', KEYS[4], ARGV[1], ARGV[5] .. ':' .. ARGV[3]) " +
+            "redis.call('ZADD', KEYS[5], ARGV[1], ARGV[1]) " +
+            "redis.call('EXPIRE', KEYS[5], ARGV[4]) " +
+            "local mark = math.max(tonumber(redis.call('HGET', KEYS[6], 'all') or '0'), " +
+            "  tonumber(redis.call('HGET', KEYS[6], ARGV[5]) or '0')) " +
+            "if tonumber(ARGV[1]) <= mark then redis.call('HSET', KEYS[7], ARGV[1], 'read') " +
+            "else redis.call('HINCRBY', KEYS[3], ARGV[3], 1) end " +
+            "return recordId",
+            String.class);
+
+    /**
+     * 清理待落库数据的公共脚本片段（确认与死信共用），返回该消息的意图（没有时为nil）
+     * 没有意图的消息仍计在待落库数中，清理时扣减
+     */
+    private static final String CLEANUP_SNIPPET =
+            "redis.call('XDEL', KEYS[1], ARGV[2]) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], ARGV[3], ARGV[3]) " +
+            "redis.call('HDEL', KEYS[4], ARGV[3]) " +
+            "redis.call('ZREM', KEYS[5], ARGV[3]) " +
+            "local intent = redis.call('HGET', KEYS[6], ARGV[3]) " +
+            "redis.call('HDEL', KEYS[6], ARGV[3]) " +
+            "if not intent and redis.call('HINCRBY', KEYS[3], ARGV[4], -1) <= 0 then redis.call('HDEL', KEYS[3], ARGV[4]) end ";
+
+    /**
+     * 落库确认脚本：只有本次确认成功时才清理，重复确认不会重复扣减
+     * KEYS[1]: 消息流, KEYS[2]: 会话待落库集合, KEYS[3]: 待落库数哈希, KEYS[4]: 会话索引,
+     * KEYS[5]: 接收者待落库集合, KEYS[6]: 意图哈希
+     * ARGV[1]: 消费组, ARGV[2]: 流记录ID, ARGV[3]: 消息ID, ARGV[4]: 接收者ID
+     * 返回: none重复确认，ok确认成功，read/delete确认成功且消息有意图（落库后仍需补做，见acknowledge）
+     */
+    private static final DefaultRedisScript<String> ACK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('XACK', KEYS[1], ARGV[1], ARGV[2]) == 0 then return 'none' end " +
+            CLEANUP_SNIPPET +
+            "return intent or 'ok'",
+            String.class);
+
+    /**
+     * 死信脚本：确认原记录并写入死信流，清理待落库数据
+     * KEYS[1]-KEYS[6]: 同确认脚本, KEYS[7]: 死信流
+     * ARGV[1]: 消费组, ARGV[2]: 流记录ID, ARGV[3]: 消息ID, ARGV[4]: 接收者ID, ARGV[5]: 消息JSON, ARGV[6]: 失败原因
+     */
+    private static final DefaultRedisScript<Long> DEAD_LETTER_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('XACK', KEYS[1], ARGV[1], ARGV[2]) == 0 then return 0 end " +
+            "redis.call('XADD', KEYS[7], '*', 'message', ARGV[5], 'recordId', ARGV[2], 'reason', ARGV[6]) " +
+            CLEANUP_SNIPPET +
+            "return 1",
+            Long.class);
+
+    /**
+     * 意图脚本：消息仍待落库时记录已读或删除意图（删除优先），首次记录时扣减接收者待落库数，删除时不再叠加显示
+     * KEYS[1]: 会话索引, KEYS[2]: 意图哈希, KEYS[3]: 待落库数哈希, KEYS[4]: 会话待落库集合
+     * ARGV[1]: 消息ID, ARGV[2]: 会话索引值（发送者ID:接收者ID）, ARGV[3]: 意图, ARGV[4]: 接收者ID
+     * 返回: 1已记录，0消息已不在待落库数据中（已落库或已移入死信流）
+     */
+    private static final DefaultRedisScript<Long> INTENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[2] then return 0 end " +
+            "local current = redis.call('HGET', KEYS[2], ARGV[1]) " +
+            "if current == 'delete' or current == ARGV[3] then return 1 end " +
+            "if not current and redis.call('HINCRBY', KEYS[3], ARGV[4], -1) <= 0 then redis.call('HDEL', KEYS[3], ARGV[4]) end " +
+            "redis.call('HSET', KEYS[2], ARGV[1], ARGV[3]) " +
+            "if ARGV[3] == 'delete' then redis.call('ZREMRANGEBYSCORE', KEYS[4], ARGV[1], ARGV[1]) end " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 已读水位脚本：记录当前序列值（此后才追加的已分配ID消息追加时即标记为已读），
+     * 并为接收者当前待落库的、来自该发送者（或全部）的消息记录已读意图，扣减待落库数
+     * KEYS[1]: 序列key, KEYS[2]: 已读水位哈希, KEYS[3]: 接收者待落库集合, KEYS[4]: 会话索引,
+     * KEYS[5]: 意图哈希, KEYS[6]: 待落库数哈希
+     * ARGV[1]: 字段, ARGV[2]: 有效期（秒）, ARGV[3]: 接收者ID, ARGV[4]: 发送者ID前缀（发送者ID:，全部会话时为空）
+     */
+    private static final DefaultRedisScript<Long> READ_MARK_SCRIPT = new DefaultRedisScript<>(
+            "local seq = redis.call('GET', KEYS[1]) or '0' " +
+            "redis.call('HSET', KEYS[2], ARGV[1], seq) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[2]) " +
+            "local cleared = 0 " +
+            "for _, id in ipairs(redis.call('ZRANGE', KEYS[3], 0, -1)) do " +
+            "  local route = redis.call('HGET', KEYS[4], id) " +
+            "  if route and not redis.call('HGET', KEYS[5], id) " +
+            "      and (ARGV[4] == '' or string.sub(route, 1, #ARGV[4]) == ARGV[4]) then " +
+            "    redis.call('HSET', KEYS[5], id, 'read') " +
+            "    cleared = cleared + 1 " +
+            "  end " +
+            "end " +
+            "if cleared > 0 and redis.call('HINCRBY', KEYS[6], ARGV[3], -cleared) <= 0 then " +
+            "  redis.call('HDEL', KEYS[6], ARGV[3]) end " +
+            "return tonumber(seq)",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 是否启用写后模式
+    @Value("${message.write-behind.enabled:false}")
+    private boolean enabled;
+
+    // 待落库消息及已读水位的有效期（秒）
+    @Value("${message.write-behind.pending-ttl:86400}")
+    private long pendingTtlSeconds;
+
+    // 消费者名称，每个节点启动时随机生成（宕机节点未确认的消息由其他节点接管）
+    private final String consumerName = "node-" + UUID.randomUUID().toString().substring(0, 8);
+
+    // 序列是否已与数据库对齐（对齐前不分配ID）
+    private volatile boolean sequenceReady;
+
+    // 消费组是否已创建
+    private volatile boolean groupReady;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * 是否启用写后模式
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 分配一段连续的消息ID
+     *
+     * @param count 数量
+     * @return 第一个ID
+     */
+    public long nextIds(int count) {
+        try {
+            ensureSequence();
+            Long last = stringRedisTemplate.opsForValue().increment(ID_SEQ_KEY, count);
+            return last - count + 1;
+        } catch (ServiceUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "分配消息ID失败", e);
+            throw new ServiceUnavailableException("消息服务暂不可用，请稍后重试", 1);
+        }
+    }
+
+    /**
+     * 追加一条已分配ID的消息，等待落库
+     */
+    public void append(Message message) {
+        try {
+            String json = objectMapper.writeValueAsString(message);
+            stringRedisTemplate.execute(APPEND_SCRIPT,
+                    List.of(STREAM_KEY, pendingKey(message.getSenderId(), message.getReceiverId()), PENDING_UNREAD_KEY,
+                            PENDING_INDEX_KEY, INBOX_PREFIX + message.getReceiverId(),
+                            READ_MARK_PREFIX + message.getReceiverId(), PENDING_INTENT_KEY),
+                    String.valueOf(message.getId()), json, String.valueOf(message.getReceiverId()),
+                    String.valueOf(pendingTtlSeconds), String.valueOf(message.getSenderId()));
+            appended.increment();
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "追加消息到写入流失败: messageId={}", message.getId(), e);
+            throw new ServiceUnavailableException("消息服务暂不可用，请稍后重试", 1);
+        }
+    }
+
+    /**
+     * 获取两人之间尚未落库的消息（ID升序），已记录已读意图的消息标记为已读
+     * 写后模式未启用或读取失败时返回空列表
+     */
+    public List<Message> getPending(Long userId, Long otherUserId) {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        try {
+            Set<String> members = stringRedisTemplate.opsForZSet().range(pendingKey(userId, otherUserId), 0, -1);
+            if (members == null || members.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Message> messages = new ArrayList<>(members.size());
+            for (String member : members) {
+                messages.add(objectMapper.readValue(member, Message.class));
+            }
+            Map<Long, String> intents = getIntents(messages.stream().map(Message::getId).toList());
+            for (Message message : messages) {
+                if (INTENT_READ.equals(intents.get(message.getId()))) {
+                    message.setIsRead(1);
+                }
+            }
+            return messages;
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "读取待落库消息失败: userId={}, otherUserId={}", userId, otherUserId, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 获取用户收到的尚未落库的消息数
+     */
+    public int getPendingCount(Long userId) {
+        if (!enabled) {
+            return 0;
+        }
+        try {
+            Object count = stringRedisTemplate.opsForHash().get(PENDING_UNREAD_KEY, String.valueOf(userId));
+            return count != null ? Math.max(0, Integer.parseInt(count.toString())) : 0;
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "读取待落库消息数失败: userId={}", userId, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 记录已读水位：接收者已读与发送者的会话（peerId为null表示全部会话）
+     * 接收者当前待落库的消息记录已读意图，此后才追加的已分配ID消息追加时即标记为已读
+     */
+    public void markRead(Long userId, Long peerId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(READ_MARK_SCRIPT,
+                    List.of(ID_SEQ_KEY, READ_MARK_PREFIX + userId, INBOX_PREFIX + userId, PENDING_INDEX_KEY,
+                            PENDING_INTENT_KEY, PENDING_UNREAD_KEY),
+                    peerId != null ? String.valueOf(peerId) : ALL_FIELD, String.valueOf(pendingTtlSeconds),
+                    String.valueOf(userId), peerId != null ? peerId + ":" : "");
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "记录已读水位失败: userId={}, peerId={}", userId, peerId, e);
+        }
+    }
+
+    /**
+     * 对尚未落库的消息记录已读或删除意图，落库时按意图写入状态
+     * 已读只允许接收者操作，删除允许发送者或接收者操作
+     *
+     * @param messageId 消息ID
+     * @param userId    操作用户ID
+     * @param intent    INTENT_READ 或 INTENT_DELETE
+     * @return 是否已记录；消息不在待落库数据中（已落库、不存在或无权操作）时返回false
+     */
+    public boolean recordIntent(Long messageId, Long userId, String intent) {
+        if (!enabled) {
+            return false;
+        }
+        try {
+            Object route = stringRedisTemplate.opsForHash().get(PENDING_INDEX_KEY, String.valueOf(messageId));
+            if (route == null) {
+                return false;
+            }
+            String[] parts = route.toString().split(":");
+            Long senderId = Long.valueOf(parts[0]);
+            Long receiverId = Long.valueOf(parts[1]);
+            boolean allowed = INTENT_READ.equals(intent)
+                    ? receiverId.equals(userId)
+                    : receiverId.equals(userId) || senderId.equals(userId);
+            if (!allowed) {
+                return false;
+            }
+            Long recorded = stringRedisTemplate.execute(INTENT_SCRIPT,
+                    List.of(PENDING_INDEX_KEY, PENDING_INTENT_KEY, PENDING_UNREAD_KEY, pendingKey(senderId, receiverId)),
+                    String.valueOf(messageId), route.toString(), intent, String.valueOf(receiverId));
+            return recorded != null && recorded > 0;
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "记录待落库消息意图失败: messageId={}, intent={}", messageId, intent, e);
+            throw new ServiceUnavailableException("消息服务暂不可用，请稍后重试", 1);
+        }
+    }
+
+    /**
+     * 批量获取待落库消息的意图（一次请求）
+     *
+     * @return Key: 消息ID, Value: INTENT_READ 或 INTENT_DELETE，没有意图的消息不在结果中
+     */
+    public Map<Long, String> getIntents(List<Long> messageIds) {
+        Map<Long, String> intents = new HashMap<>();
+        if (messageIds.isEmpty()) {
+            return intents;
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(PENDING_INTENT_KEY,
+                messageIds.stream().map(id -> (Object) String.valueOf(id)).toList());
+        for (int i = 0; i < messageIds.size(); i++) {
+            if (values.get(i) != null) {
+                intents.put(messageIds.get(i), values.get(i).toString());
+            }
+        }
+        return intents;
+    }
+
+    /**
+     * 读取本节点待落库的消息
+     * 先读取已投递但未确认的记录（上次落库失败或从其他节点接管），没有时再读取新记录
+     */
+    public List<MapRecord<String, Object, Object>> read(int count) {
+        ensureGroup();
+        List<MapRecord<String, Object, Object>> records = readGroup(ReadOffset.from("0"), count);
+        if (records == null || records.isEmpty()) {
+            records = readGroup(ReadOffset.lastConsumed(), count);
+        }
+        return records != null ? records : Collections.emptyList();
+    }
+
+    /**
+     * 获取记录已投递的次数
+     *
+     * @return 投递次数，记录已不在待确认列表中时返回0
+     */
+    public long getDeliveryCount(RecordId recordId) {
+        for (PendingMessage pending : stringRedisTemplate.opsForStream()
+                .pending(STREAM_KEY, GROUP, Range.closed(recordId.getValue(), recordId.getValue()), 1)) {
+            return pending.getTotalDeliveryCount();
+        }
+        return 0;
+    }
+
+    /**
+     * 将无法落库的消息移入死信流并确认，同时清理待落库数据（不再叠加显示）
+     */
+    public void deadLetter(RecordId recordId, Message message, String reason) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            json = String.valueOf(message.getId());
+        }
+        Long moved = stringRedisTemplate.execute(DEAD_LETTER_SCRIPT,
+                List.of(STREAM_KEY, pendingKey(message.getSenderId(), message.getReceiverId()), PENDING_UNREAD_KEY,
+                        PENDING_INDEX_KEY, INBOX_PREFIX + message.getReceiverId(), PENDING_INTENT_KEY, DEAD_LETTER_KEY),
+                GROUP, recordId.getValue(), String.valueOf(message.getId()), String.valueOf(message.getReceiverId()),
+                json, reason == null ? "" : reason.length() > 500 ? reason.substring(0, 500) : reason);
+        if (moved != null && moved > 0) {
+            deadLettered.increment();
+            LogUtil.error(logger, "消息多次落库失败，已移入死信流{}: messageId={}, recordId={}, reason={}",
+                    DEAD_LETTER_KEY, message.getId(), recordId, reason);
+        }
+    }
+
+    /**
+     * 解析流记录中的消息
+     *
+     * @return 消息，格式错误时返回null
+     */
+    public Message parse(MapRecord<String, Object, Object> record) {
+        Object json = record.getValue().get(MESSAGE_FIELD);
+        try {
+            return json != null ? objectMapper.readValue(json.toString(), Message.class) : null;
+        } catch (JsonProcessingException e) {
+            LogUtil.error(logger, "无法解析写入流中的消息: recordId={}", record.getId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 确认已落库的消息并清理待落库数据（一次管道请求）
+     * 落库事务读取意图之后才记录的意图不会体现在已落库的数据中，返回这些消息由调用方按已落库消息补做
+     *
+     * @param messages Key: 流记录ID, Value: 消息（格式错误的记录为null，只确认并删除）
+     * @return 本次确认的、带有意图的消息 Key: 消息, Value: INTENT_READ 或 INTENT_DELETE
+     */
+    public Map<Message, String> acknowledge(Map<RecordId, Message> messages) {
+        byte[] script = ACK_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[] streamKey = STREAM_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] pendingUnreadKey = PENDING_UNREAD_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] indexKey = PENDING_INDEX_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] intentKey = PENDING_INTENT_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] group = GROUP.getBytes(StandardCharsets.UTF_8);
+        List<Message> order = new ArrayList<>(messages.size());
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            messages.forEach((recordId, message) -> {
+                byte[] id = recordId.getValue().getBytes(StandardCharsets.UTF_8);
+                order.add(message);
+                if (message == null) {
+                    connection.streamCommands().xAck(streamKey, GROUP, recordId);
+                    connection.streamCommands().xDel(streamKey, recordId);
+                    return;
+                }
+                connection.scriptingCommands().eval(script, ReturnType.VALUE, 6,
+                        streamKey,
+                        pendingKey(message.getSenderId(), message.getReceiverId()).getBytes(StandardCharsets.UTF_8),
+                        pendingUnreadKey,
+                        indexKey,
+                        (INBOX_PREFIX + message.getReceiverId()).getBytes(StandardCharsets.UTF_8),
+                        intentKey,
+                        group, id,
+                        String.valueOf(message.getId()).getBytes(StandardCharsets.UTF_8),
+                        String.valueOf(message.getReceiverId()).getBytes(StandardCharsets.UTF_8));
+            });
+            return null;
+        });
+        acknowledged.add(messages.size());
+
+        // 格式错误的记录占两条结果（XACK、XDEL），其余每条消息一条
+        Map<Message, String> intents = new LinkedHashMap<>();
+        int index = 0;
+        for (Message message : order) {
+            if (message == null) {
+                index += 2;
+                continue;
+            }
+            Object result = results.get(index++);
+            String value = result != null ? result.toString() : ACK_NONE;
+            if (!ACK_NONE.equals(value) && !ACK_OK.equals(value)) {
+                intents.put(message, value);
+            }
+        }
+        return intents;
+    }
+
+    /**
+     * 接管其他节点超时未确认的消息（宕机或长时间阻塞的节点），接管后由本节点下次读取时落库
+     *
+     * @return 接管的消息数
+     */
+    public int claimIdle(Duration minIdle, int count) {
+        ensureGroup();
+        List<RecordId> ids = new ArrayList<>();
+        for (PendingMessage pending : stringRedisTemplate.opsForStream().pending(STREAM_KEY, GROUP, Range.unbounded(), count)) {
+            if (!consumerName.equals(pending.getConsumerName())
+                    && pending.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                ids.add(pending.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int taken = stringRedisTemplate.opsForStream()
+                .claim(STREAM_KEY, GROUP, consumerName, minIdle, ids.toArray(new RecordId[0])).size();
+        claimed.add(taken);
+        LogUtil.info(logger, "接管超时未确认的消息: {}", taken);
+        return taken;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("consumer", consumerName);
+        stats.put("appended", appended.sum());
+        stats.put("acknowledged", acknowledged.sum());
+        stats.put("claimed", claimed.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("failures", failures.sum());
+        if (enabled) {
+            try {
+                stats.put("backlog", stringRedisTemplate.opsForStream().size(STREAM_KEY));
+            } catch (Exception e) {
+                stats.put("backlog", -1);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 序列与数据库最大ID对齐（每个节点启动后首次分配ID前执行一次）
+     */
+    private void ensureSequence() {
+        if (sequenceReady) {
+            return;
+        }
+        synchronized (this) {
+            if (!sequenceReady) {
+                Long current = stringRedisTemplate.execute(SEQUENCE_SCRIPT, List.of(ID_SEQ_KEY),
+                        String.valueOf(messageMapper.selectMaxId()));
+                sequenceReady = true;
+                LogUtil.info(logger, "消息ID序列已对齐: {}", current);
+            }
+        }
+    }
+
+    /**
+     * 创建消费组（已存在时忽略）
+     */
+    private void ensureGroup() {
+        if (groupReady) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")
+                    && (e.getCause() == null || !String.valueOf(e.getCause().getMessage()).contains("BUSYGROUP"))) {
+                throw e;
+            }
+        }
+        groupReady = true;
+    }
+
+    /**
+     * 以消费组身份读取记录
+     * StreamOperations.read 的偏移参数是泛型可变参数，只传入一个StreamOffset<String>，类型安全
+     */
+    @SuppressWarnings("unchecked")
+    private List<MapRecord<String, Object, Object>> readGroup(ReadOffset offset, int count) {
+        return stringRedisTemplate.opsForStream().read(Consumer.from(GROUP, consumerName),
+                StreamReadOptions.empty().count(count), StreamOffset.create(STREAM_KEY, offset));
+    }
+
+    /**
+     * 会话待落库集合key（两个方向共用）
+     */
+    private static String pendingKey(Long userId, Long otherUserId) {
+        return PENDING_PREFIX + Math.min(userId, otherUserId) + ":" + Math.max(userId, otherUserId);
+    }
+}
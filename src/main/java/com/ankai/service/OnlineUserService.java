@@ -1,7 +1,9 @@
 package com.ankai.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -101,13 +103,26 @@ public class OnlineUserService {
     }
 
     /**
-     * 批量检查用户在线状态
+     * 批量检查用户在线状态（一次管道请求）
      */
     public Map<Long, Boolean> batchCheckOnline(List<Long> userIds) {
         Map<Long, Boolean> result = new HashMap<>();
-        Set<Long> onlineUserIds = getOnlineUserIds();
-        for (Long userId : userIds) {
-            result.put(userId, onlineUserIds.contains(userId));
+        if (userIds == null || userIds.isEmpty()) {
+            return result;
+        }
+        List<Object> exists = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (Long userId : userIds) {
+                    ops.hasKey(ONLINE_USER_KEY + userId);
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < userIds.size(); i++) {
+            result.put(userIds.get(i), Boolean.TRUE.equals(exists.get(i)));
         }
         return result;
     }
@@ -1,29 +1,58 @@
 package com.ankai.service;
 
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
 
 /**
  * SSE服务接口 - 服务端推送事件
+ * 推送方只依赖本接口，连接底层是SSE还是WebSocket对推送方透明
  *
  * @author AnKai
  */
 public interface SseService {
 
     /**
-     * 创建用户的SSE连接
+     * 创建用户的SSE连接（同一用户可同时保持多个连接）
+     * 携带最后收到的事件ID时先回放此后错过的事件，无法完整回放时发送resync事件
      * @param userId 用户ID
+     * @param lastEventId 客户端最后收到的事件ID（首次连接为空）
      * @return SseEmitter
+     * @throws com.ankai.exception.TooManyRequestsException 用户连接数超过上限
+     */
+    SseEmitter createConnection(Long userId, String lastEventId);
+
+    /**
+     * 登记已完成握手认证的WebSocket连接，与SSE连接接收相同的事件
+     * @param userId 用户ID
+     * @param session WebSocket会话（需支持并发发送）
+     * @param lastEventId 客户端最后收到的事件ID（首次连接为空）
+     * @param authCheck 认证是否仍然有效（Token过期、吊销或版本变更后返回false），心跳检查时调用，失效时关闭连接
+     * @return 连接ID
+     * @throws com.ankai.exception.TooManyRequestsException 用户连接数超过上限
+     * @throws com.ankai.exception.ServiceUnavailableException 本节点容量已满或正在排空
      */
-    SseEmitter createConnection(Long userId);
+    String createWebSocketConnection(Long userId, WebSocketSession session, String lastEventId, BooleanSupplier authCheck);
 
     /**
-     * 移除用户的SSE连接
+     * 移除用户的所有SSE连接
      * @param userId 用户ID
      */
     void removeConnection(Long userId);
 
     /**
-     * 向指定用户推送消息
+     * 移除用户的指定SSE连接
+     * @param userId 用户ID
+     * @param connectionId 连接ID
+     */
+    void removeConnection(Long userId, String connectionId);
+
+    /**
+     * 向指定用户的所有连接推送消息（包括其他节点上的连接）
+     * 只序列化后放入发布队列，不等待写入回放日志、跨节点转发和网络写出（都由发布线程完成）
      * @param userId 用户ID
      * @param eventType 事件类型（如：message, announcement, todo）
      * @param data 推送的数据
@@ -31,23 +60,68 @@ public interface SseService {
     void sendToUser(Long userId, String eventType, Object data);
 
     /**
-     * 向所有在线用户推送消息
+     * 向多个用户推送同一类型的事件（每个用户的数据可以不同），用于批量发送等一次通知大量用户的场景
+     * 回放日志写入与跨节点路由查询各只需一次管道请求，每个目标节点只转发一条消息
+     * @param eventType 事件类型
+     * @param dataByUser Key: 用户ID, Value: 推送的数据
+     */
+    void sendToUsers(String eventType, Map<Long, ?> dataByUser);
+
+    /**
+     * 向指定用户推送状态类事件（未读消息数、待办数等只关心最新状态的事件，消息和公告等内容事件不能合并）
+     * 同一用户同一事件类型在合并窗口内只推送一次，推送数据在窗口结束时才构建
+     * @param userId 用户ID
+     * @param eventType 事件类型
+     * @param dataBuilder 推送数据构建器，参数为窗口内合并的次数
+     */
+    void sendCoalescedToUser(Long userId, String eventType, IntFunction<Object> dataBuilder);
+
+    /**
+     * 向本节点上的指定连接推送消息（不写入回放日志，如WebSocket命令的应答）
+     * @param userId 用户ID
+     * @param connectionId 连接ID
+     * @param eventType 事件类型
+     * @param data 推送的数据
+     */
+    void sendToConnection(Long userId, String connectionId, String eventType, Object data);
+
+    /**
+     * 向所有在线用户推送消息（集群广播），与sendToUser相同只放入发布队列
      * @param eventType 事件类型
      * @param data 推送的数据
      */
     void sendToAll(String eventType, Object data);
 
     /**
-     * 检查用户是否在线（有SSE连接）
+     * 断开本节点的部分连接，每个连接先收到随机化重连间隔的reconnect事件再关闭
+     * @param count 最多断开的连接数
+     * @return 实际断开的连接数
+     */
+    int shedConnections(int count);
+
+    /**
+     * 检查用户是否在线（在任一节点上有SSE连接）
      * @param userId 用户ID
      * @return 是否在线
      */
     boolean isUserOnline(Long userId);
 
     /**
-     * 获取当前在线用户数量
+     * 获取本节点在线用户数量
      * @return 在线用户数
      */
     int getOnlineCount();
+
+    /**
+     * 获取本节点SSE连接总数
+     * @return 连接数
+     */
+    int getConnectionCount();
+
+    /**
+     * 获取本节点所有连接队列中待发送的事件数
+     * @return 待发送事件数
+     */
+    int getQueuedEventCount();
 }
 
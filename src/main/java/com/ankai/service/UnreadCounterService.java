@@ -0,0 +1,466 @@
+package com.ankai.service;
+
+import com.ankai.entity.Conversation;
+import com.ankai.mapper.ConversationMapper;
+import com.ankai.mapper.MessageMapper;
+import com.ankai.utils.LogUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 站内信未读计数服务
+ * 每个用户一个Redis哈希：total为未读总数，其余字段为各会话（对方用户ID）的未读数；
+ * 消息收发与已读在事务提交后通过脚本原子更新，查询只读一个字段，不访问数据库。
+ * 哈希不存在时由sys_conversation重建；后台定期与sys_message核对，发现偏差时修正会话表并删除哈希等待重建。
+ * 每个用户另有一个版本号，所有更新（包括哈希不存在而被跳过的更新）和删除都会递增版本号，
+ * 重建时版本号与读取数据库前不一致说明期间有更新未体现在读取结果中，本次不写入缓存。
+ *
+ * @author AnKai
+ * @since 2024-01-01
+ */
+@Service
+public class UnreadCounterService {
+
+    private static final Logger logger = LogUtil.getLogger(UnreadCounterService.class);
+
+    // 未读计数Redis key前缀（哈希）
+    private static final String KEY_PREFIX = "msg:unread:";
+
+    // 未读计数版本号Redis key前缀
+    private static final String GEN_PREFIX = "msg:unread-gen:";
+
+    // 核对任务锁，保证每个周期只有一个节点执行
+    private static final String RECONCILE_LOCK_KEY = "msg:unread-reconcile:lock";
+
+    // 未读总数字段
+    private static final String TOTAL_FIELD = "total";
+
+    /**
+     * 递增版本号的公共脚本片段（KEYS[2]为版本号key，调用方先将有效期赋给局部变量ttl）
+     */
+    private static final String BUMP_SNIPPET =
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ttl) ";
+
+    /**
+     * 会话未读数增减脚本（递增版本号；哈希不存在时不处理，等待重建）
+     * KEYS[1]: 哈希key, KEYS[2]: 版本号key
+     * ARGV[1]: 会话字段, ARGV[2]: 增量, ARGV[3]: 有效期（秒）
+     * 返回: 未读总数，哈希不存在时返回-1
+     */
+    private static final DefaultRedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = ARGV[3] " +
+            BUMP_SNIPPET +
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "local delta = tonumber(ARGV[2]) " +
+            "local value = redis.call('HINCRBY', KEYS[1], ARGV[1], delta) " +
+            "if value < 0 then delta = delta - value end " +
+            "if value <= 0 then redis.call('HDEL', KEYS[1], ARGV[1]) end " +
+            "local total = redis.call('HINCRBY', KEYS[1], 'total', delta) " +
+            "if total < 0 then redis.call('HSET', KEYS[1], 'total', 0) total = 0 end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "return total",
+            Long.class);
+
+    /**
+     * 设置会话未读数脚本（递增版本号；哈希不存在时不处理，等待重建）
+     * KEYS[1]: 哈希key, KEYS[2]: 版本号key
+     * ARGV[1]: 有效期（秒），之后为 会话字段, 未读数 成对出现
+     * 返回: 未读总数，哈希不存在时返回-1
+     */
+    private static final DefaultRedisScript<Long> SET_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = ARGV[1] " +
+            BUMP_SNIPPET +
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "local delta = 0 " +
+            "for i = 2, #ARGV, 2 do " +
+            "  local value = tonumber(ARGV[i + 1]) " +
+            "  delta = delta + value - tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0') " +
+            "  if value > 0 then redis.call('HSET', KEYS[1], ARGV[i], value) else redis.call('HDEL', KEYS[1], ARGV[i]) end " +
+            "end " +
+            "local total = redis.call('HINCRBY', KEYS[1], 'total', delta) " +
+            "if total < 0 then redis.call('HSET', KEYS[1], 'total', 0) total = 0 end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return total",
+            Long.class);
+
+    /**
+     * 重建脚本（哈希已存在时保留现有数据；版本号与读取数据库前不一致时不写入）
+     * KEYS[1]: 哈希key, KEYS[2]: 版本号key
+     * ARGV[1]: 有效期（秒）, ARGV[2]: 未读总数, ARGV[3]: 读取数据库前的版本号，之后为 会话字段, 未读数 成对出现
+     * 返回: 未读总数，版本号已变化时返回-1
+     */
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return tonumber(redis.call('HGET', KEYS[1], 'total') or '0') end " +
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[3] then return -1 end " +
+            "redis.call('HSET', KEYS[1], 'total', ARGV[2]) " +
+            "for i = 4, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return tonumber(ARGV[2])",
+            Long.class);
+
+    /**
+     * 清零脚本（递增版本号）
+     * KEYS[1]: 哈希key, KEYS[2]: 版本号key
+     * ARGV[1]: 有效期（秒）
+     */
+    private static final DefaultRedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = ARGV[1] " +
+            BUMP_SNIPPET +
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('HSET', KEYS[1], 'total', 0) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 0",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    // 未读计数有效期（秒），期间有变更时顺延，过期后下次查询由会话表重建
+    @Value("${message.unread.ttl:86400}")
+    private long ttlSeconds;
+
+    // 核对时每批用户数
+    @Value("${message.unread.reconcile-batch-size:200}")
+    private int reconcileBatchSize;
+
+    // 核对间隔（毫秒），用于核对任务锁的有效期
+    @Value("${message.unread.reconcile-interval-ms:300000}")
+    private long reconcileIntervalMs;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadConflicts = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder reconciled = new LongAdder();
+    private final LongAdder drifted = new LongAdder();
+
+    /**
+     * 获取用户未读消息总数
+     *
+     * @param userId 用户ID
+     * @return 未读总数，Redis不可用时回退到数据库统计
+     */
+    public int getUnreadCount(Long userId) {
+        try {
+            Object total = stringRedisTemplate.opsForHash().get(key(userId), TOTAL_FIELD);
+            if (total != null) {
+                hits.increment();
+                return Integer.parseInt(total.toString());
+            }
+            return load(userId);
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "读取未读计数失败，回退到数据库统计: userId={}", userId, e);
+            return messageMapper.countUnreadByUserId(userId);
+        }
+    }
+
+    /**
+     * 会话新增一条未读消息（事务提交后生效）
+     *
+     * @param userId 接收者ID
+     * @param peerId 发送者ID
+     */
+    public void increment(Long userId, Long peerId) {
+        afterCommit(List.of(userId), () -> stringRedisTemplate.execute(INCREMENT_SCRIPT, List.of(key(userId), genKey(userId)),
+                String.valueOf(peerId), "1", String.valueOf(ttlSeconds)));
+    }
+
+    /**
+     * 多个用户与同一发送者的会话各新增一条未读消息（事务提交后生效，一次管道请求）
+     *
+     * @param userIds 接收者ID列表
+     * @param peerId  发送者ID
+     */
+    public void incrementAll(Collection<Long> userIds, Long peerId) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        byte[] script = INCREMENT_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[] field = String.valueOf(peerId).getBytes(StandardCharsets.UTF_8);
+        byte[] delta = "1".getBytes(StandardCharsets.UTF_8);
+        byte[] ttl = String.valueOf(ttlSeconds).getBytes(StandardCharsets.UTF_8);
+        afterCommit(userIds, () -> stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, 2,
+                        key(userId).getBytes(StandardCharsets.UTF_8), genKey(userId).getBytes(StandardCharsets.UTF_8),
+                        field, delta, ttl);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * 会话减少一条未读消息（事务提交后生效）
+     *
+     * @param userId 接收者ID
+     * @param peerId 发送者ID
+     */
+    public void decrement(Long userId, Long peerId) {
+        afterCommit(List.of(userId), () -> stringRedisTemplate.execute(INCREMENT_SCRIPT, List.of(key(userId), genKey(userId)),
+                String.valueOf(peerId), "-1", String.valueOf(ttlSeconds)));
+    }
+
+    /**
+     * 设置会话的未读数（事务提交后生效）
+     *
+     * @param userId 接收者ID
+     * @param unread Key: 对方用户ID, Value: 未读数
+     */
+    public void setConversations(Long userId, Map<Long, Integer> unread) {
+        if (unread.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>(unread.size() * 2 + 1);
+        args.add(String.valueOf(ttlSeconds));
+        unread.forEach((peerId, count) -> {
+            args.add(String.valueOf(peerId));
+            args.add(String.valueOf(count));
+        });
+        afterCommit(List.of(userId), () -> stringRedisTemplate.execute(SET_SCRIPT, List.of(key(userId), genKey(userId)), args.toArray()));
+    }
+
+    /**
+     * 清零与指定用户会话的未读数（事务提交后生效）
+     */
+    public void clearConversation(Long userId, Long peerId) {
+        setConversations(userId, Map.of(peerId, 0));
+    }
+
+    /**
+     * 清零用户所有未读数（事务提交后生效）
+     */
+    public void clearAll(Long userId) {
+        afterCommit(List.of(userId), () -> stringRedisTemplate.execute(RESET_SCRIPT, List.of(key(userId), genKey(userId)), String.valueOf(ttlSeconds)));
+    }
+
+    /**
+     * 定期与数据库核对未读计数
+     * 逐批扫描已缓存的用户，与sys_message中的实际未读数比较；
+     * 存在偏差时按消息表重新统计会话表的未读数，并删除缓存等待下次查询重建
+     */
+    @Scheduled(initialDelayString = "${message.unread.reconcile-interval-ms:300000}",
+            fixedDelayString = "${message.unread.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        try {
+            Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(
+                    RECONCILE_LOCK_KEY, "1", Duration.ofMillis(Math.max(1000, reconcileIntervalMs / 2)));
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            int checked = 0;
+            int repaired = 0;
+            List<Long> batch = new ArrayList<>(reconcileBatchSize);
+            ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(500).build();
+            try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    batch.add(Long.valueOf(cursor.next().substring(KEY_PREFIX.length())));
+                    if (batch.size() >= reconcileBatchSize) {
+                        checked += batch.size();
+                        repaired += reconcileBatch(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                checked += batch.size();
+                repaired += reconcileBatch(batch);
+            }
+            LogUtil.info(logger, "未读计数核对完成: 用户数={}, 修正={}, 耗时={}ms",
+                    checked, repaired, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            LogUtil.error(logger, "未读计数核对失败", e);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("loadConflicts", loadConflicts.sum());
+        stats.put("updates", updates.sum());
+        stats.put("failures", failures.sum());
+        stats.put("reconciled", reconciled.sum());
+        stats.put("drifted", drifted.sum());
+        return stats;
+    }
+
+    /**
+     * 由会话表重建用户的未读计数
+     * 读取会话表前记录版本号，期间有更新时（版本号变化）返回读取结果但不写入缓存，下次查询重新重建
+     */
+    private int load(Long userId) {
+        loads.increment();
+        String generation = stringRedisTemplate.opsForValue().get(genKey(userId));
+        List<Conversation> conversations = conversationMapper.selectList(new LambdaQueryWrapper<Conversation>()
+                .select(Conversation::getPeerId, Conversation::getUnreadCount)
+                .eq(Conversation::getOwnerId, userId)
+                .gt(Conversation::getUnreadCount, 0));
+        int total = 0;
+        List<String> args = new ArrayList<>(conversations.size() * 2 + 3);
+        args.add(String.valueOf(ttlSeconds));
+        args.add("");
+        args.add(generation != null ? generation : "0");
+        for (Conversation conversation : conversations) {
+            total += conversation.getUnreadCount();
+            args.add(String.valueOf(conversation.getPeerId()));
+            args.add(String.valueOf(conversation.getUnreadCount()));
+        }
+        args.set(1, String.valueOf(total));
+        Long loaded = stringRedisTemplate.execute(LOAD_SCRIPT, List.of(key(userId), genKey(userId)), args.toArray());
+        if (loaded != null && loaded < 0) {
+            loadConflicts.increment();
+            return total;
+        }
+        return loaded != null ? loaded.intValue() : total;
+    }
+
+    /**
+     * 核对一批用户
+     *
+     * @return 修正的用户数
+     */
+    private int reconcileBatch(List<Long> userIds) {
+        // 数据库中的实际未读数：Key: 用户ID, Value: {对方用户ID: 未读数}
+        Map<Long, Map<Long, Integer>> actual = new HashMap<>();
+        for (Map<String, Object> row : messageMapper.countUnreadGroupBySender(userIds)) {
+            actual.computeIfAbsent(((Number) row.get("receiverId")).longValue(), key -> new HashMap<>())
+                    .put(((Number) row.get("senderId")).longValue(), ((Number) row.get("unread")).intValue());
+        }
+
+        List<Object> cached = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                connection.hashCommands().hGetAll(key(userId).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+
+        int repaired = 0;
+        for (int i = 0; i < userIds.size(); i++) {
+            reconciled.increment();
+            Long userId = userIds.get(i);
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> hash = cached.get(i) instanceof Map ? (Map<Object, Object>) cached.get(i) : Collections.emptyMap();
+            if (hash.isEmpty()) {
+                // 核对期间已过期或被删除
+                continue;
+            }
+            Map<Long, Integer> expected = actual.getOrDefault(userId, Collections.emptyMap());
+            Map<Long, Integer> current = new HashMap<>();
+            int total = -1;
+            for (Map.Entry<Object, Object> entry : hash.entrySet()) {
+                if (TOTAL_FIELD.equals(entry.getKey().toString())) {
+                    total = Integer.parseInt(entry.getValue().toString());
+                } else {
+                    current.put(Long.valueOf(entry.getKey().toString()), Integer.valueOf(entry.getValue().toString()));
+                }
+            }
+            int expectedTotal = expected.values().stream().mapToInt(Integer::intValue).sum();
+            if (total == expectedTotal && current.equals(expected)) {
+                continue;
+            }
+
+            drifted.increment();
+            repaired++;
+            LogUtil.warn(logger, "未读计数存在偏差，已修正: userId={}, 缓存总数={}, 实际总数={}", userId, total, expectedTotal);
+            Set<Long> peerIds = new HashSet<>(expected.keySet());
+            peerIds.addAll(current.keySet());
+            if (!peerIds.isEmpty()) {
+                conversationMapper.recountUnread(userId, peerIds);
+            }
+            invalidate(List.of(userId));
+        }
+        return repaired;
+    }
+
+    /**
+     * 事务提交后执行更新；更新失败时删除缓存，下次查询重建
+     */
+    private void afterCommit(Collection<Long> userIds, Runnable update) {
+        Runnable guarded = () -> {
+            try {
+                updates.increment();
+                update.run();
+            } catch (Exception e) {
+                failures.increment();
+                LogUtil.error(logger, "更新未读计数失败: userIds={}", userIds, e);
+                try {
+                    invalidate(userIds);
+                } catch (Exception ignored) {
+                    // Redis不可用时缓存也无法读取，恢复后由核对任务修正
+                }
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    guarded.run();
+                }
+            });
+        } else {
+            guarded.run();
+        }
+    }
+
+    /**
+     * 删除缓存并递增版本号，等待下次查询重建（进行中的重建不会写入旧数据）
+     */
+    private void invalidate(Collection<Long> userIds) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                byte[] genKey = genKey(userId).getBytes(StandardCharsets.UTF_8);
+                connection.keyCommands().del(key(userId).getBytes(StandardCharsets.UTF_8));
+                connection.stringCommands().incr(genKey);
+                connection.keyCommands().expire(genKey, ttlSeconds);
+            }
+            return null;
+        });
+    }
+
+    private static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private static String genKey(Long userId) {
+        return GEN_PREFIX + userId;
+    }
+}
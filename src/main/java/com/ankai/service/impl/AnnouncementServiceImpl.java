@@ -80,6 +80,7 @@ public class AnnouncementServiceImpl extends ServiceImpl<AnnouncementMapper, Ann
     private void pushAnnouncementToUsers(Announcement announcement, List<Long> userIds) {
         SseEventData eventData = buildAnnouncementEventData(announcement);
         for (Long targetUserId : userIds) {
+            // 公告内容逐条推送，不合并
             sseService.sendToUser(targetUserId, "announcement", eventData);
         }
     }
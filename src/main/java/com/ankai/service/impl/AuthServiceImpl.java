@@ -7,15 +7,19 @@ import com.ankai.entity.Permission;
 import com.ankai.entity.Role;
 import com.ankai.entity.User;
 import com.ankai.exception.BusinessException;
+import com.ankai.exception.TooManyRequestsException;
 import com.ankai.mapper.PermissionMapper;
 import com.ankai.mapper.RoleMapper;
 import com.ankai.mapper.UserMapper;
 import com.ankai.security.CustomUserDetails;
+import com.ankai.security.ProfileSnapshotCache;
+import com.ankai.security.RefreshTokenService;
+import com.ankai.security.TokenRevocationService;
+import com.ankai.security.TokenVersionService;
 import com.ankai.service.AuthService;
 import com.ankai.service.OnlineUserService;
 import com.ankai.utils.JwtUtil;
 import com.ankai.utils.LogUtil;
-import com.ankai.utils.RedisUtil;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -57,13 +61,19 @@ public class AuthServiceImpl implements AuthService {
     private PasswordEncoder passwordEncoder;
 
     @Autowired
-    private RedisUtil redisUtil;
+    private TokenRevocationService tokenRevocationService;
 
     @Autowired
     private OnlineUserService onlineUserService;
 
-    // Token黑名单Redis key前缀
-    private static final String TOKEN_BLACKLIST_PREFIX = "auth:blacklist:";
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
+    @Autowired
+    private ProfileSnapshotCache profileSnapshotCache;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
 
     @Override
     public LoginResponse login(LoginRequest loginRequest) {
@@ -80,24 +90,16 @@ public class AuthServiceImpl implements AuthService {
             CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
             User user = userDetails.getUser();
 
-            // 3. 生成JWT Token
-            String token = jwtUtil.generateToken(
-                    user.getId(),
-                    user.getUsername(),
-                    loginRequest.getRememberMe() != null && loginRequest.getRememberMe());
-
-            // 4. 查询用户角色代码
-            List<Role> roles = roleMapper.selectRolesByUserId(user.getId());
-            List<String> roleCodes = roles.stream()
-                    .map(Role::getRoleCode)
-                    .collect(Collectors.toList());
-
-            // 5. 查询用户权限码
-            List<Permission> permissions = permissionMapper.selectPermissionsByUserId(user.getId());
-            List<String> permissionCodes = permissions.stream()
-                    .map(Permission::getPermissionCode)
-                    .filter(code -> code != null && !code.isEmpty())
-                    .collect(Collectors.toList());
+            // 3. 查询用户角色代码
+            List<String> roleCodes = getRoleCodes(user.getId());
+
+            // 4. 查询用户权限码
+            List<String> permissionCodes = getPermissionCodes(user.getId());
+
+            // 5. 签发刷新令牌（记住我只延长刷新令牌有效期）和短期访问Token
+            boolean rememberMe = loginRequest.getRememberMe() != null && loginRequest.getRememberMe();
+            RefreshTokenService.RefreshGrant refreshGrant = refreshTokenService.issue(user.getId(), rememberMe);
+            String token = createAccessToken(user, refreshGrant.getFamilyId(), roleCodes, permissionCodes);
 
             // 6. 构建用户信息
             LoginResponse.UserInfo userInfo = new LoginResponse.UserInfo();
@@ -113,8 +115,9 @@ public class AuthServiceImpl implements AuthService {
             LoginResponse response = new LoginResponse();
             response.setToken(token);
             response.setTokenType("Bearer");
-            response.setExpiresIn(
-                    loginRequest.getRememberMe() != null && loginRequest.getRememberMe() ? 604800L : 7200L);
+            response.setExpiresIn(jwtUtil.getExpiration());
+            response.setRefreshToken(refreshGrant.getToken());
+            response.setRefreshExpiresIn(refreshGrant.getExpiresIn());
             response.setUserInfo(userInfo);
 
             // 7. 设置用户在线状态
@@ -123,12 +126,44 @@ public class AuthServiceImpl implements AuthService {
             LogUtil.info(logger, "用户登录成功: {}", loginRequest.getUsername());
             return response;
 
+        } catch (TooManyRequestsException e) {
+            // 密码哈希线程池饱和，保留429交由全局异常处理器响应
+            throw e;
         } catch (Exception e) {
             LogUtil.error(logger, "用户登录失败: {}", loginRequest.getUsername(), e);
             throw BusinessException.of(401, "用户名或密码错误");
         }
     }
 
+    @Override
+    public LoginResponse refresh(String refreshToken) {
+        // 轮换刷新令牌，无效或重复使用时抛出401
+        RefreshTokenService.RefreshGrant refreshGrant = refreshTokenService.rotate(refreshToken);
+
+        // 用户被禁用或删除后不再续期
+        User user = userMapper.selectById(refreshGrant.getUserId());
+        if (user == null || user.getStatus() == 0) {
+            refreshTokenService.revokeFamily(refreshGrant.getFamilyId());
+            throw BusinessException.of(401, "用户不存在或已被禁用");
+        }
+
+        // 只有自包含模式需要把角色和权限写入Token
+        String token = jwtUtil.isSelfContained()
+                ? createAccessToken(user, refreshGrant.getFamilyId(),
+                        getRoleCodes(user.getId()), getPermissionCodes(user.getId()))
+                : createAccessToken(user, refreshGrant.getFamilyId(), null, null);
+
+        LoginResponse response = new LoginResponse();
+        response.setToken(token);
+        response.setTokenType("Bearer");
+        response.setExpiresIn(jwtUtil.getExpiration());
+        response.setRefreshToken(refreshGrant.getToken());
+        response.setRefreshExpiresIn(refreshGrant.getExpiresIn());
+
+        LogUtil.info(logger, "刷新Token成功: {}", user.getUsername());
+        return response;
+    }
+
     @Override
     public boolean logout(String token) {
         if (StrUtil.isBlank(token)) {
@@ -136,21 +171,22 @@ public class AuthServiceImpl implements AuthService {
         }
 
         // 验证token
-        if (!jwtUtil.validateToken(token)) {
+        JwtUtil.VerifiedToken verifiedToken = jwtUtil.verify(token);
+        if (verifiedToken == null) {
             return false;
         }
 
         // 获取用户信息并设置离线
-        Long userId = jwtUtil.getUserIdFromToken(token);
+        Long userId = verifiedToken.getUserId();
         if (userId != null) {
             onlineUserService.userOffline(userId);
         }
 
-        // 将token加入黑名单（Redis）
-        String username = jwtUtil.getUsernameFromToken(token);
-        String blacklistKey = TOKEN_BLACKLIST_PREFIX + token;
-        // 设置过期时间为2小时（与JWT默认过期时间一致）
-        redisUtil.set(blacklistKey, System.currentTimeMillis(), 7200);
+        // 吊销token（按jti，记录保留到token自身过期）并作废对应的刷新令牌族
+        String username = verifiedToken.getUsername();
+        tokenRevocationService.revoke(verifiedToken.getJti(), verifiedToken.getExpiration());
+        jwtUtil.evictVerified(token);
+        refreshTokenService.revokeFamily(verifiedToken.getFamilyId());
 
         LogUtil.info(logger, "用户登出成功: {}", username);
         return true;
@@ -162,21 +198,23 @@ public class AuthServiceImpl implements AuthService {
             return null;
         }
 
-        // 检查token是否在黑名单中（Redis）
-        String blacklistKey = TOKEN_BLACKLIST_PREFIX + token;
-        if (redisUtil.hasKey(blacklistKey)) {
-            return null;
-        }
-
-        // 验证token
-        if (!jwtUtil.validateToken(token)) {
+        // 验证token并检查是否已吊销
+        JwtUtil.VerifiedToken verifiedToken = jwtUtil.verify(token);
+        if (verifiedToken == null || tokenRevocationService.isRevoked(verifiedToken.getJti())) {
             return null;
         }
 
         try {
             // 从token中获取用户信息
-            String username = jwtUtil.getUsernameFromToken(token);
-            Long userId = jwtUtil.getUserIdFromToken(token);
+            String username = verifiedToken.getUsername();
+            Long userId = verifiedToken.getUserId();
+
+            // 优先读取资料快照（版本号在加载数据库之前读取）
+            String version = profileSnapshotCache.currentVersion(userId);
+            LoginResponse.UserInfo cached = profileSnapshotCache.get(version);
+            if (cached != null) {
+                return cached;
+            }
 
             // 查询用户详细信息
             User user = userMapper.selectByUsernameWithDeleted(username);
@@ -184,18 +222,9 @@ public class AuthServiceImpl implements AuthService {
                 return null;
             }
 
-            // 查询用户角色代码
-            List<Role> roles = roleMapper.selectRolesByUserId(userId);
-            List<String> roleCodes = roles.stream()
-                    .map(Role::getRoleCode)
-                    .collect(Collectors.toList());
-
-            // 查询用户权限码
-            List<Permission> permissions = permissionMapper.selectPermissionsByUserId(userId);
-            List<String> permissionCodes = permissions.stream()
-                    .map(Permission::getPermissionCode)
-                    .filter(code -> code != null && !code.isEmpty())
-                    .collect(Collectors.toList());
+            // 查询用户角色代码和权限码
+            List<String> roleCodes = getRoleCodes(userId);
+            List<String> permissionCodes = getPermissionCodes(userId);
 
             // 构建用户信息
             LoginResponse.UserInfo userInfo = new LoginResponse.UserInfo();
@@ -207,6 +236,7 @@ public class AuthServiceImpl implements AuthService {
             userInfo.setRoles(roleCodes); // 使用角色代码，如 SUPER_ADMIN, ADMIN
             userInfo.setPermissions(permissionCodes); // 使用权限码
 
+            profileSnapshotCache.put(version, userInfo);
             return userInfo;
 
         } catch (Exception e) {
@@ -215,18 +245,66 @@ public class AuthServiceImpl implements AuthService {
         }
     }
 
+    @Override
+    public String getCurrentUserVersion(String token) {
+        if (StrUtil.isBlank(token)) {
+            return null;
+        }
+
+        JwtUtil.VerifiedToken verifiedToken = jwtUtil.verify(token);
+        if (verifiedToken == null || tokenRevocationService.isRevoked(verifiedToken.getJti())) {
+            return null;
+        }
+
+        try {
+            return profileSnapshotCache.currentVersion(verifiedToken.getUserId());
+        } catch (Exception e) {
+            LogUtil.error(logger, "获取用户资料版本失败", e);
+            return null;
+        }
+    }
+
     @Override
     public boolean validateToken(String token) {
         if (StrUtil.isBlank(token)) {
             return false;
         }
 
-        // 检查token是否在黑名单中（Redis）
-        String blacklistKey = TOKEN_BLACKLIST_PREFIX + token;
-        if (redisUtil.hasKey(blacklistKey)) {
-            return false;
+        // 验证token并检查是否已吊销
+        JwtUtil.VerifiedToken verifiedToken = jwtUtil.verify(token);
+        return verifiedToken != null && !tokenRevocationService.isRevoked(verifiedToken.getJti());
+    }
+
+    /**
+     * 生成访问Token（自包含模式下携带角色、权限指纹和版本号）
+     */
+    private String createAccessToken(User user, String familyId, List<String> roleCodes, List<String> permissionCodes) {
+        if (!jwtUtil.isSelfContained()) {
+            return jwtUtil.generateToken(user.getId(), user.getUsername(), familyId);
         }
+        return jwtUtil.generateToken(user.getId(), user.getUsername(), familyId,
+                roleCodes, JwtUtil.permissionFingerprint(permissionCodes),
+                tokenVersionService.getVersion(user.getId()));
+    }
+
+    /**
+     * 查询用户角色代码
+     */
+    private List<String> getRoleCodes(Long userId) {
+        List<Role> roles = roleMapper.selectRolesByUserId(userId);
+        return roles.stream()
+                .map(Role::getRoleCode)
+                .collect(Collectors.toList());
+    }
 
-        return jwtUtil.validateToken(token);
+    /**
+     * 查询用户权限码
+     */
+    private List<String> getPermissionCodes(Long userId) {
+        List<Permission> permissions = permissionMapper.selectPermissionsByUserId(userId);
+        return permissions.stream()
+                .map(Permission::getPermissionCode)
+                .filter(code -> code != null && !code.isEmpty())
+                .collect(Collectors.toList());
     }
 }
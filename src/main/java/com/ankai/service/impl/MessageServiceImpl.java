@@ -4,24 +4,44 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ankai.common.CursorPage;
 import com.ankai.common.PageRequest;
 import com.ankai.dto.ChatSession;
 import com.ankai.dto.SseEventData;
+import com.ankai.entity.Conversation;
 import com.ankai.entity.Message;
 import com.ankai.entity.User;
+import com.ankai.exception.BusinessException;
+import com.ankai.mapper.ConversationMapper;
 import com.ankai.mapper.MessageMapper;
+import com.ankai.mapper.UserMapper;
 import com.ankai.service.MessageService;
+import com.ankai.service.MessageStreamService;
 import com.ankai.service.OnlineUserService;
 import com.ankai.service.SseService;
-import com.ankai.service.UserService;
+import com.ankai.service.UnreadCounterService;
+import com.ankai.utils.LogUtil;
+import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 /**
  * 站内信服务实现类
+ * 会话列表由sys_conversation维护，消息的发送、已读和删除在同一事务中同步更新会话；
+ * 启用写后模式时发送消息只写入Redis Stream，落库由MessageStreamConsumer批量完成，读取聊天记录时叠加尚未落库的消息
  *
  * @author AnKai
  * @since 2024-01-01
@@ -29,17 +49,45 @@ import java.util.*;
 @Service
 public class MessageServiceImpl extends ServiceImpl<MessageMapper, Message> implements MessageService {
 
+    /**
+     * 会话中保存的最后一条消息最大长度
+     */
+    private static final int CONVERSATION_PREVIEW_LENGTH = 200;
+
+    private static final Logger logger = LogUtil.getLogger(MessageServiceImpl.class);
+
+    // 批量发送时每条多行INSERT的行数
+    @Value("${message.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    // 批量发送的接收者上限
+    @Value("${message.batch.max-recipients:5000}")
+    private int batchMaxRecipients;
+
     @Autowired
-    private UserService userService;
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private MessageStreamService messageStreamService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     @Autowired
     private OnlineUserService onlineUserService;
 
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
     @Autowired
     private SseService sseService;
 
     @Override
-    public boolean sendMessage(Long senderId, String senderName, Long receiverId, String receiverName, String content) {
+    public Long sendMessage(Long senderId, String senderName, Long receiverId, String receiverName, String content) {
+        checkContent(content);
         Message message = new Message();
         message.setSenderId(senderId);
         message.setSenderName(senderName);
@@ -49,29 +97,151 @@ public class MessageServiceImpl extends ServiceImpl<MessageMapper, Message> impl
         message.setMessageType(2); // 默认私信
         message.setIsRead(0);
         message.setDeleted(0);
-        boolean saved = save(message);
 
-        // 发送成功后，通过SSE推送给接收者
-        if (saved) {
-            // 获取接收者的未读消息数
-            int unreadCount = getUnreadCount(receiverId);
+        if (messageStreamService.isEnabled()) {
+            // 写后模式：分配ID并追加到写入流后立即返回并推送，由消费组批量落库
+            message.setId(messageStreamService.nextIds(1));
+            // 与落库后的DATETIME精度一致，落库前后排序和游标不变
+            message.setCreateTime(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+            messageStreamService.append(message);
+            notifyNewMessage(message);
+            return message.getId();
+        }
+
+        Boolean saved = transactionTemplate.execute(status -> {
+            if (!save(message)) {
+                return false;
+            }
+            updateConversations(List.of(message));
+            unreadCounterService.increment(receiverId, senderId);
+            // 事务提交后通过SSE推送给接收者
+            afterCommit(() -> notifyNewMessage(message));
+            return true;
+        });
+        return Boolean.TRUE.equals(saved) ? message.getId() : null;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int sendBatchMessage(Long senderId, String senderName, Collection<Long> receiverIds,
+                                Collection<String> roleCodes, String content) {
+        checkContent(content);
+        // 一次查询解析指定用户和角色下的接收者（去重，不含发送者本人）
+        List<User> recipients = userMapper.selectRecipients(receiverIds, roleCodes).stream()
+                .filter(user -> !user.getId().equals(senderId))
+                .toList();
+        if (recipients.size() > batchMaxRecipients) {
+            throw new BusinessException(400, "接收者数量超过上限: " + batchMaxRecipients);
+        }
+        if (recipients.isEmpty()) {
+            return 0;
+        }
+
+        // 写后模式下消息ID统一取自序列，避免与待落库消息的ID冲突
+        boolean sequenceIds = messageStreamService.isEnabled();
+        long nextId = sequenceIds ? messageStreamService.nextIds(recipients.size()) : 0;
+        LocalDateTime now = LocalDateTime.now();
+        List<Message> messages = new ArrayList<>(recipients.size());
+        for (User recipient : recipients) {
+            Message message = new Message();
+            if (sequenceIds) {
+                message.setId(nextId++);
+            }
+            message.setSenderId(senderId);
+            message.setSenderName(senderName);
+            message.setReceiverId(recipient.getId());
+            message.setReceiverName(recipient.getUsername());
+            message.setContent(content);
+            message.setMessageType(2);
+            message.setIsRead(0);
+            message.setCreateTime(now);
+            message.setDeleted(0);
+            messages.add(message);
+        }
+
+        // 分批多行插入消息和会话
+        for (int from = 0; from < messages.size(); from += batchChunkSize) {
+            List<Message> chunk = messages.subList(from, Math.min(from + batchChunkSize, messages.size()));
+            if (sequenceIds) {
+                baseMapper.insertBatchWithId(chunk);
+            } else {
+                baseMapper.insertBatch(chunk);
+            }
+            updateConversations(chunk);
+        }
+
+        List<Long> recipientIds = recipients.stream().map(User::getId).toList();
+        unreadCounterService.incrementAll(recipientIds, senderId);
+        // 事务提交后批量推送给所有接收者（回放日志与跨节点路由各一次管道请求）
+        afterCommit(() -> notifyNewMessages(messages));
 
-            // 构建推送数据
-            SseEventData eventData = new SseEventData();
-            eventData.setType("new_message");
-            eventData.setUnreadCount(unreadCount);
-            eventData.setMessage("您收到一条新消息");
-            eventData.setData(Map.of(
-                    "messageId", message.getId(),
-                    "senderId", senderId,
-                    "senderName", senderName,
-                    "content", content.length() > 50 ? content.substring(0, 50) + "..." : content));
+        LogUtil.info(logger, "批量发送消息: senderId={}, 接收者数={}", senderId, messages.size());
+        return messages.size();
+    }
 
-            // 推送给接收者
-            sseService.sendToUser(receiverId, "message", eventData);
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int persistPendingMessages(List<Message> messages) {
+        // 重复投递（上次已落库但未确认）的消息跳过
+        Set<Long> existing = new HashSet<>(baseMapper.selectExistingIds(messages.stream().map(Message::getId).toList()));
+        List<Message> fresh = messages.stream().filter(message -> !existing.contains(message.getId())).toList();
+        if (fresh.isEmpty()) {
+            return 0;
+        }
+
+        // 落库前已记录意图的消息按意图写入已读或已删除状态
+        Map<Long, String> intents = messageStreamService.getIntents(fresh.stream().map(Message::getId).toList());
+        LocalDateTime now = LocalDateTime.now();
+        for (Message message : fresh) {
+            String intent = intents.get(message.getId());
+            if (MessageStreamService.INTENT_DELETE.equals(intent)) {
+                message.setDeleted(1);
+            } else if (MessageStreamService.INTENT_READ.equals(intent)) {
+                message.setIsRead(1);
+                message.setReadTime(now);
+            }
         }
 
-        return saved;
+        List<Message> inserted = insertIgnoringExisting(fresh);
+        if (inserted.isEmpty()) {
+            return 0;
+        }
+        // 会话和未读计数只按本事务实际插入且未删除的消息更新
+        List<Message> visible = inserted.stream()
+                .filter(message -> !Integer.valueOf(1).equals(message.getDeleted())).toList();
+        if (!visible.isEmpty()) {
+            updateConversations(visible);
+        }
+        Map<Long, List<Long>> unreadBySender = new HashMap<>();
+        for (Message message : visible) {
+            if (!Integer.valueOf(1).equals(message.getIsRead())) {
+                unreadBySender.computeIfAbsent(message.getSenderId(), key -> new ArrayList<>()).add(message.getReceiverId());
+            }
+        }
+        unreadBySender.forEach((senderId, receiverIds) -> unreadCounterService.incrementAll(receiverIds, senderId));
+        return inserted.size();
+    }
+
+    /**
+     * 插入指定ID的消息，返回本事务实际插入的消息
+     * 通常一条多行INSERT全部插入；有行被忽略时（接管的消息正被原消费者同时落库），
+     * 回滚到保存点后逐条插入，按影响行数确定哪些由本事务插入
+     */
+    private List<Message> insertIgnoringExisting(List<Message> messages) {
+        TransactionStatus status = TransactionAspectSupport.currentTransactionStatus();
+        Object savepoint = status.createSavepoint();
+        if (baseMapper.insertBatchWithId(messages) == messages.size()) {
+            status.releaseSavepoint(savepoint);
+            return messages;
+        }
+        status.rollbackToSavepoint(savepoint);
+        List<Message> inserted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (baseMapper.insertBatchWithId(List.of(message)) == 1) {
+                inserted.add(message);
+            }
+        }
+        return inserted;
     }
 
     @Override
@@ -83,51 +253,66 @@ public class MessageServiceImpl extends ServiceImpl<MessageMapper, Message> impl
                 .and(inner -> inner.eq(Message::getSenderId, userId).eq(Message::getReceiverId, otherUserId))
                 .or(inner -> inner.eq(Message::getSenderId, otherUserId).eq(Message::getReceiverId, userId)))
                 .orderByDesc(Message::getCreateTime);
-        return page(page, wrapper);
+        // 第一页叠加尚未落库的消息（先读待落库消息再查库，期间落库的消息按ID去重）
+        List<Message> pending = pageRequest.getCurrent() == 1
+                ? messageStreamService.getPending(userId, otherUserId) : Collections.emptyList();
+        Page<Message> result = page(page, wrapper);
+        if (!pending.isEmpty()) {
+            List<Message> merged = overlayPending(result.getRecords(), pending);
+            result.setTotal(result.getTotal() + merged.size() - result.getRecords().size());
+            result.setRecords(merged);
+        }
+        return result;
     }
 
     @Override
-    public List<ChatSession> getChatSessions(Long userId) {
-        // 获取所有与当前用户相关的消息
-        LambdaQueryWrapper<Message> wrapper = new LambdaQueryWrapper<>();
-        wrapper.and(w -> w.eq(Message::getSenderId, userId).or().eq(Message::getReceiverId, userId))
-                .orderByDesc(Message::getCreateTime);
-        List<Message> allMessages = list(wrapper);
-
-        // 按对方用户分组，找出每个会话的最新消息
-        Map<Long, ChatSession> sessionMap = new LinkedHashMap<>();
-        for (Message msg : allMessages) {
-            Long otherUserId = msg.getSenderId().equals(userId) ? msg.getReceiverId() : msg.getSenderId();
-            String otherUserName = msg.getSenderId().equals(userId) ? msg.getReceiverName() : msg.getSenderName();
-
-            if (!sessionMap.containsKey(otherUserId)) {
-                ChatSession session = new ChatSession();
-                session.setUserId(otherUserId);
-                session.setUsername(otherUserName);
-                session.setLastMessage(msg.getContent());
-                session.setLastMessageTime(msg.getCreateTime());
-                session.setUnreadCount(0);
-                session.setOnline(onlineUserService.isOnline(otherUserId));
-
-                // 获取用户头像
-                User otherUser = userService.getById(otherUserId);
-                if (otherUser != null) {
-                    session.setAvatar(otherUser.getAvatar());
-                    session.setUsername(
-                            otherUser.getRealName() != null ? otherUser.getRealName() : otherUser.getUsername());
-                }
-
-                sessionMap.put(otherUserId, session);
+    public CursorPage<Message> getChatHistoryBefore(Long userId, Long otherUserId, String before, int size) {
+        LocalDateTime beforeTime = null;
+        Long beforeId = null;
+        if (before != null && !before.isEmpty()) {
+            int separator = before.indexOf('_');
+            try {
+                beforeTime = LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(Long.parseLong(before.substring(0, separator))), ZoneId.systemDefault());
+                beforeId = Long.valueOf(before.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new BusinessException(400, "游标格式错误");
             }
+        }
 
-            // 统计未读消息数（只统计收到的未读消息）
-            if (msg.getReceiverId().equals(userId) && msg.getIsRead() == 0) {
-                ChatSession session = sessionMap.get(otherUserId);
-                session.setUnreadCount(session.getUnreadCount() + 1);
-            }
+        size = Math.max(1, Math.min(size, 100));
+        // 游标之前尚未落库的消息（先读待落库消息再查库，期间落库的消息按ID去重）
+        LocalDateTime cursorTime = beforeTime;
+        Long cursorId = beforeId;
+        List<Message> pending = messageStreamService.getPending(userId, otherUserId).stream()
+                .filter(message -> cursorTime == null || message.getCreateTime().isBefore(cursorTime)
+                        || (message.getCreateTime().isEqual(cursorTime) && message.getId() < cursorId))
+                .toList();
+        // 多取一条判断是否还有下一页
+        List<Message> records = overlayPending(
+                baseMapper.selectChatHistoryBefore(userId, otherUserId, beforeTime, beforeId, size + 1), pending);
+        String nextCursor = null;
+        if (records.size() > size) {
+            records = new ArrayList<>(records.subList(0, size));
+            Message last = records.get(size - 1);
+            nextCursor = last.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + "_" + last.getId();
         }
+        return new CursorPage<>(records, nextCursor);
+    }
 
-        return new ArrayList<>(sessionMap.values());
+    @Override
+    public Page<ChatSession> getChatSessions(Long userId, PageRequest pageRequest) {
+        Page<ChatSession> page = conversationMapper.selectSessionPage(
+                new Page<>(pageRequest.getCurrent(), pageRequest.getSize()), userId);
+
+        // 当前页对方用户的在线状态一次批量查询
+        List<ChatSession> sessions = page.getRecords();
+        if (!sessions.isEmpty()) {
+            List<Long> peerIds = sessions.stream().map(ChatSession::getUserId).toList();
+            Map<Long, Boolean> onlineStatus = onlineUserService.batchCheckOnline(peerIds);
+            sessions.forEach(session -> session.setOnline(onlineStatus.getOrDefault(session.getUserId(), false)));
+        }
+        return page;
     }
 
     @Override
@@ -149,59 +334,302 @@ public class MessageServiceImpl extends ServiceImpl<MessageMapper, Message> impl
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean markAsRead(Long messageId, Long userId) {
+        LambdaQueryWrapper<Message> query = new LambdaQueryWrapper<Message>()
+                .select(Message::getId, Message::getSenderId)
+                .eq(Message::getId, messageId)
+                .eq(Message::getReceiverId, userId);
+        Message message = getOne(query);
+        if (message == null) {
+            // 写后模式下消息可能尚未落库：记录已读意图，落库时写入；记录失败说明期间已落库，重新查询
+            if (messageStreamService.recordIntent(messageId, userId, MessageStreamService.INTENT_READ)) {
+                return true;
+            }
+            message = getOne(query);
+            if (message == null) {
+                return false;
+            }
+        }
         LambdaUpdateWrapper<Message> wrapper = new LambdaUpdateWrapper<>();
         wrapper.eq(Message::getId, messageId)
                 .eq(Message::getReceiverId, userId)
+                .eq(Message::getIsRead, 0)
                 .set(Message::getIsRead, 1)
                 .set(Message::getReadTime, LocalDateTime.now());
-        return update(wrapper);
+        // 只有从未读变为已读时才减少会话未读数
+        if (update(wrapper)) {
+            conversationMapper.decrementUnread(userId, message.getSenderId());
+            unreadCounterService.decrement(userId, message.getSenderId());
+        }
+        return true;
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean markChatAsRead(Long userId, Long otherUserId) {
+        messageStreamService.markRead(userId, otherUserId);
         LambdaUpdateWrapper<Message> wrapper = new LambdaUpdateWrapper<>();
         wrapper.eq(Message::getReceiverId, userId)
                 .eq(Message::getSenderId, otherUserId)
                 .eq(Message::getIsRead, 0)
                 .set(Message::getIsRead, 1)
                 .set(Message::getReadTime, LocalDateTime.now());
-        return update(wrapper);
+        boolean updated = update(wrapper);
+        conversationMapper.clearUnread(userId, otherUserId);
+        unreadCounterService.clearConversation(userId, otherUserId);
+        return updated;
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean batchMarkAsRead(List<Long> messageIds, Long userId) {
         if (messageIds == null || messageIds.isEmpty()) {
             return true;
         }
+        // 写后模式下尚未落库的消息记录已读意图，落库时写入
+        if (messageStreamService.isEnabled()) {
+            Set<Long> existing = new HashSet<>(baseMapper.selectExistingIds(messageIds));
+            messageIds.stream()
+                    .filter(id -> !existing.contains(id))
+                    .forEach(id -> messageStreamService.recordIntent(id, userId, MessageStreamService.INTENT_READ));
+        }
+        // 涉及的会话（发送者）
+        Set<Long> senderIds = new HashSet<>(listObjs(new LambdaQueryWrapper<Message>()
+                .select(Message::getSenderId)
+                .in(Message::getId, messageIds)
+                .eq(Message::getReceiverId, userId)
+                .eq(Message::getIsRead, 0), value -> Long.valueOf(value.toString())));
+
         LambdaUpdateWrapper<Message> wrapper = new LambdaUpdateWrapper<>();
         wrapper.in(Message::getId, messageIds)
                 .eq(Message::getReceiverId, userId)
                 .set(Message::getIsRead, 1)
                 .set(Message::getReadTime, LocalDateTime.now());
-        return update(wrapper);
+        boolean updated = update(wrapper);
+        if (!senderIds.isEmpty()) {
+            conversationMapper.recountUnread(userId, senderIds);
+            syncUnreadCounter(userId, senderIds);
+        }
+        return updated;
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean markAllAsRead(Long userId) {
+        messageStreamService.markRead(userId, null);
         LambdaUpdateWrapper<Message> wrapper = new LambdaUpdateWrapper<>();
         wrapper.eq(Message::getReceiverId, userId)
                 .eq(Message::getIsRead, 0)
                 .set(Message::getIsRead, 1)
                 .set(Message::getReadTime, LocalDateTime.now());
-        return update(wrapper);
+        boolean updated = update(wrapper);
+        conversationMapper.clearAllUnread(userId);
+        unreadCounterService.clearAll(userId);
+        return updated;
     }
 
     @Override
     public int getUnreadCount(Long userId) {
-        return baseMapper.countUnreadByUserId(userId);
+        // 写后模式下叠加尚未落库的消息数（已记录已读或删除意图的不计入）
+        return unreadCounterService.getUnreadCount(userId) + messageStreamService.getPendingCount(userId);
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean deleteMessage(Long messageId, Long userId) {
         LambdaQueryWrapper<Message> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(Message::getId, messageId)
                 .and(w -> w.eq(Message::getSenderId, userId).or().eq(Message::getReceiverId, userId));
-        return remove(wrapper);
+        Message message = getOne(wrapper);
+        if (message == null) {
+            // 写后模式下消息可能尚未落库：记录删除意图，落库时直接写为已删除；记录失败说明期间已落库，重新查询
+            if (messageStreamService.recordIntent(messageId, userId, MessageStreamService.INTENT_DELETE)) {
+                return true;
+            }
+            message = getOne(wrapper);
+        }
+        if (message == null || !removeById(messageId)) {
+            return false;
+        }
+
+        if (Integer.valueOf(0).equals(message.getIsRead())) {
+            conversationMapper.recountUnread(message.getReceiverId(), List.of(message.getSenderId()));
+            syncUnreadCounter(message.getReceiverId(), List.of(message.getSenderId()));
+        }
+        refreshLastMessage(message);
+        return true;
+    }
+
+    /**
+     * 新消息写入双方的会话，接收方未读数加一
+     * 按 (所属用户, 对方用户) 排序后一条语句写入，避免并发互发消息时加锁顺序不一致导致死锁
+     */
+    private void updateConversations(List<Message> messages) {
+        List<Conversation> conversations = new ArrayList<>(messages.size() * 2);
+        for (Message message : messages) {
+            String preview = truncate(message.getContent());
+            LocalDateTime time = message.getCreateTime() != null ? message.getCreateTime() : LocalDateTime.now();
+            conversations.add(conversationUpdate(message.getSenderId(), message.getReceiverId(),
+                    message.getReceiverName(), message.getId(), preview, time, 0));
+            conversations.add(conversationUpdate(message.getReceiverId(), message.getSenderId(),
+                    message.getSenderName(), message.getId(), preview, time, Integer.valueOf(1).equals(message.getIsRead()) ? 0 : 1));
+        }
+        conversations.sort(Comparator.comparing(Conversation::getOwnerId).thenComparing(Conversation::getPeerId));
+        conversationMapper.upsertLastMessages(conversations);
+    }
+
+    /**
+     * 校验消息内容（写后模式下消息先确认后落库，超长内容必须在写入流之前拒绝）
+     */
+    private static void checkContent(String content) {
+        if (content == null || content.isBlank()) {
+            throw new BusinessException(400, "消息内容不能为空");
+        }
+        if (content.length() > MAX_CONTENT_LENGTH) {
+            throw new BusinessException(400, "消息内容不能超过" + MAX_CONTENT_LENGTH + "个字符");
+        }
+    }
+
+    /**
+     * 合并数据库中的聊天记录与尚未落库的消息，按 create_time、id 倒序
+     */
+    private static List<Message> overlayPending(List<Message> records, List<Message> pending) {
+        if (pending.isEmpty()) {
+            return records;
+        }
+        Set<Long> ids = new HashSet<>(records.stream().map(Message::getId).toList());
+        List<Message> merged = new ArrayList<>(records);
+        pending.stream().filter(message -> !ids.contains(message.getId())).forEach(merged::add);
+        merged.sort(Comparator.comparing(Message::getCreateTime).thenComparing(Message::getId).reversed());
+        return merged;
+    }
+
+    private static Conversation conversationUpdate(Long ownerId, Long peerId, String peerName, Long messageId,
+                                                   String preview, LocalDateTime time, int unreadIncrement) {
+        Conversation conversation = new Conversation();
+        conversation.setOwnerId(ownerId);
+        conversation.setPeerId(peerId);
+        conversation.setPeerName(peerName);
+        conversation.setLastMessageId(messageId);
+        conversation.setLastMessage(preview);
+        conversation.setLastTime(time);
+        conversation.setUnreadCount(unreadIncrement);
+        return conversation;
+    }
+
+    /**
+     * 通过SSE通知接收者有新消息
+     * 每条消息单独推送（内容事件不合并）；未读消息数作为状态事件在合并窗口内只推送一次
+     */
+    private void notifyNewMessage(Message message) {
+        Long receiverId = message.getReceiverId();
+        sseService.sendToUser(receiverId, "message", newMessageEvent(message));
+        notifyUnreadCount(receiverId);
+    }
+
+    /**
+     * 批量推送新消息通知（每个接收者一条消息）
+     */
+    private void notifyNewMessages(List<Message> messages) {
+        Map<Long, SseEventData> events = new LinkedHashMap<>(messages.size() * 2);
+        for (Message message : messages) {
+            events.put(message.getReceiverId(), newMessageEvent(message));
+        }
+        sseService.sendToUsers("message", events);
+        events.keySet().forEach(this::notifyUnreadCount);
+    }
+
+    private static SseEventData newMessageEvent(Message message) {
+        String content = message.getContent();
+        SseEventData eventData = new SseEventData();
+        eventData.setType("new_message");
+        eventData.setMessage("您收到一条新消息");
+        eventData.setData(Map.of(
+                "messageId", message.getId(),
+                "senderId", message.getSenderId(),
+                "senderName", message.getSenderName(),
+                "content", content.length() > 50 ? content.substring(0, 50) + "..." : content));
+        return eventData;
+    }
+
+    /**
+     * 推送未读数（状态类事件，合并窗口结束时才查询）
+     */
+    private void notifyUnreadCount(Long receiverId) {
+        sseService.sendCoalescedToUser(receiverId, "unread", merged -> {
+            SseEventData unreadData = new SseEventData();
+            unreadData.setType("unread_update");
+            unreadData.setUnreadCount(getUnreadCount(receiverId));
+            return unreadData;
+        });
+    }
+
+    /**
+     * 当前事务提交后执行，不在事务中时立即执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 按会话表重新统计后的未读数更新未读计数
+     */
+    private void syncUnreadCounter(Long userId, Collection<Long> peerIds) {
+        Map<Long, Integer> unread = new HashMap<>();
+        peerIds.forEach(peerId -> unread.put(peerId, 0));
+        conversationMapper.selectList(new LambdaQueryWrapper<Conversation>()
+                        .select(Conversation::getPeerId, Conversation::getUnreadCount)
+                        .eq(Conversation::getOwnerId, userId)
+                        .in(Conversation::getPeerId, peerIds))
+                .forEach(conversation -> unread.put(conversation.getPeerId(), conversation.getUnreadCount()));
+        unreadCounterService.setConversations(userId, unread);
+    }
+
+    /**
+     * 删除的是会话的最后一条消息时，改用剩余的最新消息；没有剩余消息时删除会话
+     */
+    private void refreshLastMessage(Message deleted) {
+        Long senderId = deleted.getSenderId();
+        Long receiverId = deleted.getReceiverId();
+        LambdaQueryWrapper<Conversation> affected = new LambdaQueryWrapper<Conversation>()
+                .eq(Conversation::getLastMessageId, deleted.getId())
+                .in(Conversation::getOwnerId, senderId, receiverId);
+        if (conversationMapper.selectCount(affected) == 0) {
+            return;
+        }
+
+        Message latest = getOne(new LambdaQueryWrapper<Message>()
+                .and(w -> w
+                        .and(inner -> inner.eq(Message::getSenderId, senderId).eq(Message::getReceiverId, receiverId))
+                        .or(inner -> inner.eq(Message::getSenderId, receiverId).eq(Message::getReceiverId, senderId)))
+                .orderByDesc(Message::getId)
+                .last("LIMIT 1"));
+        if (latest == null) {
+            conversationMapper.delete(affected);
+            return;
+        }
+        conversationMapper.update(null, new LambdaUpdateWrapper<Conversation>()
+                .eq(Conversation::getLastMessageId, deleted.getId())
+                .in(Conversation::getOwnerId, senderId, receiverId)
+                .set(Conversation::getLastMessageId, latest.getId())
+                .set(Conversation::getLastMessage, truncate(latest.getContent()))
+                .set(Conversation::getLastTime, latest.getCreateTime()));
+    }
+
+    private static String truncate(String content) {
+        if (content == null || content.length() <= CONVERSATION_PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, CONVERSATION_PREVIEW_LENGTH);
     }
 }
@@ -4,6 +4,7 @@ import com.ankai.dto.PermissionTreeNode;
 import com.ankai.entity.Permission;
 import com.ankai.exception.BusinessException;
 import com.ankai.mapper.PermissionMapper;
+import com.ankai.security.ProfileSnapshotCache;
 import com.ankai.service.PermissionService;
 import com.ankai.utils.LogUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
@@ -33,6 +34,9 @@ public class PermissionServiceImpl extends ServiceImpl<PermissionMapper, Permiss
     @Autowired
     private PermissionMapper permissionMapper;
 
+    @Autowired
+    private ProfileSnapshotCache profileSnapshotCache;
+
     @Override
     public List<PermissionTreeNode> getPermissionTree() {
         // 查询所有权限
@@ -121,7 +125,12 @@ public class PermissionServiceImpl extends ServiceImpl<PermissionMapper, Permiss
         }
 
         LogUtil.info(logger, "更新权限: {}", permission.getPermissionName());
-        return permissionMapper.updateById(permission) > 0;
+        boolean result = permissionMapper.updateById(permission) > 0;
+        if (result) {
+            // 权限码可能已变化，作废所有用户的资料快照
+            profileSnapshotCache.bumpGlobal();
+        }
+        return result;
     }
 
     @Override
@@ -142,7 +151,11 @@ public class PermissionServiceImpl extends ServiceImpl<PermissionMapper, Permiss
         }
 
         LogUtil.info(logger, "删除权限: {}", permission.getPermissionName());
-        return permissionMapper.deleteById(id) > 0;
+        boolean result = permissionMapper.deleteById(id) > 0;
+        if (result) {
+            profileSnapshotCache.bumpGlobal();
+        }
+        return result;
     }
 
     @Override
@@ -7,6 +7,10 @@ import com.ankai.exception.BusinessException;
 import com.ankai.mapper.PermissionMapper;
 import com.ankai.mapper.RoleMapper;
 import com.ankai.mapper.RolePermissionMapper;
+import com.ankai.mapper.UserRoleMapper;
+import com.ankai.security.PrincipalCache;
+import com.ankai.security.ProfileSnapshotCache;
+import com.ankai.security.TokenVersionService;
 import com.ankai.service.RoleService;
 import com.ankai.utils.LogUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
@@ -42,6 +46,18 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
     @Autowired
     private PermissionMapper permissionMapper;
 
+    @Autowired
+    private UserRoleMapper userRoleMapper;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
+    @Autowired
+    private ProfileSnapshotCache profileSnapshotCache;
+
     @Override
     public IPage<Role> getRolePage(Long current, Long size, String roleName, String roleCode, Integer status) {
         Page<Role> page = new Page<>(current, size);
@@ -104,7 +120,12 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         }
 
         LogUtil.info(logger, "更新角色: {}", role.getRoleName());
-        return roleMapper.updateById(role) > 0;
+        boolean result = roleMapper.updateById(role) > 0;
+        if (result) {
+            // 角色状态或编码变更会影响所有持有该角色的用户
+            onRolesChanged(List.of(role.getId()));
+        }
+        return result;
     }
 
     @Override
@@ -120,7 +141,11 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         rolePermissionMapper.deleteByRoleId(id);
 
         LogUtil.info(logger, "删除角色: {}", role.getRoleName());
-        return roleMapper.deleteById(id) > 0;
+        boolean result = roleMapper.deleteById(id) > 0;
+        if (result) {
+            onRolesChanged(List.of(id));
+        }
+        return result;
     }
 
     @Override
@@ -136,7 +161,11 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         }
 
         LogUtil.info(logger, "批量删除角色，数量: {}", ids.size());
-        return roleMapper.deleteBatchIds(ids) > 0;
+        boolean result = roleMapper.deleteBatchIds(ids) > 0;
+        if (result) {
+            onRolesChanged(ids);
+        }
+        return result;
     }
 
     @Override
@@ -150,6 +179,7 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
 
         // 删除原有的角色权限关联
         rolePermissionMapper.deleteByRoleId(roleId);
+        onRolesChanged(List.of(roleId));
 
         // 如果权限列表为空，则只删除不添加
         if (permissionIds == null || permissionIds.isEmpty()) {
@@ -187,5 +217,14 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         wrapper.orderByAsc(Role::getSortOrder);
         return roleMapper.selectList(wrapper);
     }
-}
 
+    /**
+     * 角色变更后，失效所有节点上的用户快照，递增持有这些角色的用户的Token版本号，
+     * 并作废所有用户的资料快照
+     */
+    private void onRolesChanged(List<Long> roleIds) {
+        principalCache.evictAll();
+        tokenVersionService.bumpAll(userRoleMapper.selectUserIdsByRoleIds(roleIds));
+        profileSnapshotCache.bumpGlobal();
+    }
+}
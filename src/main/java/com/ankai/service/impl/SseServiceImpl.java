@@ -1,31 +1,53 @@
 package com.ankai.service.impl;
 
+import com.ankai.exception.ServiceUnavailableException;
+import com.ankai.exception.TooManyRequestsException;
 import com.ankai.service.SseService;
+import com.ankai.sse.SseAdmission;
+import com.ankai.sse.SseCoalescer;
+import com.ankai.sse.SseConnection;
+import com.ankai.sse.SseDispatcher;
+import com.ankai.sse.SseEvent;
+import com.ankai.sse.SseEventLog;
+import com.ankai.sse.SseHeartbeatScheduler;
+import com.ankai.sse.SsePublisher;
+import com.ankai.sse.SseRouter;
 import com.ankai.utils.LogUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
 
 /**
  * SSE服务实现类
+ * 本地维护本节点的连接（SSE或WebSocket），通过SseRouter把事件转发到其他节点上的连接；
+ * 每个事件先写入SseEventLog获得事件ID，客户端重连时据此回放错过的事件
  *
  * @author AnKai
  */
 @Service
-public class SseServiceImpl implements SseService {
+public class SseServiceImpl implements SseService, SseRouter.LocalDelivery {
 
     private static final Logger logger = LogUtil.getLogger(SseServiceImpl.class);
 
     /**
      * 存储所有用户的SSE连接
-     * Key: userId, Value: SseEmitter
+     * Key: userId, Value: 该用户的连接（Key: 连接ID）
      */
-    private final Map<Long, SseEmitter> emitterMap = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, SseConnection>> connectionMap = new ConcurrentHashMap<>();
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -34,94 +56,385 @@ public class SseServiceImpl implements SseService {
      */
     private static final long SSE_TIMEOUT = 30 * 60 * 1000L;
 
+    /**
+     * 每个用户最多同时保持的连接数
+     */
+    @Value("${sse.max-connections-per-user:5}")
+    private int maxConnectionsPerUser;
+
+    @Autowired
+    private SseRouter sseRouter;
+
+    @Autowired
+    private SseDispatcher sseDispatcher;
+
+    @Autowired
+    private SseHeartbeatScheduler sseHeartbeatScheduler;
+
+    @Autowired
+    private SseEventLog sseEventLog;
+
+    @Autowired
+    private SseCoalescer sseCoalescer;
+
+    @Autowired
+    private SseAdmission sseAdmission;
+
+    @Autowired
+    private SsePublisher ssePublisher;
+
+    @PostConstruct
+    public void init() {
+        sseRouter.subscribe(this);
+        sseCoalescer.bind(this::sendToUser);
+        ssePublisher.bind(this::publish, this);
+    }
+
     @Override
-    public SseEmitter createConnection(Long userId) {
-        // 如果已存在连接，先移除旧连接
-        if (emitterMap.containsKey(userId)) {
-            removeConnection(userId);
+    public SseEmitter createConnection(Long userId, String lastEventId) {
+        // 本节点容量已满或正在排空时拒绝，客户端按随机间隔重连（负载均衡可将其分配到其他节点）
+        if (!sseAdmission.tryAcquire()) {
+            return reject(userId);
         }
 
         // 创建新的SSE连接，设置超时时间
-        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        SseConnection connection = new SseConnection(userId, new SseEmitter(SSE_TIMEOUT),
+                sseDispatcher.getQueueCapacity());
+        admit(connection, lastEventId);
 
         // 设置回调
+        SseEmitter emitter = connection.getEmitter();
         emitter.onCompletion(() -> {
-            LogUtil.info(logger, "SSE连接完成: userId={}", userId);
-            emitterMap.remove(userId);
+            LogUtil.info(logger, "SSE连接完成: userId={}, connectionId={}", userId, connection.getId());
+            unregister(connection);
         });
 
         emitter.onTimeout(() -> {
-            LogUtil.info(logger, "SSE连接超时: userId={}", userId);
-            emitterMap.remove(userId);
+            LogUtil.info(logger, "SSE连接超时: userId={}, connectionId={}", userId, connection.getId());
+            unregister(connection);
         });
 
         emitter.onError((e) -> {
-            LogUtil.warn(logger, "SSE连接错误: userId={}, error={}", userId, e.getMessage());
-            emitterMap.remove(userId);
+            LogUtil.warn(logger, "SSE连接错误: userId={}, connectionId={}, error={}", userId, connection.getId(), e.getMessage());
+            unregister(connection);
         });
 
-        emitterMap.put(userId, emitter);
-        LogUtil.info(logger, "SSE连接建立: userId={}, 当前在线: {}", userId, emitterMap.size());
+        return emitter;
+    }
 
-        // 发送连接成功消息
-        try {
-            emitter.send(SseEmitter.event()
-                    .name("connected")
-                    .data("{\"message\":\"SSE连接成功\"}"));
-        } catch (IOException e) {
-            LogUtil.error(logger, "发送连接成功消息失败", e);
+    @Override
+    public String createWebSocketConnection(Long userId, WebSocketSession session, String lastEventId, BooleanSupplier authCheck) {
+        if (!sseAdmission.tryAcquire()) {
+            long retryMillis = sseAdmission.nextRetryMillis();
+            LogUtil.warn(logger, "WebSocket连接被拒绝: userId={}, draining={}, live={}, retry={}ms",
+                    userId, sseAdmission.isDraining(), sseAdmission.getLive(), retryMillis);
+            throw new ServiceUnavailableException("服务繁忙，请稍后重试", (retryMillis + 999) / 1000);
         }
 
-        return emitter;
+        // 会话关闭由WebSocket处理器调用removeConnection
+        SseConnection connection = new SseConnection(userId, session, sseDispatcher.getQueueCapacity());
+        connection.requireAuth(authCheck);
+        admit(connection, lastEventId);
+        return connection.getId();
     }
 
     @Override
     public void removeConnection(Long userId) {
-        SseEmitter emitter = emitterMap.remove(userId);
-        if (emitter != null) {
-            try {
-                emitter.complete();
-            } catch (Exception e) {
-                // 忽略关闭时的异常
-            }
-            LogUtil.info(logger, "SSE连接移除: userId={}", userId);
+        Map<String, SseConnection> connections = connectionMap.get(userId);
+        if (connections != null) {
+            // 关闭回调负责从连接集合中移除、释放名额和取消路由登记
+            List<SseConnection> closing = new ArrayList<>(connections.values());
+            closing.forEach(SseConnection::close);
+            LogUtil.info(logger, "SSE连接移除: userId={}, 连接数={}", userId, closing.size());
+        }
+    }
+
+    @Override
+    public void removeConnection(Long userId, String connectionId) {
+        Map<String, SseConnection> connections = connectionMap.get(userId);
+        SseConnection connection = connections != null ? connections.get(connectionId) : null;
+        if (connection != null) {
+            connection.close();
+            LogUtil.info(logger, "SSE连接移除: userId={}, connectionId={}", userId, connectionId);
         }
     }
 
     @Override
     public void sendToUser(Long userId, String eventType, Object data) {
-        SseEmitter emitter = emitterMap.get(userId);
-        if (emitter == null) {
-            LogUtil.debug(logger, "用户不在线，无法推送: userId={}", userId);
+        String jsonData = serialize(eventType, data);
+        if (jsonData == null) {
             return;
         }
+        // 只放入发布队列，写入回放日志、本地推送和跨节点转发由发布线程完成
+        ssePublisher.submit(new SseRouter.SseEnvelope(userId, null, eventType, jsonData));
+    }
 
-        try {
-            String jsonData = objectMapper.writeValueAsString(data);
-            emitter.send(SseEmitter.event()
-                    .name(eventType)
-                    .data(jsonData));
-            LogUtil.debug(logger, "SSE推送成功: userId={}, eventType={}", userId, eventType);
-        } catch (IOException e) {
-            LogUtil.warn(logger, "SSE推送失败，移除连接: userId={}", userId);
-            removeConnection(userId);
+    @Override
+    public void sendToUsers(String eventType, Map<Long, ?> dataByUser) {
+        List<SseRouter.SseEnvelope> envelopes = new ArrayList<>(dataByUser.size());
+        dataByUser.forEach((userId, data) -> {
+            String jsonData = serialize(eventType, data);
+            if (jsonData != null) {
+                envelopes.add(new SseRouter.SseEnvelope(userId, null, eventType, jsonData));
+            }
+        });
+        ssePublisher.submitAll(envelopes);
+    }
+
+    @Override
+    public void sendCoalescedToUser(Long userId, String eventType, IntFunction<Object> dataBuilder) {
+        sseCoalescer.submit(userId, eventType, dataBuilder);
+    }
+
+    @Override
+    public void sendToConnection(Long userId, String connectionId, String eventType, Object data) {
+        Map<String, SseConnection> connections = connectionMap.get(userId);
+        SseConnection connection = connections != null ? connections.get(connectionId) : null;
+        if (connection == null) {
+            return;
+        }
+        String jsonData = serialize(eventType, data);
+        if (jsonData != null) {
+            sseDispatcher.dispatch(connection, new SseEvent(eventType, jsonData));
         }
     }
 
     @Override
     public void sendToAll(String eventType, Object data) {
-        LogUtil.info(logger, "SSE广播: eventType={}, 在线用户数={}", eventType, emitterMap.size());
-        emitterMap.keySet().forEach(userId -> sendToUser(userId, eventType, data));
+        String jsonData = serialize(eventType, data);
+        if (jsonData != null) {
+            ssePublisher.submit(new SseRouter.SseEnvelope(null, null, eventType, jsonData));
+        }
+    }
+
+    @Override
+    public void deliverToUser(Long userId, String id, String eventType, String jsonData) {
+        Map<String, SseConnection> connections = connectionMap.get(userId);
+        if (connections == null || connections.isEmpty()) {
+            LogUtil.debug(logger, "用户在本节点没有连接: userId={}", userId);
+            return;
+        }
+
+        // 放入该用户所有连接的发送队列，由发送线程异步写出
+        SseEvent event = new SseEvent(id, SseEvent.Source.USER, eventType, jsonData);
+        for (SseConnection connection : connections.values()) {
+            sseDispatcher.dispatch(connection, event);
+        }
+    }
+
+    @Override
+    public void deliverToAll(String id, String eventType, String jsonData) {
+        LogUtil.info(logger, "SSE广播: eventType={}, 本节点在线用户数={}", eventType, connectionMap.size());
+
+        // 所有连接共享同一个事件对象（SSE帧只编码一次），入队后由发送线程池并行写出
+        SseEvent event = new SseEvent(id, SseEvent.Source.BROADCAST, eventType, jsonData);
+        for (Map<String, SseConnection> connections : connectionMap.values()) {
+            for (SseConnection connection : connections.values()) {
+                sseDispatcher.dispatch(connection, event);
+            }
+        }
     }
 
     @Override
     public boolean isUserOnline(Long userId) {
-        return emitterMap.containsKey(userId);
+        return connectionMap.containsKey(userId) || sseRouter.hasRoute(userId);
     }
 
     @Override
     public int getOnlineCount() {
-        return emitterMap.size();
+        return connectionMap.size();
     }
-}
 
+    @Override
+    public int getConnectionCount() {
+        return connectionMap.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @Override
+    public int getQueuedEventCount() {
+        return connectionMap.values().stream()
+                .flatMap(connections -> connections.values().stream())
+                .mapToInt(connection -> connection.getQueue().size())
+                .sum();
+    }
+
+    /**
+     * 定期刷新本节点用户的路由，防止路由过期或Redis数据丢失后推送无法到达
+     */
+    @Scheduled(fixedDelayString = "${sse.route-refresh-ms:60000}")
+    public void refreshRoutes() {
+        sseRouter.refresh(new ArrayList<>(connectionMap.keySet()));
+    }
+
+    /**
+     * 排空模式下分批断开连接，每个连接收到随机化的重连间隔后关闭，避免客户端同时重连
+     */
+    @Scheduled(fixedDelayString = "${sse.admission.drain-interval-ms:1000}")
+    public void drainConnections() {
+        int batch = sseAdmission.nextShedBatch();
+        if (batch > 0) {
+            shedConnections(batch);
+        }
+    }
+
+    @Override
+    public int shedConnections(int count) {
+        int shed = 0;
+        for (Map<String, SseConnection> connections : connectionMap.values()) {
+            for (SseConnection connection : connections.values()) {
+                if (shed >= count) {
+                    break;
+                }
+                if (!connection.isClosed() && connection.markShedding()) {
+                    sseDispatcher.dispatch(connection, SseEvent.reconnect(sseAdmission.nextRetryMillis()));
+                    shed++;
+                }
+            }
+        }
+        if (shed > 0) {
+            sseAdmission.recordShed(shed);
+            LogUtil.info(logger, "SSE排空断开连接: {}, 剩余连接数: {}", shed, sseAdmission.getLive());
+        }
+        return shed;
+    }
+
+    /**
+     * 登记已获得名额的连接并开始发送（SSE与WebSocket共用）
+     * 超过单用户连接上限时释放名额并抛出TooManyRequestsException
+     */
+    private void admit(SseConnection connection, String lastEventId) {
+        Long userId = connection.getUserId();
+        connection.onClose(() -> unregister(connection));
+
+        // 加入该用户的连接集合，超过上限时拒绝新连接（不挤掉已有连接，避免多个标签页互相重连）
+        boolean[] accepted = new boolean[1];
+        connectionMap.compute(userId, (key, connections) -> {
+            if (connections == null) {
+                connections = new ConcurrentHashMap<>();
+            }
+            if (connections.size() < maxConnectionsPerUser) {
+                connections.put(connection.getId(), connection);
+                accepted[0] = true;
+            }
+            return connections;
+        });
+        if (!accepted[0]) {
+            sseAdmission.release(false);
+            LogUtil.warn(logger, "SSE连接数超过上限: userId={}, max={}", userId, maxConnectionsPerUser);
+            throw new TooManyRequestsException("连接数超过上限，请关闭其他页面后重试", 30);
+        }
+
+        // 登记心跳检查，及时发现并回收已断开的连接
+        sseHeartbeatScheduler.register(connection);
+
+        // 登记用户路由，其他节点的推送据此转发到本节点
+        sseRouter.register(userId);
+
+        // 连接已登记，读取回放日志期间的新事件先进入队列，开始发送后排在回放事件之后（重复的按ID去除）
+        SseEventLog.Replay replay = sseEventLog.replay(userId, lastEventId);
+        List<SseEvent> prelude = new ArrayList<>(replay.getEvents());
+        if (replay.isGap()) {
+            // 错过的事件无法完整回放，通知客户端重新拉取全量状态
+            prelude.add(new SseEvent("resync", "{\"reason\":\"replay_gap\"}"));
+        }
+        // 发送连接成功消息（携带连接ID，客户端断开单个连接时使用）；
+        // 事件ID为回放水位（同时推进两个日志的游标），客户端长时间没有收到事件时重连也只需回放水位之后的事件
+        prelude.add(new SseEvent(replay.getWatermark(), SseEvent.Source.WATERMARK, "connected",
+                "{\"message\":\"SSE连接成功\",\"connectionId\":\"" + connection.getId() + "\"}"));
+        // 游标从客户端已收到的位置开始，回放事件逐个推进，只有已送达的事件才会计入重连时携带的游标
+        sseDispatcher.start(connection, prelude, replay.getUserCursor(), replay.getBroadcastCursor());
+
+        LogUtil.info(logger, "SSE连接建立: userId={}, connectionId={}, transport={}, lastEventId={}, 回放事件数={}, 缺口={}, 当前在线: {}",
+                userId, connection.getId(), connection.isWebSocket() ? "websocket" : "sse", lastEventId,
+                replay.getEvents().size(), replay.isGap(), connectionMap.size());
+    }
+
+    /**
+     * 拒绝新连接
+     * RETRY_HINT模式返回只包含retry提示的事件流，EventSource按提示的随机间隔自动重连；
+     * UNAVAILABLE模式抛出异常，由控制器返回503
+     */
+    private SseEmitter reject(Long userId) {
+        long retryMillis = sseAdmission.nextRetryMillis();
+        LogUtil.warn(logger, "SSE连接被拒绝: userId={}, draining={}, live={}, retry={}ms",
+                userId, sseAdmission.isDraining(), sseAdmission.getLive(), retryMillis);
+        if (sseAdmission.getRejectMode() == SseAdmission.RejectMode.UNAVAILABLE) {
+            throw new ServiceUnavailableException("服务繁忙，请稍后重试", (retryMillis + 999) / 1000);
+        }
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        try {
+            emitter.send(SseEmitter.event()
+                    .reconnectTime(retryMillis)
+                    .name("reconnect")
+                    .data("{\"retry\":" + retryMillis + "}"));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * 从连接集合中移除连接并释放名额，用户没有剩余连接时移除该用户并取消路由登记
+     */
+    private void unregister(SseConnection connection) {
+        sseHeartbeatScheduler.unregister(connection);
+        Long userId = connection.getUserId();
+        boolean[] removed = new boolean[1];
+        boolean[] lastConnection = new boolean[1];
+        connectionMap.computeIfPresent(userId, (key, connections) -> {
+            if (connections.remove(connection.getId()) == null) {
+                return connections;
+            }
+            removed[0] = true;
+            lastConnection[0] = connections.isEmpty();
+            return connections.isEmpty() ? null : connections;
+        });
+        if (removed[0]) {
+            sseAdmission.release(connection.releaseShedding());
+        }
+        if (lastConnection[0]) {
+            sseRouter.unregister(userId);
+            // 取消登记期间用户又建立了新连接时重新登记
+            if (connectionMap.containsKey(userId)) {
+                sseRouter.register(userId);
+            }
+        }
+    }
+
+    /**
+     * 发布一批事件（在发布线程上执行）
+     * 用户事件：回放日志与路由查询各一次管道请求，本节点连接一次性入队，其他节点每个节点转发一条消息；
+     * 广播事件：写入广播回放日志后发布到广播频道（会回送到本节点），发布失败时只推送本地连接
+     */
+    private void publish(List<SseRouter.SseEnvelope> batch) {
+        List<SseRouter.SseEnvelope> envelopes = new ArrayList<>(batch.size());
+        for (SseRouter.SseEnvelope envelope : batch) {
+            if (envelope.getUserId() != null) {
+                envelopes.add(envelope);
+                continue;
+            }
+            String id = sseEventLog.appendBroadcast(envelope.getEvent(), envelope.getData());
+            if (!sseRouter.broadcast(id, envelope.getEvent(), envelope.getData())) {
+                deliverToAll(id, envelope.getEvent(), envelope.getData());
+            }
+        }
+        if (envelopes.isEmpty()) {
+            return;
+        }
+        sseEventLog.appendAll(envelopes);
+        for (SseRouter.SseEnvelope envelope : envelopes) {
+            deliverToUser(envelope.getUserId(), envelope.getId(), envelope.getEvent(), envelope.getData());
+        }
+        sseRouter.forwardAll(envelopes);
+    }
+
+    private String serialize(String eventType, Object data) {
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (IOException e) {
+            LogUtil.error(logger, "SSE推送数据序列化失败: eventType={}", eventType, e);
+            return null;
+        }
+    }
+}
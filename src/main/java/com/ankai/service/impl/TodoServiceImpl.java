@@ -117,20 +117,21 @@ public class TodoServiceImpl extends ServiceImpl<TodoMapper, Todo> implements To
      * 推送待办给用户
      */
     private void pushTodoToUser(Long userId, Todo todo) {
-        // 获取用户待办数量
-        int pendingCount = countPendingTodos(userId);
-
-        SseEventData eventData = new SseEventData();
-        eventData.setType("new_todo");
-        eventData.setUnreadCount(pendingCount);
-        eventData.setMessage("您有一个新的待办事项");
-        eventData.setData(Map.of(
+        Map<String, Object> detail = Map.of(
                 "todoId", todo.getId(),
                 "title", todo.getTitle(),
                 "priority", todo.getPriority(),
                 "todoDate", todo.getTodoDate().toString(),
-                "description", todo.getDescription() != null ? todo.getDescription() : ""));
-
-        sseService.sendToUser(userId, "todo", eventData);
+                "description", todo.getDescription() != null ? todo.getDescription() : "");
+
+        // 批量分配时合并为一次推送，待办数量在推送时统计
+        sseService.sendCoalescedToUser(userId, "todo", merged -> {
+            SseEventData eventData = new SseEventData();
+            eventData.setType("new_todo");
+            eventData.setUnreadCount(countPendingTodos(userId));
+            eventData.setMessage(merged > 1 ? "您有" + merged + "个新的待办事项" : "您有一个新的待办事项");
+            eventData.setData(detail);
+            return eventData;
+        });
     }
 }
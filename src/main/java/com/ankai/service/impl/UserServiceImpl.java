@@ -12,6 +12,9 @@ import com.ankai.exception.BusinessException;
 import com.ankai.mapper.RoleMapper;
 import com.ankai.mapper.UserMapper;
 import com.ankai.mapper.UserRoleMapper;
+import com.ankai.security.PrincipalCache;
+import com.ankai.security.ProfileSnapshotCache;
+import com.ankai.security.TokenVersionService;
 import com.ankai.service.UserService;
 import com.ankai.utils.LogUtil;
 import org.slf4j.Logger;
@@ -22,8 +25,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -47,6 +52,15 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Autowired
     private RoleMapper roleMapper;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
+    @Autowired
+    private ProfileSnapshotCache profileSnapshotCache;
+
     @Override
     public Page<User> page(PageRequest pageRequest) {
         // 创建分页对象
@@ -125,6 +139,29 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
         boolean result = super.updateById(entity);
         LogUtil.info(logger, "用户 {} 更新{}", entity.getUsername(), result ? "成功" : "失败");
+        if (result) {
+            onUserAuthChanged(entity.getId());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean result = super.removeById(id);
+        if (result) {
+            onUserAuthChanged(Long.valueOf(id.toString()));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeByIds(Collection<?> list) {
+        boolean result = super.removeByIds(list);
+        if (result) {
+            principalCache.evictUsers(list);
+            tokenVersionService.bumpAll(list);
+            profileSnapshotCache.bumpUsers(list);
+        }
         return result;
     }
 
@@ -158,6 +195,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         wrapper.eq(UserRole::getUserId, userId);
         userRoleMapper.delete(wrapper);
 
+        onUserAuthChanged(userId);
+
         // 如果角色列表为空，则只删除不添加
         if (roleIds == null || roleIds.isEmpty()) {
             LogUtil.info(logger, "清空用户 {} 的所有角色", user.getUsername());
@@ -221,4 +260,14 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         dtoPage.setRecords(dtoList);
         return dtoPage;
     }
+
+    /**
+     * 用户状态、角色等认证相关信息变更后，失效所有节点上的用户快照，
+     * 递增Token版本号使已签发的自包含Token重新校验，并作废资料快照
+     */
+    private void onUserAuthChanged(Long userId) {
+        principalCache.evictUser(userId);
+        tokenVersionService.bump(userId);
+        profileSnapshotCache.bumpUser(userId);
+    }
 }
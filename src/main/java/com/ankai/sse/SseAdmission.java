@@ -0,0 +1,205 @@
+package com.ankai.sse;
+
+import com.ankai.utils.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE连接准入控制
+ * 限制本节点同时保持的连接总数，超出容量或处于排空模式时拒绝新连接，
+ * 并给出随机化的重连间隔，避免被拒绝或被断开的客户端同时重连。
+ * 排空模式下由SseServiceImpl分批断开连接，直到连接数降到目标值。
+ *
+ * @author AnKai
+ */
+@Component
+public class SseAdmission {
+
+    private static final Logger logger = LogUtil.getLogger(SseAdmission.class);
+
+    /**
+     * 拒绝方式
+     */
+    public enum RejectMode {
+        /**
+         * 返回200并只发送SSE retry提示后结束，EventSource按提示的间隔自动重连
+         */
+        RETRY_HINT,
+        /**
+         * 返回503和Retry-After响应头（EventSource不会自动重连，由前端处理）
+         */
+        UNAVAILABLE
+    }
+
+    // 本节点最大连接数
+    @Value("${sse.admission.max-connections:10000}")
+    private int maxConnections;
+
+    // 拒绝方式
+    @Value("${sse.admission.reject-mode:RETRY_HINT}")
+    private RejectMode rejectMode;
+
+    // 重连间隔下限（毫秒）
+    @Value("${sse.admission.retry-min-ms:3000}")
+    private long retryMinMs;
+
+    // 重连间隔上限（毫秒）
+    @Value("${sse.admission.retry-max-ms:15000}")
+    private long retryMaxMs;
+
+    // 排空模式下每批断开的连接数
+    @Value("${sse.admission.drain-batch-size:50}")
+    private int drainBatchSize;
+
+    /**
+     * 当前连接数（已准入且尚未移除）
+     */
+    private final AtomicInteger live = new AtomicInteger();
+
+    /**
+     * 已选中排空断开但尚未移除的连接数，计算下一批时不再重复计入
+     */
+    private final AtomicInteger shedding = new AtomicInteger();
+
+    /**
+     * 排空目标连接数，-1表示未处于排空模式
+     */
+    private volatile int drainTarget = -1;
+
+    /**
+     * 应用是否正在停止（停止后不再接受新连接，也不再退出）
+     */
+    private volatile boolean shuttingDown;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedCapacity = new LongAdder();
+    private final LongAdder rejectedDraining = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * 申请一个连接名额
+     *
+     * @return 是否准入，准入后必须在连接移除时调用release
+     */
+    public boolean tryAcquire() {
+        if (shuttingDown || drainTarget >= 0) {
+            rejectedDraining.increment();
+            return false;
+        }
+        while (true) {
+            int current = live.get();
+            if (current >= maxConnections) {
+                rejectedCapacity.increment();
+                return false;
+            }
+            if (live.compareAndSet(current, current + 1)) {
+                admitted.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放连接名额
+     *
+     * @param shed 连接是否已被选中排空断开
+     */
+    public void release(boolean shed) {
+        live.decrementAndGet();
+        if (shed) {
+            shedding.decrementAndGet();
+        }
+    }
+
+    /**
+     * 随机化的重连间隔（毫秒）
+     */
+    public long nextRetryMillis() {
+        return retryMaxMs > retryMinMs
+                ? ThreadLocalRandom.current().nextLong(retryMinMs, retryMaxMs + 1)
+                : retryMinMs;
+    }
+
+    public RejectMode getRejectMode() {
+        return rejectMode;
+    }
+
+    /**
+     * 进入排空模式：拒绝新连接，并分批断开已有连接直到连接数不超过目标值
+     *
+     * @param target 目标连接数，0表示断开全部连接
+     */
+    public void startDrain(int target) {
+        this.drainTarget = Math.max(0, target);
+        LogUtil.info(logger, "SSE进入排空模式: 当前连接数={}, 目标连接数={}", live.get(), drainTarget);
+    }
+
+    /**
+     * 退出排空模式，恢复接受新连接
+     */
+    public void stopDrain() {
+        this.drainTarget = -1;
+        LogUtil.info(logger, "SSE退出排空模式: 当前连接数={}", live.get());
+    }
+
+    public boolean isDraining() {
+        return shuttingDown || drainTarget >= 0;
+    }
+
+    /**
+     * 应用停止：不再接受新连接（已有连接由SseShutdownDrainer分批断开）
+     */
+    public void shutdown() {
+        this.shuttingDown = true;
+    }
+
+    /**
+     * 本轮应断开的连接数（未处于排空模式时为0）
+     */
+    public int nextShedBatch() {
+        int target = drainTarget;
+        if (target < 0) {
+            return 0;
+        }
+        // 已选中但尚未断开的连接会自行移除，不再重复选中
+        int remaining = live.get() - Math.max(0, shedding.get()) - target;
+        return Math.max(0, Math.min(drainBatchSize, remaining));
+    }
+
+    /**
+     * 记录已选中排空断开的连接，连接移除时由release扣减
+     */
+    public void recordShed(int count) {
+        shed.add(count);
+        shedding.addAndGet(count);
+    }
+
+    public int getLive() {
+        return live.get();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConnections", maxConnections);
+        stats.put("live", live.get());
+        stats.put("shedding", shedding.get());
+        stats.put("draining", isDraining());
+        stats.put("shuttingDown", shuttingDown);
+        stats.put("drainTarget", drainTarget);
+        stats.put("admitted", admitted.sum());
+        stats.put("rejectedCapacity", rejectedCapacity.sum());
+        stats.put("rejectedDraining", rejectedDraining.sum());
+        stats.put("shed", shed.sum());
+        return stats;
+    }
+}
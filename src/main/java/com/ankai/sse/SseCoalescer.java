@@ -0,0 +1,184 @@
+package com.ankai.sse;
+
+import com.ankai.utils.LogUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * SSE状态类事件合并
+ * 未读数、待办数这类只关心最新值的事件，同一用户同一事件类型在合并窗口内只推送一次：
+ * 窗口内的多次提交只保留最后一次的数据构建器，窗口结束时才构建推送数据（统计查询只执行一次），
+ * 构建器参数为窗口内合并的提交次数。内容类事件不经过这里，直接推送。
+ *
+ * @author AnKai
+ */
+@Component
+public class SseCoalescer {
+
+    private static final Logger logger = LogUtil.getLogger(SseCoalescer.class);
+
+    // 合并窗口（毫秒），0表示不合并
+    @Value("${sse.coalesce.window-ms:200}")
+    private long windowMs;
+
+    // 构建并推送合并事件的线程数
+    @Value("${sse.coalesce.threads:2}")
+    private int threads;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private Sink sink;
+
+    /**
+     * 窗口内待推送的事件
+     * Key: userId:eventType
+     */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder buildFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-coalesce-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LogUtil.info(logger, "SSE事件合并初始化: window={}ms, threads={}", windowMs, threads);
+    }
+
+    /**
+     * 停止时立即推送窗口内尚未推送的事件
+     */
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        new ArrayList<>(pending.keySet()).forEach(this::flush);
+    }
+
+    /**
+     * 设置合并后事件的推送目标
+     */
+    public void bind(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * 提交状态类事件
+     *
+     * @param userId      用户ID
+     * @param eventType   事件类型
+     * @param dataBuilder 推送数据构建器，参数为窗口内合并的提交次数
+     */
+    public void submit(Long userId, String eventType, IntFunction<Object> dataBuilder) {
+        submitted.increment();
+        if (windowMs <= 0) {
+            send(new Pending(userId, eventType, dataBuilder));
+            return;
+        }
+
+        String key = userId + ":" + eventType;
+        boolean[] opened = new boolean[1];
+        pending.compute(key, (k, current) -> {
+            if (current == null) {
+                opened[0] = true;
+                return new Pending(userId, eventType, dataBuilder);
+            }
+            current.dataBuilder = dataBuilder;
+            current.merged++;
+            return current;
+        });
+        if (!opened[0]) {
+            merged.increment();
+        }
+        if (opened[0]) {
+            try {
+                executor.schedule(() -> flush(key), windowMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // 应用停止中，直接推送
+                flush(key);
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowMs", windowMs);
+        stats.put("submitted", submitted.sum());
+        stats.put("sent", sent.sum());
+        stats.put("merged", merged.sum());
+        stats.put("pending", pending.size());
+        stats.put("buildFailures", buildFailures.sum());
+        return stats;
+    }
+
+    private void flush(String key) {
+        Pending current = pending.remove(key);
+        if (current != null) {
+            send(current);
+        }
+    }
+
+    private void send(Pending current) {
+        Object data;
+        try {
+            data = current.dataBuilder.apply(current.merged);
+        } catch (Exception e) {
+            buildFailures.increment();
+            LogUtil.error(logger, "SSE合并事件构建失败: userId={}, eventType={}", current.userId, current.eventType, e);
+            return;
+        }
+        sent.increment();
+        sink.sendToUser(current.userId, current.eventType, data);
+    }
+
+    /**
+     * 合并后事件的推送目标
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * 推送给指定用户
+         */
+        void sendToUser(Long userId, String eventType, Object data);
+    }
+
+    /**
+     * 窗口内待推送的事件（只在ConcurrentHashMap的compute/remove中读写）
+     */
+    private static final class Pending {
+
+        private final Long userId;
+        private final String eventType;
+        private IntFunction<Object> dataBuilder;
+        private int merged = 1;
+
+        private Pending(Long userId, String eventType, IntFunction<Object> dataBuilder) {
+            this.userId = userId;
+            this.eventType = eventType;
+            this.dataBuilder = dataBuilder;
+        }
+    }
+}
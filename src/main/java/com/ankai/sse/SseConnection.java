@@ -0,0 +1,327 @@
+package com.ankai.sse;
+
+import lombok.Getter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * SSE连接
+ * 同一用户可以同时持有多个连接（多个标签页或设备），每个连接有独立的ID；
+ * 每个连接有一个有界发送队列，由SseDispatcher在专用线程上排空。
+ * 底层可以是SseEmitter，也可以是WebSocket会话，对推送方透明
+ *
+ * @author AnKai
+ */
+@Getter
+public class SseConnection {
+
+    /**
+     * 认证失效时WebSocket连接的关闭码（应用自定义范围4000-4999），客户端应刷新Token后重连
+     */
+    public static final CloseStatus TOKEN_INVALID = new CloseStatus(4401, "token invalid");
+
+    /**
+     * 连接ID
+     */
+    private final String id;
+
+    /**
+     * 用户ID
+     */
+    private final Long userId;
+
+    /**
+     * 底层SseEmitter（WebSocket连接为空）
+     */
+    private final SseEmitter emitter;
+
+    /**
+     * 底层WebSocket会话（SSE连接为空）
+     */
+    private final WebSocketSession session;
+
+    /**
+     * 建立时间
+     */
+    private final long createdAt;
+
+    /**
+     * 待发送事件队列
+     */
+    private final BlockingQueue<SseEvent> queue;
+
+    /**
+     * 是否已提交排空任务（保证同一连接同时只有一个线程在发送，事件按顺序写出）
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // 排空状态：未选中
+    private static final int SHED_NONE = 0;
+
+    // 排空状态：已选中排空断开，尚未移除
+    private static final int SHED_MARKED = 1;
+
+    // 排空状态：已移除，不能再被选中
+    private static final int SHED_RELEASED = 2;
+
+    /**
+     * 排空状态，移除后不再变化，保证选中与移除只有一方先发生
+     */
+    private final AtomicInteger shedding = new AtomicInteger(SHED_NONE);
+
+    /**
+     * 最近一次成功写出数据（包括心跳）的时间
+     */
+    private volatile long lastSentAt;
+
+    /**
+     * 最近一次成功写出业务事件的时间
+     */
+    private volatile long lastEventAt;
+
+    /**
+     * 是否已开始发送（开始前放入队列的事件等待前置事件确定后再发送）
+     */
+    private volatile boolean started;
+
+    /**
+     * 前置事件（连接事件、重连回放的事件），先于队列中的事件发送
+     */
+    private volatile List<SseEvent> prelude = Collections.emptyList();
+
+    /**
+     * 已回放的事件（日志+ID），队列中相同的事件不再重复发送（只由排空线程访问）
+     */
+    private final Set<String> replayedIds = new HashSet<>();
+
+    /**
+     * 用户事件日志中已送达的最大事件ID（只由排空线程访问）
+     */
+    private String userCursor;
+
+    /**
+     * 广播事件日志中已送达的最大事件ID（只由排空线程访问）
+     */
+    private String broadcastCursor;
+
+    /**
+     * 连接关闭时的回调（从连接注册表中移除）
+     */
+    private volatile Runnable closeListener;
+
+    /**
+     * 认证有效性检查（WebSocket连接建立后不再经过认证过滤器，由心跳检查定期调用）
+     */
+    private volatile BooleanSupplier authCheck;
+
+    public SseConnection(Long userId, SseEmitter emitter, int queueCapacity) {
+        this(userId, emitter, null, queueCapacity);
+    }
+
+    public SseConnection(Long userId, WebSocketSession session, int queueCapacity) {
+        this(userId, null, session, queueCapacity);
+    }
+
+    private SseConnection(Long userId, SseEmitter emitter, WebSocketSession session, int queueCapacity) {
+        this.id = UUID.randomUUID().toString().replace("-", "");
+        this.userId = userId;
+        this.emitter = emitter;
+        this.session = session;
+        this.createdAt = System.currentTimeMillis();
+        this.lastSentAt = createdAt;
+        this.lastEventAt = createdAt;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * 设置连接关闭回调
+     */
+    public void onClose(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    /**
+     * 设置认证有效性检查
+     */
+    public void requireAuth(BooleanSupplier authCheck) {
+        this.authCheck = authCheck;
+    }
+
+    /**
+     * 认证是否仍然有效（未设置检查时始终有效）
+     */
+    public boolean isAuthValid() {
+        BooleanSupplier check = authCheck;
+        return check == null || check.getAsBoolean();
+    }
+
+    /**
+     * 是否为WebSocket连接
+     */
+    public boolean isWebSocket() {
+        return session != null;
+    }
+
+    /**
+     * 直接发送事件（调用方需保证与排空线程互斥，一般只由SseDispatcher调用）
+     * WebSocket连接的心跳使用Ping帧
+     */
+    public void send(SseEvent event) throws IOException {
+        String cursor = advanceCursor(event);
+        if (session != null) {
+            session.sendMessage(event.isComment() ? new PingMessage() : event.toWebSocketMessage(cursor));
+        } else {
+            emitter.send(event.toBuilder(cursor));
+        }
+    }
+
+    /**
+     * 设置前置事件并开始发送（只调用一次，之后由SseDispatcher调度排空）
+     *
+     * @param prelude 前置事件
+     */
+    public void start(List<SseEvent> prelude) {
+        start(prelude, null, null);
+    }
+
+    /**
+     * 设置前置事件并开始发送（只调用一次，之后由SseDispatcher调度排空）
+     *
+     * @param prelude         前置事件
+     * @param userCursor      客户端在用户事件日志中已收到的最大事件ID，首次连接为空
+     * @param broadcastCursor 客户端在广播事件日志中已收到的最大事件ID，首次连接为空
+     */
+    public void start(List<SseEvent> prelude, String userCursor, String broadcastCursor) {
+        this.userCursor = userCursor;
+        this.broadcastCursor = broadcastCursor;
+        this.prelude = prelude;
+        this.started = true;
+    }
+
+    /**
+     * 取出尚未发送的前置事件（只由排空线程调用）
+     */
+    public List<SseEvent> takePrelude() {
+        List<SseEvent> events = prelude;
+        if (!events.isEmpty()) {
+            prelude = Collections.emptyList();
+            for (SseEvent event : events) {
+                if (event.getId() != null) {
+                    replayedIds.add(event.getSource() + event.getId());
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * 事件是否已作为回放事件发送过（只由排空线程调用）
+     */
+    public boolean isReplayed(SseEvent event) {
+        return event.getId() != null && !replayedIds.isEmpty() && replayedIds.contains(event.getSource() + event.getId());
+    }
+
+    /**
+     * 按即将写出的事件推进回放游标（只由排空线程调用）
+     * 用户事件与广播事件的ID来自两个Stream，到达顺序与ID顺序无关，
+     * 所以分别记录每个Stream已送达的最大ID，重连时各自从自己的位置回放，不会漏掉另一个Stream中ID更小但后送达的事件
+     *
+     * @return 写给客户端的事件ID（两个Stream游标的组合），事件没有ID时返回null（客户端保留上一个ID）
+     */
+    private String advanceCursor(SseEvent event) {
+        if (event.getId() == null || event.getSource() == null) {
+            return null;
+        }
+        if (event.getSource() != SseEvent.Source.BROADCAST) {
+            userCursor = SseEventLog.maxId(userCursor, event.getId());
+        }
+        if (event.getSource() != SseEvent.Source.USER) {
+            broadcastCursor = SseEventLog.maxId(broadcastCursor, event.getId());
+        }
+        return SseEventLog.cursor(userCursor, broadcastCursor);
+    }
+
+    /**
+     * 记录一次成功写出
+     *
+     * @param event 已写出的事件
+     */
+    public void markSent(SseEvent event) {
+        long now = System.currentTimeMillis();
+        lastSentAt = now;
+        if (!event.isComment()) {
+            lastEventAt = now;
+        }
+    }
+
+    /**
+     * 标记为排空断开，只有第一次调用且连接尚未移除时返回true
+     */
+    public boolean markShedding() {
+        return shedding.compareAndSet(SHED_NONE, SHED_MARKED);
+    }
+
+    /**
+     * 连接移除时调用，此后不能再被选中排空断开
+     *
+     * @return 移除前是否已被选中排空断开
+     */
+    public boolean releaseShedding() {
+        return shedding.getAndSet(SHED_RELEASED) == SHED_MARKED;
+    }
+
+    /**
+     * 是否已关闭
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * 关闭连接，只执行一次
+     */
+    public void close() {
+        close(CloseStatus.GOING_AWAY);
+    }
+
+    /**
+     * 关闭连接，只执行一次
+     *
+     * @param status WebSocket关闭码（SSE连接忽略）
+     */
+    public void close(CloseStatus status) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        queue.clear();
+        Runnable listener = closeListener;
+        if (listener != null) {
+            listener.run();
+        }
+        try {
+            if (session != null) {
+                session.close(status);
+            } else {
+                emitter.complete();
+            }
+        } catch (Exception e) {
+            // 忽略关闭时的异常
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.ankai.sse;
+
+import com.ankai.utils.LogUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE异步发送器
+ * 业务线程只把事件放入连接的有界队列后立即返回，由专用线程池排空队列写出到网络；
+ * 同一连接同一时刻只有一个排空任务，保证事件顺序。队列满时按配置丢弃最旧事件或断开慢连接。
+ * 连接开始发送前（重连回放读取期间）事件只入队不发送，开始后先发送前置事件再排空队列。
+ *
+ * @author AnKai
+ */
+@Component
+public class SseDispatcher {
+
+    private static final Logger logger = LogUtil.getLogger(SseDispatcher.class);
+
+    /**
+     * 单次排空最多发送的事件数，之后重新排队，避免一个连接长期占用线程
+     */
+    private static final int DRAIN_BATCH = 32;
+
+    /**
+     * 队列溢出策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃最旧的事件
+         */
+        DROP_OLDEST,
+        /**
+         * 断开连接（客户端重连后重新拉取状态）
+         */
+        EVICT
+    }
+
+    // 发送线程数
+    @Value("${sse.dispatch.threads:4}")
+    private int threads;
+
+    // 每个连接的队列容量
+    @Value("${sse.dispatch.queue-capacity:64}")
+    private int queueCapacity;
+
+    // 队列溢出策略
+    @Value("${sse.dispatch.overflow-policy:EVICT}")
+    private OverflowPolicy overflowPolicy;
+
+    private ExecutorService executor;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder heartbeatFailures = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sse-dispatch-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        LogUtil.info(logger, "SSE发送线程池初始化: threads={}, queueCapacity={}, overflowPolicy={}",
+                threads, queueCapacity, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 每个连接的队列容量
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 把事件放入连接队列（不阻塞）
+     *
+     * @param connection 连接
+     * @param event      事件
+     */
+    public void dispatch(SseConnection connection, SseEvent event) {
+        if (connection.isClosed()) {
+            return;
+        }
+        if (!connection.getQueue().offer(event)) {
+            if (overflowPolicy == OverflowPolicy.EVICT) {
+                evicted.increment();
+                LogUtil.warn(logger, "SSE连接发送队列已满，断开慢连接: userId={}, connectionId={}",
+                        connection.getUserId(), connection.getId());
+                connection.close();
+                return;
+            }
+            // 丢弃最旧的事件后重试，仍失败（并发写入）则丢弃当前事件
+            connection.getQueue().poll();
+            dropped.increment();
+            if (!connection.getQueue().offer(event)) {
+                dropped.increment();
+                return;
+            }
+        }
+        enqueued.increment();
+        if (connection.isStarted()) {
+            schedule(connection);
+        }
+    }
+
+    /**
+     * 开始发送：先发送前置事件，再发送开始前已入队的事件
+     *
+     * @param connection      连接
+     * @param prelude         前置事件
+     * @param userCursor      客户端在用户事件日志中已收到的最大事件ID，首次连接为空
+     * @param broadcastCursor 客户端在广播事件日志中已收到的最大事件ID，首次连接为空
+     */
+    public void start(SseConnection connection, List<SseEvent> prelude, String userCursor, String broadcastCursor) {
+        connection.start(prelude, userCursor, broadcastCursor);
+        schedule(connection);
+    }
+
+    /**
+     * 在发送线程上关闭连接（关闭回调可能访问Redis，避免阻塞调用方线程）
+     *
+     * @param connection 连接
+     */
+    public void closeAsync(SseConnection connection) {
+        closeAsync(connection, CloseStatus.GOING_AWAY);
+    }
+
+    /**
+     * 在发送线程上关闭连接，并指定WebSocket关闭码
+     */
+    public void closeAsync(SseConnection connection, CloseStatus status) {
+        try {
+            executor.execute(() -> connection.close(status));
+        } catch (RejectedExecutionException e) {
+            connection.close(status);
+        }
+    }
+
+    /**
+     * 在发送线程上执行可能阻塞的检查任务（例如访问Redis的认证检查），避免阻塞调用方线程
+     *
+     * @param task 任务
+     */
+    public void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭（应用停止中）
+        }
+    }
+
+    /**
+     * 心跳写出失败（检测到连接已断开）的次数
+     */
+    public long getHeartbeatFailures() {
+        return heartbeatFailures.sum();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        long count = sent.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", threads);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("overflowPolicy", overflowPolicy);
+        stats.put("enqueued", enqueued.sum());
+        stats.put("sent", count);
+        stats.put("dropped", dropped.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("sendFailures", sendFailures.sum());
+        stats.put("avgSendMicros", count == 0 ? 0 : sendNanos.sum() / count / 1000.0);
+        stats.put("maxSendMicros", maxSendNanos.get() / 1000.0);
+        return stats;
+    }
+
+    private void schedule(SseConnection connection) {
+        if (connection.getDraining().compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> drain(connection));
+            } catch (RejectedExecutionException e) {
+                // 线程池已关闭（应用停止中）
+                connection.getDraining().set(false);
+            }
+        }
+    }
+
+    private void drain(SseConnection connection) {
+        try {
+            for (SseEvent event : connection.takePrelude()) {
+                if (!send(connection, event)) {
+                    return;
+                }
+            }
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                SseEvent event = connection.getQueue().poll();
+                if (event == null) {
+                    break;
+                }
+                if (connection.isReplayed(event)) {
+                    continue;
+                }
+                if (!send(connection, event)) {
+                    return;
+                }
+            }
+        } finally {
+            connection.getDraining().set(false);
+        }
+        // 释放标记后队列中仍有事件（批次用完或并发写入），重新调度
+        if (!connection.getQueue().isEmpty() && !connection.isClosed()) {
+            schedule(connection);
+        }
+    }
+
+    private boolean send(SseConnection connection, SseEvent event) {
+        long start = System.nanoTime();
+        try {
+            connection.send(event);
+            connection.markSent(event);
+            long elapsed = System.nanoTime() - start;
+            sent.increment();
+            sendNanos.add(elapsed);
+            maxSendNanos.accumulateAndGet(elapsed, Math::max);
+            if (event.isCloseAfterSend()) {
+                connection.close();
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            sendFailures.increment();
+            if (event.isComment()) {
+                heartbeatFailures.increment();
+            }
+            LogUtil.warn(logger, "SSE推送失败，移除连接: userId={}, connectionId={}, error={}",
+                    connection.getUserId(), connection.getId(), e.getMessage());
+            connection.close();
+            return false;
+        }
+    }
+}
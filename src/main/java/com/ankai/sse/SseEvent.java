@@ -0,0 +1,258 @@
+package com.ankai.sse;
+
+import lombok.Getter;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 待发送的SSE事件
+ * 数据已序列化为JSON；完整的SSE帧在首次发送时编码为字节数组并缓存，
+ * 同一事件投递到多个连接时所有连接共享同一份字节，不再逐个连接重复编码；
+ * WebSocket连接使用JSON文本帧，同样只编码一次。
+ * 写给客户端的事件ID是连接的回放游标（每个日志Stream已送达的最大ID），随连接不同，
+ * 因此id行不计入共享的帧，发送时单独写在共享帧之前；共享帧也不含结束事件的空行，
+ * 构建器在最后追加，调用方追加的字段仍属于同一事件
+ *
+ * @author AnKai
+ */
+@Getter
+public class SseEvent {
+
+    /**
+     * 心跳事件（SSE注释行，客户端EventSource会忽略），所有连接共享
+     */
+    public static final SseEvent HEARTBEAT = new SseEvent(null, null, null, "heartbeat", true, 0, false);
+
+    /**
+     * 事件ID（所属回放日志Stream中的条目ID），可以为空
+     */
+    private final String id;
+
+    /**
+     * 事件ID所属的回放日志，ID为空时也为空
+     */
+    private final Source source;
+
+    /**
+     * 事件类型
+     */
+    private final String name;
+
+    /**
+     * 已序列化的事件数据
+     */
+    private final String data;
+
+    /**
+     * 是否为注释（心跳），注释不计入业务事件
+     */
+    private final boolean comment;
+
+    /**
+     * 建议客户端重连间隔（毫秒），0表示不设置
+     */
+    private final long retryMillis;
+
+    /**
+     * 发送后是否关闭连接（排空时通知客户端按retry间隔重连）
+     */
+    private final boolean closeAfterSend;
+
+    /**
+     * 编码后的SSE帧，不含id行和结束空行（惰性初始化，重复计算结果相同，无需加锁）
+     */
+    private volatile ResponseBodyEmitter.DataWithMediaType frame;
+
+    /**
+     * WebSocket文本帧，不含开头的"{"和id字段（惰性初始化）
+     */
+    private volatile String webSocketBody;
+
+    /**
+     * 不带ID的WebSocket文本帧（惰性初始化）
+     */
+    private volatile TextMessage webSocketMessage;
+
+    public SseEvent(String name, String data) {
+        this(null, null, name, data, false, 0, false);
+    }
+
+    public SseEvent(String id, Source source, String name, String data) {
+        this(id, id != null ? source : null, name, data, false, 0, false);
+    }
+
+    private SseEvent(String id, Source source, String name, String data, boolean comment, long retryMillis, boolean closeAfterSend) {
+        this.id = id;
+        this.source = source;
+        this.name = name;
+        this.data = data;
+        this.comment = comment;
+        this.retryMillis = retryMillis;
+        this.closeAfterSend = closeAfterSend;
+    }
+
+    /**
+     * 重连事件：设置客户端重连间隔，发送后服务端关闭连接，EventSource在该间隔后自动重连
+     *
+     * @param retryMillis 重连间隔（毫秒）
+     */
+    public static SseEvent reconnect(long retryMillis) {
+        return new SseEvent(null, null, "reconnect", "{\"retry\":" + retryMillis + "}", false, retryMillis, true);
+    }
+
+    /**
+     * 构建SseEmitter事件，底层直接写出预编码的字节
+     * 返回的构建器可以继续追加字段，追加的字段写在共享帧之后、结束空行之前
+     *
+     * @param cursor 连接的回放游标，作为id行写出，为空时不写id行
+     */
+    public SseEmitter.SseEventBuilder toBuilder(String cursor) {
+        ResponseBodyEmitter.DataWithMediaType encoded = frame;
+        if (encoded == null) {
+            encoded = new ResponseBodyEmitter.DataWithMediaType(encode(), MediaType.TEXT_PLAIN);
+            frame = encoded;
+        }
+        EncodedEventBuilder builder = new EncodedEventBuilder();
+        if (cursor != null) {
+            // SSE字段在同一个事件块内顺序无关，id行单独编码后写在共享帧之前
+            builder.id(cursor);
+        }
+        return builder.append(encoded);
+    }
+
+    /**
+     * 构建WebSocket文本帧：{"id":"..","event":"..","retry":..,"data":事件数据}
+     * 事件数据已是JSON，直接嵌入
+     *
+     * @param cursor 连接的回放游标，作为id字段写出，为空时不写id字段
+     */
+    public TextMessage toWebSocketMessage(String cursor) {
+        String body = webSocketBody;
+        if (body == null) {
+            StringBuilder builder = new StringBuilder(name.length() + data.length() + 48);
+            builder.append("\"event\":\"").append(name).append("\",");
+            if (retryMillis > 0) {
+                builder.append("\"retry\":").append(retryMillis).append(',');
+            }
+            builder.append("\"data\":").append(data).append('}');
+            body = builder.toString();
+            webSocketBody = body;
+        }
+        if (cursor != null) {
+            return new TextMessage("{\"id\":\"" + cursor + "\"," + body);
+        }
+        TextMessage message = webSocketMessage;
+        if (message == null) {
+            message = new TextMessage("{" + body);
+            webSocketMessage = message;
+        }
+        return message;
+    }
+
+    /**
+     * 按SSE协议编码：retry行（可选） + event行 + 每行数据一个data行；注释编码为冒号开头的单行
+     * 结束事件的空行由构建器追加
+     */
+    private byte[] encode() {
+        if (comment) {
+            return (":" + data + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+        StringBuilder builder = new StringBuilder(name.length() + data.length() + 64);
+        if (retryMillis > 0) {
+            builder.append("retry:").append(retryMillis).append('\n');
+        }
+        builder.append("event:").append(name).append('\n');
+        int start = 0;
+        int newline;
+        while ((newline = data.indexOf('\n', start)) >= 0) {
+            builder.append("data:").append(data, start, newline).append('\n');
+            start = newline + 1;
+        }
+        builder.append("data:").append(data, start, data.length()).append('\n');
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 事件ID所属的回放日志
+     */
+    public enum Source {
+
+        /**
+         * 用户事件日志
+         */
+        USER,
+
+        /**
+         * 广播事件日志
+         */
+        BROADCAST,
+
+        /**
+         * 回放水位，同时适用于两个日志
+         */
+        WATERMARK
+    }
+
+    /**
+     * 预编码事件的构建器：依次写出各部分，build时追加结束空行
+     * 追加的字段与SseEmitter默认构建器的编码相同，数据对象由消息转换器写出
+     */
+    private static final class EncodedEventBuilder implements SseEmitter.SseEventBuilder {
+
+        private final Set<ResponseBodyEmitter.DataWithMediaType> parts = new LinkedHashSet<>(4);
+
+        @Override
+        public Set<ResponseBodyEmitter.DataWithMediaType> build() {
+            Set<ResponseBodyEmitter.DataWithMediaType> frame = new LinkedHashSet<>(parts);
+            frame.add(text("\n"));
+            return frame;
+        }
+
+        @Override
+        public SseEmitter.SseEventBuilder id(String id) {
+            return append(text("id:" + id + "\n"));
+        }
+
+        @Override
+        public SseEmitter.SseEventBuilder name(String eventName) {
+            return append(text("event:" + eventName + "\n"));
+        }
+
+        @Override
+        public SseEmitter.SseEventBuilder reconnectTime(long reconnectTimeMillis) {
+            return append(text("retry:" + reconnectTimeMillis + "\n"));
+        }
+
+        @Override
+        public SseEmitter.SseEventBuilder comment(String comment) {
+            return append(text(":" + comment + "\n"));
+        }
+
+        @Override
+        public SseEmitter.SseEventBuilder data(Object object) {
+            return data(object, null);
+        }
+
+        @Override
+        public SseEmitter.SseEventBuilder data(Object object, MediaType mediaType) {
+            append(text("data:"));
+            append(new ResponseBodyEmitter.DataWithMediaType(object, mediaType));
+            return append(text("\n"));
+        }
+
+        private EncodedEventBuilder append(ResponseBodyEmitter.DataWithMediaType part) {
+            parts.add(part);
+            return this;
+        }
+
+        private static ResponseBodyEmitter.DataWithMediaType text(String text) {
+            return new ResponseBodyEmitter.DataWithMediaType(text.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_PLAIN);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.ankai.sse;
+
+import com.ankai.utils.LogUtil;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE事件回放日志
+ * 每个用户一个有界Redis Stream，广播事件写入一个共享Stream；Stream条目ID在各自Stream内单调递增。
+ * 两个Stream的ID互相独立，写给客户端的事件ID是回放游标：用户Stream与广播Stream中已送达的最大ID（用下划线连接），
+ * 客户端重连时携带最后收到的游标，一次脚本调用分别读出两个Stream中各自位置之后的事件合并回放；
+ * 日志已被裁剪或过期无法保证完整时，回放结果标记为存在缺口，由客户端重新拉取全量状态。
+ * 每次连接都会返回一个水位ID（读取时刻之前的事件都已包含在读取结果中），
+ * 客户端即使长时间没有收到事件，重连时携带的事件ID也不会过旧。
+ *
+ * @author AnKai
+ */
+@Component
+public class SseEventLog {
+
+    private static final Logger logger = LogUtil.getLogger(SseEventLog.class);
+
+    // 用户事件日志Redis key前缀
+    private static final String USER_LOG_PREFIX = "sse:log:user:";
+
+    // 广播事件日志Redis key
+    private static final String BROADCAST_LOG_KEY = "sse:log:broadcast";
+
+    // 回放游标中两个Stream ID的分隔符
+    private static final char CURSOR_SEPARATOR = '_';
+
+    /**
+     * 追加脚本
+     * KEYS[1]: Stream key
+     * ARGV[1]: 最大长度（近似裁剪）, ARGV[2]: 有效期（秒）, ARGV[3]: 事件类型, ARGV[4]: 事件数据
+     * 返回: 条目ID
+     */
+    private static final DefaultRedisScript<String> APPEND_SCRIPT = new DefaultRedisScript<>(
+            "local id = redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', 'e', ARGV[3], 'd', ARGV[4]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return id",
+            String.class);
+
+    /**
+     * 回放脚本
+     * KEYS[1]: 用户Stream, KEYS[2]: 广播Stream
+     * ARGV[1]: 用户Stream起始ID, ARGV[2]: 广播Stream起始ID（包含，为空时只返回概要）, ARGV[3]: 每个Stream最多读取的条数
+     * 返回: 每个Stream一项 {长度, 最早ID, 最新ID, 条目列表}，最后一项为Redis当前时间（毫秒）
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> REPLAY_SCRIPT = new DefaultRedisScript<>(
+            "local result = {} " +
+            "for i = 1, 2 do " +
+            "  local first = redis.call('XRANGE', KEYS[i], '-', '+', 'COUNT', 1) " +
+            "  local last = redis.call('XREVRANGE', KEYS[i], '+', '-', 'COUNT', 1) " +
+            "  local entries = {} " +
+            "  if ARGV[i] ~= '' then entries = redis.call('XRANGE', KEYS[i], ARGV[i], '+', 'COUNT', ARGV[3]) end " +
+            "  result[i] = {tostring(redis.call('XLEN', KEYS[i])), first[1] and first[1][1] or '', " +
+            "    last[1] and last[1][1] or '', entries} " +
+            "end " +
+            "local now = redis.call('TIME') " +
+            "result[3] = tostring(now[1] * 1000 + math.floor(now[2] / 1000)) " +
+            "return result",
+            List.class);
+
+    /**
+     * 按事件ID排序（毫秒时间戳-序号）
+     */
+    static final Comparator<String> ID_ORDER = Comparator
+            .comparingLong((String id) -> Long.parseLong(id.substring(0, id.indexOf('-'))))
+            .thenComparingLong(id -> Long.parseLong(id.substring(id.indexOf('-') + 1)));
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 每个用户日志保留的最大事件数
+    @Value("${sse.replay.max-len:100}")
+    private int maxLen;
+
+    // 广播日志保留的最大事件数
+    @Value("${sse.replay.broadcast-max-len:100}")
+    private int broadcastMaxLen;
+
+    // 日志有效期（秒），超过该时间没有新事件的日志整体过期；应大于SSE连接超时，保证在线但长时间无事件的客户端重连时不误判缺口
+    @Value("${sse.replay.ttl:3600}")
+    private long ttlSeconds;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder replayedEvents = new LongAdder();
+    private final LongAdder gaps = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * 批量记录发给多个用户的事件（一次管道请求），事件ID写回各自的envelope
+     * Redis不可用时事件ID保持为空（事件照常推送，只是无法回放）
+     *
+     * @param envelopes 待推送的用户事件
+     */
+    public void appendAll(List<SseRouter.SseEnvelope> envelopes) {
+        if (envelopes.isEmpty()) {
+            return;
+        }
+        byte[] script = APPEND_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[] limit = String.valueOf(maxLen).getBytes(StandardCharsets.UTF_8);
+        byte[] ttl = String.valueOf(ttlSeconds).getBytes(StandardCharsets.UTF_8);
+        List<Object> ids;
+        try {
+            ids = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (SseRouter.SseEnvelope envelope : envelopes) {
+                    connection.scriptingCommands().eval(script, ReturnType.VALUE, 1,
+                            (USER_LOG_PREFIX + envelope.getUserId()).getBytes(StandardCharsets.UTF_8), limit, ttl,
+                            envelope.getEvent().getBytes(StandardCharsets.UTF_8),
+                            envelope.getData().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "批量写入SSE回放日志失败: size={}", envelopes.size(), e);
+            return;
+        }
+        for (int i = 0; i < envelopes.size(); i++) {
+            Object id = ids.get(i);
+            if (id instanceof String value) {
+                envelopes.get(i).setId(value);
+                appended.increment();
+            } else {
+                failures.increment();
+            }
+        }
+    }
+
+    /**
+     * 记录广播事件
+     *
+     * @return 事件ID，Redis不可用时返回null
+     */
+    public String appendBroadcast(String event, String data) {
+        return append(BROADCAST_LOG_KEY, broadcastMaxLen, event, data);
+    }
+
+    /**
+     * 读取用户在指定事件之后错过的事件
+     *
+     * @param userId      用户ID
+     * @param lastEventId 客户端最后收到的事件ID（回放游标），为空表示首次连接（只返回当前最新ID）
+     * @return 回放结果
+     */
+    @SuppressWarnings("unchecked")
+    public Replay replay(Long userId, String lastEventId) {
+        boolean reconnect = lastEventId != null && !lastEventId.isEmpty();
+        String[] cursors = {null, null};
+        String[] startIds = {"", ""};
+        boolean invalid = false;
+        if (reconnect) {
+            cursors = parseCursor(lastEventId);
+            if (cursors == null) {
+                // 无法回放，按首次连接读取水位，并要求客户端重新拉取
+                LogUtil.warn(logger, "无法识别的Last-Event-ID: userId={}, lastEventId={}", userId, lastEventId);
+                cursors = new String[]{null, null};
+                invalid = true;
+            } else {
+                startIds = new String[]{nextId(cursors[0]), nextId(cursors[1])};
+                replays.increment();
+            }
+        }
+
+        // 近似裁剪时日志长度会略超过上限，读取条数留出余量
+        int readLimit = Math.max(maxLen, broadcastMaxLen) * 2;
+        List<Object> result;
+        try {
+            result = stringRedisTemplate.execute(REPLAY_SCRIPT,
+                    Arrays.asList(USER_LOG_PREFIX + userId, BROADCAST_LOG_KEY),
+                    startIds[0], startIds[1], String.valueOf(readLimit));
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "读取SSE回放日志失败: userId={}", userId, e);
+            return new Replay(Collections.emptyList(), null, reconnect, cursors[0], cursors[1]);
+        }
+
+        // Stream新条目的时间戳不小于Redis当前时间，所以当前毫秒之前的ID都已在本次读取范围内
+        long redisMillis = Long.parseLong((String) result.get(2));
+        String watermark = (redisMillis - 1) + "-" + Long.MAX_VALUE;
+
+        List<SseEvent> events = new ArrayList<>();
+        boolean gap = invalid || (reconnect && (isExpired(cursors[0]) || isExpired(cursors[1])));
+        int[] limits = {maxLen, broadcastMaxLen};
+        SseEvent.Source[] sources = {SseEvent.Source.USER, SseEvent.Source.BROADCAST};
+        for (int i = 0; i < 2; i++) {
+            List<Object> stream = (List<Object>) result.get(i);
+            long length = Long.parseLong((String) stream.get(0));
+            String firstId = (String) stream.get(1);
+            String lastId = (String) stream.get(2);
+            // 时钟回拨时Stream中的ID可能超前于当前时间
+            if (!lastId.isEmpty() && ID_ORDER.compare(lastId, watermark) > 0) {
+                watermark = lastId;
+            }
+            // 日志已达到裁剪长度且最早的条目晚于客户端最后收到的事件，中间可能有事件被裁掉
+            if (reconnect && !invalid && length >= limits[i] && !firstId.isEmpty() && ID_ORDER.compare(firstId, startIds[i]) > 0) {
+                gap = true;
+            }
+            List<Object> entries = (List<Object>) stream.get(3);
+            if (entries.size() >= readLimit) {
+                gap = true;
+            }
+            for (Object entry : entries) {
+                SseEvent event = toEvent((List<Object>) entry, sources[i]);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+        }
+        events.sort((a, b) -> ID_ORDER.compare(a.getId(), b.getId()));
+
+        if (gap) {
+            gaps.increment();
+        }
+        replayedEvents.add(events.size());
+        return new Replay(events, watermark, gap, cursors[0], cursors[1]);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxLen", maxLen);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("appended", appended.sum());
+        stats.put("replays", replays.sum());
+        stats.put("replayedEvents", replayedEvents.sum());
+        stats.put("gaps", gaps.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    private String append(String key, int limit, String event, String data) {
+        try {
+            String id = stringRedisTemplate.execute(APPEND_SCRIPT, Collections.singletonList(key),
+                    String.valueOf(limit), String.valueOf(ttlSeconds), event, data);
+            appended.increment();
+            return id;
+        } catch (Exception e) {
+            failures.increment();
+            LogUtil.error(logger, "写入SSE回放日志失败: key={}, event={}", key, event, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stream条目 [id, [字段, 值, ...]] 转为事件
+     */
+    @SuppressWarnings("unchecked")
+    private SseEvent toEvent(List<Object> entry, SseEvent.Source source) {
+        String id = (String) entry.get(0);
+        List<Object> fields = (List<Object>) entry.get(1);
+        String name = null;
+        String data = null;
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            if ("e".equals(fields.get(i))) {
+                name = (String) fields.get(i + 1);
+            } else if ("d".equals(fields.get(i))) {
+                data = (String) fields.get(i + 1);
+            }
+        }
+        return name != null && data != null ? new SseEvent(id, source, name, data) : null;
+    }
+
+    /**
+     * 组合回放游标
+     *
+     * @param userId      用户Stream中已送达的最大ID，可以为空
+     * @param broadcastId 广播Stream中已送达的最大ID，可以为空
+     */
+    static String cursor(String userId, String broadcastId) {
+        return (userId != null ? userId : "") + CURSOR_SEPARATOR + (broadcastId != null ? broadcastId : "");
+    }
+
+    /**
+     * 两个事件ID中较大的一个
+     */
+    static String maxId(String current, String id) {
+        return current == null || ID_ORDER.compare(id, current) > 0 ? id : current;
+    }
+
+    /**
+     * 解析回放游标
+     * 兼容单个事件ID（旧版本客户端保存的ID，两个Stream都从该ID之后回放）；游标中一侧为空时按另一侧处理
+     *
+     * @return {用户Stream ID, 广播Stream ID}，格式不合法时返回null
+     */
+    private static String[] parseCursor(String lastEventId) {
+        int separator = lastEventId.indexOf(CURSOR_SEPARATOR);
+        String userId = separator < 0 ? lastEventId : lastEventId.substring(0, separator);
+        String broadcastId = separator < 0 ? lastEventId : lastEventId.substring(separator + 1);
+        if (userId.isEmpty()) {
+            userId = broadcastId;
+        } else if (broadcastId.isEmpty()) {
+            broadcastId = userId;
+        }
+        if (nextId(userId) == null || nextId(broadcastId) == null) {
+            return null;
+        }
+        return new String[]{userId, broadcastId};
+    }
+
+    /**
+     * 紧随指定ID之后的ID（XRANGE起始ID包含自身）
+     *
+     * @return 下一个ID，格式不合法时返回null
+     */
+    private static String nextId(String id) {
+        int separator = id.indexOf('-');
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            long millis = Long.parseLong(id.substring(0, separator));
+            long sequence = Long.parseLong(id.substring(separator + 1));
+            if (millis < 0 || sequence < 0) {
+                return null;
+            }
+            return sequence == Long.MAX_VALUE ? (millis + 1) + "-0" : millis + "-" + (sequence + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 客户端最后收到的事件早于日志有效期，期间的事件可能已随日志整体过期
+     */
+    private boolean isExpired(String lastEventId) {
+        long millis = Long.parseLong(lastEventId.substring(0, lastEventId.indexOf('-')));
+        return millis < System.currentTimeMillis() - ttlSeconds * 1000;
+    }
+
+    /**
+     * 回放结果
+     */
+    @Getter
+    public static class Replay {
+
+        /**
+         * 错过的事件（按事件ID排序）
+         */
+        private final List<SseEvent> events;
+
+        /**
+         * 水位ID：该ID之前的事件都已包含在本次结果中（或在连接之前已送达），读取失败时为null
+         */
+        private final String watermark;
+
+        /**
+         * 是否存在无法回放的缺口
+         */
+        private final boolean gap;
+
+        /**
+         * 客户端在用户事件日志中已收到的最大事件ID，首次连接或无法识别时为空
+         */
+        private final String userCursor;
+
+        /**
+         * 客户端在广播事件日志中已收到的最大事件ID，首次连接或无法识别时为空
+         */
+        private final String broadcastCursor;
+
+        public Replay(List<SseEvent> events, String watermark, boolean gap, String userCursor, String broadcastCursor) {
+            this.events = events;
+            this.watermark = watermark;
+            this.gap = gap;
+            this.userCursor = userCursor;
+            this.broadcastCursor = broadcastCursor;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.ankai.sse;
+
+import com.ankai.utils.LogUtil;
+import io.netty.util.HashedWheelTimer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE心跳与死连接回收
+ * 每个连接在时间轮上挂一个定时检查：连接在心跳间隔内没有写出任何数据时发送注释心跳，
+ * 心跳写出失败（客户端已断开）由SseDispatcher关闭连接；
+ * 超过停滞超时仍没有成功写出任何数据的连接视为死连接，直接关闭并释放异步请求；
+ * 设置了认证检查的连接（WebSocket）在认证失效（Token过期、吊销或版本变更）后关闭。
+ * 时间轮只负责计时，心跳写出、认证检查（可能访问Redis或数据库）和连接关闭都交给SseDispatcher的发送线程执行。
+ *
+ * @author AnKai
+ */
+@Component
+public class SseHeartbeatScheduler {
+
+    private static final Logger logger = LogUtil.getLogger(SseHeartbeatScheduler.class);
+
+    // 心跳间隔（毫秒）
+    @Value("${sse.heartbeat.interval-ms:15000}")
+    private long intervalMs;
+
+    // 停滞超时（毫秒）
+    @Value("${sse.heartbeat.stall-timeout-ms:45000}")
+    private long stallTimeoutMs;
+
+    // 时间轮刻度（毫秒）
+    @Value("${sse.heartbeat.tick-ms:100}")
+    private long tickMs;
+
+    // 时间轮槽数
+    @Value("${sse.heartbeat.ticks-per-wheel:512}")
+    private int ticksPerWheel;
+
+    @Autowired
+    private SseDispatcher sseDispatcher;
+
+    private HashedWheelTimer timer;
+
+    /**
+     * 已登记的连接
+     */
+    private final Set<SseConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder stalled = new LongAdder();
+    private final LongAdder unauthorized = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        }, tickMs, TimeUnit.MILLISECONDS, ticksPerWheel);
+        timer.start();
+        LogUtil.info(logger, "SSE心跳时间轮初始化: interval={}ms, stallTimeout={}ms, tick={}ms, ticksPerWheel={}",
+                intervalMs, stallTimeoutMs, tickMs, ticksPerWheel);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        timer.stop();
+    }
+
+    /**
+     * 登记连接，首次检查时间在一个心跳间隔内随机分布，避免所有连接同时发送心跳
+     *
+     * @param connection 连接
+     */
+    public void register(SseConnection connection) {
+        connections.add(connection);
+        schedule(connection, ThreadLocalRandom.current().nextLong(1, intervalMs + 1));
+    }
+
+    /**
+     * 取消登记（时间轮上已挂的检查在到期时发现连接已关闭后自行结束）
+     *
+     * @param connection 连接
+     */
+    public void unregister(SseConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        int live = 0;
+        int idle = 0;
+        for (SseConnection connection : connections) {
+            if (connection.isClosed()) {
+                continue;
+            }
+            live++;
+            if (now - connection.getLastEventAt() >= intervalMs) {
+                idle++;
+            }
+        }
+        long reapedStalled = stalled.sum();
+        long reapedBroken = sseDispatcher.getHeartbeatFailures();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("intervalMs", intervalMs);
+        stats.put("stallTimeoutMs", stallTimeoutMs);
+        stats.put("live", live);
+        stats.put("idle", idle);
+        stats.put("reaped", reapedStalled + reapedBroken);
+        stats.put("reapedStalled", reapedStalled);
+        stats.put("reapedBroken", reapedBroken);
+        stats.put("heartbeats", heartbeats.sum());
+        stats.put("reapedUnauthorized", unauthorized.sum());
+        stats.put("pendingTimeouts", timer.pendingTimeouts());
+        return stats;
+    }
+
+    private boolean isAuthValid(SseConnection connection) {
+        try {
+            return connection.isAuthValid();
+        } catch (Exception e) {
+            // 检查依赖的缓存暂不可用时保留连接，下次心跳再检查
+            LogUtil.warn(logger, "连接认证检查失败: connectionId={}, error={}", connection.getId(), e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 认证失效时关闭连接（在发送线程上执行）
+     */
+    private void checkAuth(SseConnection connection) {
+        if (connection.isClosed() || isAuthValid(connection)) {
+            return;
+        }
+        unauthorized.increment();
+        connections.remove(connection);
+        LogUtil.info(logger, "连接认证已失效，关闭: userId={}, connectionId={}",
+                connection.getUserId(), connection.getId());
+        connection.close(SseConnection.TOKEN_INVALID);
+    }
+
+    private void schedule(SseConnection connection, long delayMs) {
+        try {
+            timer.newTimeout(timeout -> check(connection), delayMs, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // 时间轮已停止（应用停止中）
+        }
+    }
+
+    private void check(SseConnection connection) {
+        if (connection.isClosed()) {
+            connections.remove(connection);
+            return;
+        }
+
+        if (connection.getAuthCheck() != null) {
+            sseDispatcher.execute(() -> checkAuth(connection));
+        }
+
+        long silentMs = System.currentTimeMillis() - connection.getLastSentAt();
+        if (silentMs >= stallTimeoutMs) {
+            // 连写出心跳都无法完成：网络已断开但写操作没有报错，或发送一直阻塞
+            stalled.increment();
+            connections.remove(connection);
+            LogUtil.warn(logger, "SSE连接停滞，回收: userId={}, connectionId={}, silent={}ms",
+                    connection.getUserId(), connection.getId(), silentMs);
+            sseDispatcher.closeAsync(connection);
+            return;
+        }
+
+        // 允许一个刻度的误差，避免刚好差一点而推迟整整一个间隔
+        if (silentMs + tickMs >= intervalMs) {
+            // 队列中有待发送事件时不追加心跳，事件本身就能探测连接
+            if (connection.getQueue().isEmpty()) {
+                heartbeats.increment();
+                sseDispatcher.dispatch(connection, SseEvent.HEARTBEAT);
+            }
+            schedule(connection, intervalMs);
+        } else {
+            // 期间有数据写出，从最近一次写出开始重新计时
+            schedule(connection, intervalMs - silentMs);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.ankai.sse;
+
+import com.ankai.utils.LogUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE事件发布阶段
+ * 推送方只序列化事件并放入发布队列后立即返回，写入回放日志（获得事件ID）、本地入队和跨节点转发
+ * 都由专用的发布线程完成，Redis变慢时不会阻塞业务请求；
+ * 发布线程每次取出队列中积压的一批事件，回放日志写入与路由查询各只需一次管道请求。
+ * 只有一个发布线程，同一用户的事件按提交顺序获得事件ID并送达。
+ * 发布队列已满时事件只推送给本节点的连接（没有事件ID，无法回放）。
+ *
+ * @author AnKai
+ */
+@Component
+public class SsePublisher {
+
+    private static final Logger logger = LogUtil.getLogger(SsePublisher.class);
+
+    // 发布队列容量
+    @Value("${sse.publish.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 每批发布的最大事件数
+    @Value("${sse.publish.batch-size:256}")
+    private int batchSize;
+
+    private BlockingQueue<SseRouter.SseEnvelope> queue;
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    private Sink sink;
+
+    private SseRouter.LocalDelivery fallback;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.running = true;
+        this.worker = new Thread(this::run, "sse-publish");
+        worker.setDaemon(true);
+        worker.start();
+        LogUtil.info(logger, "SSE发布线程初始化: queueCapacity={}, batchSize={}", queueCapacity, batchSize);
+    }
+
+    /**
+     * 停止时发布队列中剩余的事件
+     */
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        worker.interrupt();
+        List<SseRouter.SseEnvelope> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            publish(remaining);
+        }
+    }
+
+    /**
+     * 设置发布目标
+     *
+     * @param sink     批量发布（写入回放日志、本地入队、跨节点转发）
+     * @param fallback 发布队列已满时的本地投递
+     */
+    public void bind(Sink sink, SseRouter.LocalDelivery fallback) {
+        this.sink = sink;
+        this.fallback = fallback;
+    }
+
+    /**
+     * 提交事件（不阻塞）
+     *
+     * @param envelope 事件，userId为空表示广播
+     */
+    public void submit(SseRouter.SseEnvelope envelope) {
+        submitted.increment();
+        if (!queue.offer(envelope)) {
+            overflow(envelope);
+        }
+    }
+
+    /**
+     * 批量提交事件（不阻塞）
+     */
+    public void submitAll(List<SseRouter.SseEnvelope> envelopes) {
+        envelopes.forEach(this::submit);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("queued", queue.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("published", published.sum());
+        stats.put("batches", batches.sum());
+        stats.put("overflowed", overflowed.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    private void run() {
+        List<SseRouter.SseEnvelope> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            publish(batch);
+            batch.clear();
+        }
+    }
+
+    private void publish(List<SseRouter.SseEnvelope> batch) {
+        try {
+            sink.publish(batch);
+            published.add(batch.size());
+            batches.increment();
+        } catch (Exception e) {
+            failures.add(batch.size());
+            LogUtil.error(logger, "SSE事件发布失败: size={}", batch.size(), e);
+        }
+    }
+
+    /**
+     * 发布队列已满：只推送本节点的连接，不写回放日志也不转发
+     */
+    private void overflow(SseRouter.SseEnvelope envelope) {
+        overflowed.increment();
+        LogUtil.warn(logger, "SSE发布队列已满，事件只推送本节点连接: userId={}, event={}",
+                envelope.getUserId(), envelope.getEvent());
+        if (envelope.getUserId() != null) {
+            fallback.deliverToUser(envelope.getUserId(), null, envelope.getEvent(), envelope.getData());
+        } else {
+            fallback.deliverToAll(null, envelope.getEvent(), envelope.getData());
+        }
+    }
+
+    /**
+     * 批量发布目标
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * 发布一批事件（userId为空的是广播事件）
+         */
+        void publish(List<SseRouter.SseEnvelope> envelopes);
+    }
+}
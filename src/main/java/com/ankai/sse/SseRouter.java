@@ -0,0 +1,356 @@
+package com.ankai.sse;
+
+import com.ankai.utils.LogUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE跨节点路由
+ * 用户建立连接时在Redis中登记 userId → 节点ID，推送时把事件转发到持有连接的节点的专属频道；
+ * 批量推送时一次管道请求查询所有用户的路由，每个目标节点只发布一条包含该节点全部事件的消息；
+ * 广播使用一个集群共享频道，每个节点各自推送给本地连接。
+ * 节点宕机后遗留的路由在转发无人接收时惰性清理，节点定期刷新本地用户的路由以防路由丢失。
+ *
+ * @author AnKai
+ */
+@Component
+public class SseRouter {
+
+    private static final Logger logger = LogUtil.getLogger(SseRouter.class);
+
+    // 用户路由Redis key前缀（SET，成员为节点ID）
+    private static final String ROUTE_KEY_PREFIX = "sse:route:";
+
+    // 节点专属频道前缀
+    private static final String NODE_TOPIC_PREFIX = "sse:node:";
+
+    // 集群广播频道
+    private static final String BROADCAST_TOPIC = "sse:broadcast";
+
+    // 批量转发消息的反序列化类型
+    private static final TypeReference<List<SseEnvelope>> ENVELOPE_LIST = new TypeReference<>() {
+    };
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 节点ID，未配置时启动时随机生成
+    @Value("${sse.node-id:}")
+    private String configuredNodeId;
+
+    // 路由存活时间（秒），节点按更短的周期刷新
+    @Value("${sse.route-ttl:180}")
+    private long routeTtlSeconds;
+
+    private String nodeId;
+
+    private RTopic broadcastTopic;
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder staleRoutes = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        this.nodeId = StringUtils.hasText(configuredNodeId)
+                ? configuredNodeId
+                : UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        this.broadcastTopic = redissonClient.getTopic(BROADCAST_TOPIC, StringCodec.INSTANCE);
+        LogUtil.info(logger, "SSE路由节点ID: {}", nodeId);
+    }
+
+    /**
+     * 订阅本节点专属频道和广播频道
+     *
+     * @param handler 本地投递回调
+     */
+    public void subscribe(LocalDelivery handler) {
+        redissonClient.getTopic(NODE_TOPIC_PREFIX + nodeId, StringCodec.INSTANCE)
+                .addListener(String.class, (channel, message) -> {
+                    for (SseEnvelope envelope : decodeAll(message)) {
+                        received.increment();
+                        handler.deliverToUser(envelope.getUserId(), envelope.getId(), envelope.getEvent(), envelope.getData());
+                    }
+                });
+        broadcastTopic.addListener(String.class, (channel, message) -> {
+            SseEnvelope envelope = decode(message);
+            if (envelope != null) {
+                handler.deliverToAll(envelope.getId(), envelope.getEvent(), envelope.getData());
+            }
+        });
+    }
+
+    /**
+     * 登记用户连接在本节点
+     */
+    public void register(Long userId) {
+        try {
+            String key = ROUTE_KEY_PREFIX + userId;
+            stringRedisTemplate.opsForSet().add(key, nodeId);
+            stringRedisTemplate.expire(key, Duration.ofSeconds(routeTtlSeconds));
+        } catch (Exception e) {
+            LogUtil.error(logger, "登记SSE路由失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 取消用户在本节点的登记（用户在本节点已没有连接）
+     */
+    public void unregister(Long userId) {
+        try {
+            stringRedisTemplate.opsForSet().remove(ROUTE_KEY_PREFIX + userId, nodeId);
+        } catch (Exception e) {
+            LogUtil.error(logger, "取消SSE路由失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 批量刷新本节点用户的路由（流水线执行）
+     */
+    public void refresh(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Long userId : userIds) {
+                    String key = ROUTE_KEY_PREFIX + userId;
+                    stringConnection.sAdd(key, nodeId);
+                    stringConnection.expire(key, routeTtlSeconds);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            LogUtil.error(logger, "刷新SSE路由失败: users={}", userIds.size(), e);
+        }
+    }
+
+    /**
+     * 把一批用户事件转发给持有这些用户连接的其他节点
+     * 路由查询走一次管道请求，每个目标节点只发布一条消息
+     *
+     * @param envelopes 用户事件
+     */
+    public void forwardAll(List<SseEnvelope> envelopes) {
+        if (envelopes.isEmpty()) {
+            return;
+        }
+        List<Object> routes;
+        try {
+            routes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (SseEnvelope envelope : envelopes) {
+                    stringConnection.sMembers(ROUTE_KEY_PREFIX + envelope.getUserId());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            LogUtil.error(logger, "批量查询SSE路由失败: size={}", envelopes.size(), e);
+            return;
+        }
+
+        // 按目标节点分组
+        Map<String, List<SseEnvelope>> byNode = new LinkedHashMap<>();
+        for (int i = 0; i < envelopes.size(); i++) {
+            if (!(routes.get(i) instanceof Collection<?> nodes)) {
+                continue;
+            }
+            for (Object node : nodes) {
+                if (!nodeId.equals(node)) {
+                    byNode.computeIfAbsent((String) node, key -> new ArrayList<>()).add(envelopes.get(i));
+                }
+            }
+        }
+
+        byNode.forEach((node, batch) -> {
+            String message = encode(batch);
+            if (message == null) {
+                return;
+            }
+            try {
+                long receivers = redissonClient.getTopic(NODE_TOPIC_PREFIX + node, StringCodec.INSTANCE).publish(message);
+                forwarded.add(batch.size());
+                if (receivers == 0) {
+                    // 目标节点已下线，清理遗留路由
+                    staleRoutes.add(batch.size());
+                    removeRoutes(node, batch);
+                    LogUtil.info(logger, "清理失效SSE路由: node={}, users={}", node, batch.size());
+                }
+            } catch (Exception e) {
+                LogUtil.error(logger, "批量转发SSE事件失败: node={}, size={}", node, batch.size(), e);
+            }
+        });
+    }
+
+    /**
+     * 集群广播
+     *
+     * @return 是否已发布（失败时调用方应只推送本地连接）
+     */
+    public boolean broadcast(String id, String event, String data) {
+        String message = encode(new SseEnvelope(null, id, event, data));
+        if (message == null) {
+            return false;
+        }
+        try {
+            broadcastTopic.publish(message);
+            return true;
+        } catch (Exception e) {
+            LogUtil.error(logger, "发布SSE广播失败: event={}", event, e);
+            return false;
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("forwarded", forwarded.sum());
+        stats.put("received", received.sum());
+        stats.put("staleRoutes", staleRoutes.sum());
+        return stats;
+    }
+
+    /**
+     * 查询用户在集群中是否有连接
+     */
+    public boolean hasRoute(Long userId) {
+        try {
+            Long size = stringRedisTemplate.opsForSet().size(ROUTE_KEY_PREFIX + userId);
+            return size != null && size > 0;
+        } catch (Exception e) {
+            LogUtil.error(logger, "查询SSE路由失败: userId={}", userId, e);
+            return false;
+        }
+    }
+
+    private void removeRoutes(String node, List<SseEnvelope> envelopes) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (SseEnvelope envelope : envelopes) {
+                    stringConnection.sRem(ROUTE_KEY_PREFIX + envelope.getUserId(), node);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            LogUtil.error(logger, "清理失效SSE路由失败: node={}", node, e);
+        }
+    }
+
+    private String encode(Object envelope) {
+        try {
+            return objectMapper.writeValueAsString(envelope);
+        } catch (Exception e) {
+            LogUtil.error(logger, "SSE转发消息序列化失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 解码节点专属频道的消息：单个事件或批量转发的事件数组
+     */
+    private List<SseEnvelope> decodeAll(String message) {
+        if (!message.startsWith("[")) {
+            SseEnvelope envelope = decode(message);
+            return envelope != null ? List.of(envelope) : List.of();
+        }
+        try {
+            return objectMapper.readValue(message, ENVELOPE_LIST);
+        } catch (Exception e) {
+            LogUtil.warn(logger, "无法识别的SSE转发消息: {}", message);
+            return List.of();
+        }
+    }
+
+    private SseEnvelope decode(String message) {
+        try {
+            return objectMapper.readValue(message, SseEnvelope.class);
+        } catch (Exception e) {
+            LogUtil.warn(logger, "无法识别的SSE转发消息: {}", message);
+            return null;
+        }
+    }
+
+    /**
+     * 本地投递回调
+     */
+    public interface LocalDelivery {
+
+        /**
+         * 推送给本节点上该用户的连接
+         */
+        void deliverToUser(Long userId, String id, String event, String data);
+
+        /**
+         * 推送给本节点上的所有连接
+         */
+        void deliverToAll(String id, String event, String data);
+    }
+
+    /**
+     * 节点间转发的事件
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SseEnvelope {
+
+        /**
+         * 目标用户ID（广播时为空）
+         */
+        private Long userId;
+
+        /**
+         * 事件ID（可以为空）
+         */
+        private String id;
+
+        /**
+         * 事件类型
+         */
+        private String event;
+
+        /**
+         * 已序列化的事件数据
+         */
+        private String data;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ankai.sse;
+
+import com.ankai.service.SseService;
+import com.ankai.utils.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * 应用停止时排空SSE连接
+ * 滚动发布时先停止接受新连接，再在配置的时间窗口内分批断开已有连接；
+ * 每个连接先收到带随机retry间隔的reconnect事件，客户端的重连因此均匀分散到存活节点上，
+ * 而不是在同一秒内全部涌向其他节点。
+ * 在Web服务器优雅停机之前执行，此时连接仍可正常写出。
+ *
+ * @author AnKai
+ */
+@Component
+public class SseShutdownDrainer implements SmartLifecycle {
+
+    private static final Logger logger = LogUtil.getLogger(SseShutdownDrainer.class);
+
+    // 排空时间窗口（毫秒），需小于spring.lifecycle.timeout-per-shutdown-phase（默认30秒）
+    @Value("${sse.shutdown.drain-window-ms:10000}")
+    private long drainWindowMs;
+
+    // 批次间隔（毫秒）
+    @Value("${sse.shutdown.batch-interval-ms:500}")
+    private long batchIntervalMs;
+
+    @Autowired
+    private SseAdmission sseAdmission;
+
+    @Autowired
+    private SseService sseService;
+
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        drain();
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        running = false;
+        Thread thread = new Thread(() -> {
+            try {
+                drain();
+            } finally {
+                callback.run();
+            }
+        }, "sse-shutdown-drain");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 先于Web服务器优雅停机执行（阶段越大越先停止）
+     */
+    @Override
+    public int getPhase() {
+        return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE + 1;
+    }
+
+    private void drain() {
+        sseAdmission.shutdown();
+        int total = sseService.getConnectionCount();
+        if (total == 0) {
+            return;
+        }
+
+        int batches = (int) Math.max(1, drainWindowMs / batchIntervalMs);
+        int batchSize = (total + batches - 1) / batches;
+        LogUtil.info(logger, "SSE停机排空开始: 连接数={}, 批次={}, 每批={}, 窗口={}ms",
+                total, batches, batchSize, drainWindowMs);
+
+        long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < batches && sseService.getConnectionCount() > 0; i++) {
+                sseService.shedConnections(batchSize);
+                Thread.sleep(batchIntervalMs);
+            }
+            // 兜底：窗口结束后仍未断开的连接（如排空期间新增的）一次性断开，并等待reconnect事件写出
+            if (sseService.shedConnections(Integer.MAX_VALUE) > 0) {
+                Thread.sleep(batchIntervalMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LogUtil.info(logger, "SSE停机排空结束: 耗时={}ms, 剩余连接数={}",
+                System.currentTimeMillis() - start, sseService.getConnectionCount());
+    }
+}
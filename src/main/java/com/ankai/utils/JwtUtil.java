@@ -1,16 +1,27 @@
 package com.ankai.utils;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.crypto.digest.DigestUtil;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * JWT工具类
@@ -27,29 +38,119 @@ public class JwtUtil {
     @Value("${jwt.secret:ankai-backend-jwt-secret-key-2024}")
     private String secret;
 
-    // JWT过期时间（默认2小时）
-    @Value("${jwt.expiration:7200}")
+    // 访问Token过期时间（默认15分钟），长期会话由刷新令牌维持
+    @Value("${jwt.expiration:900}")
     private Long expiration;
 
-    // 记住我过期时间（默认7天）
-    @Value("${jwt.expiration-remember:604800}")
-    private Long expirationRemember;
+    // 是否签发自包含Token（携带角色、权限指纹和版本号，认证时无需查询数据库）
+    @Value("${jwt.self-contained.enabled:false}")
+    private boolean selfContained;
+
+    // 已验证Token缓存容量（0表示关闭缓存）
+    @Value("${jwt.verify-cache.max-size:10000}")
+    private int verifyCacheMaxSize;
+
+    /**
+     * 签名密钥，启动时派生一次
+     */
+    private SecretKey signingKey;
+
+    /**
+     * Token解析器，线程安全，启动时构建一次
+     */
+    private JwtParser jwtParser;
+
+    /**
+     * 已验证Token缓存
+     * Key: Token的SHA-256摘要, Value: 验证结果；每个条目的存活时间不超过Token自身的exp
+     */
+    private LRUCache<String, VerifiedToken> verifyCache;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * 初始化签名密钥和解析器，避免每次解析都重新派生密钥
+     */
+    @PostConstruct
+    public void init() {
+        this.signingKey = buildSigningKey();
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        if (verifyCacheMaxSize > 0) {
+            this.verifyCache = CacheUtil.newLRUCache(verifyCacheMaxSize);
+        }
+    }
 
     /**
      * 生成JWT Token
      *
-     * @param userId     用户ID
-     * @param username   用户名
-     * @param rememberMe 是否记住我
+     * @param userId   用户ID
+     * @param username 用户名
+     * @param familyId 刷新令牌族ID，登出时据此吊销刷新令牌，可为null
      * @return JWT Token
      */
-    public String generateToken(Long userId, String username, boolean rememberMe) {
+    public String generateToken(Long userId, String username, String familyId) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
         claims.put("username", username);
+        if (familyId != null) {
+            claims.put("fid", familyId);
+        }
+        return createToken(claims, username, expiration);
+    }
 
-        long expireTime = rememberMe ? expirationRemember : expiration;
-        return createToken(claims, username, expireTime);
+    /**
+     * 生成自包含JWT Token
+     * 额外携带角色编码、权限指纹和用户Token版本号
+     *
+     * @param userId                用户ID
+     * @param username              用户名
+     * @param familyId              刷新令牌族ID，可为null
+     * @param roleCodes             角色编码
+     * @param permissionFingerprint 权限指纹
+     * @param tokenVersion          用户Token版本号
+     * @return JWT Token
+     */
+    public String generateToken(Long userId, String username, String familyId,
+                                List<String> roleCodes, String permissionFingerprint, long tokenVersion) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("userId", userId);
+        claims.put("username", username);
+        if (familyId != null) {
+            claims.put("fid", familyId);
+        }
+        claims.put("roles", roleCodes);
+        claims.put("pfp", permissionFingerprint);
+        claims.put("ver", tokenVersion);
+        return createToken(claims, username, expiration);
+    }
+
+    /**
+     * 获取访问Token有效期（秒）
+     */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * 是否启用自包含Token模式
+     */
+    public boolean isSelfContained() {
+        return selfContained;
+    }
+
+    /**
+     * 计算权限指纹（排序后权限码的SHA-256摘要前16位）
+     *
+     * @param permissionCodes 权限码
+     * @return 权限指纹
+     */
+    public static String permissionFingerprint(List<String> permissionCodes) {
+        List<String> sorted = new ArrayList<>(permissionCodes);
+        Collections.sort(sorted);
+        return DigestUtil.sha256Hex(String.join(",", sorted)).substring(0, 16);
     }
 
     /**
@@ -67,12 +168,91 @@ public class JwtUtil {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
+                .setId(UUID.randomUUID().toString().replace("-", ""))
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
+    /**
+     * 解析并验证Token（只解析一次）
+     * 签名和过期时间均在解析时校验，返回的对象可在一次请求内重复使用
+     *
+     * @param token JWT Token
+     * @return 验证通过的Token信息，无效时返回null
+     */
+    public VerifiedToken verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        if (verifyCache == null) {
+            return parseAndVerify(token);
+        }
+
+        String cacheKey = DigestUtil.sha256Hex(token);
+        // 不刷新访问时间，保证条目在put时设定的时间点过期
+        VerifiedToken cached = verifyCache.get(cacheKey, false);
+        if (cached != null && cached.getExpiration().getTime() > System.currentTimeMillis()) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+
+        VerifiedToken verifiedToken = parseAndVerify(token);
+        if (verifiedToken != null) {
+            long ttl = verifiedToken.getExpiration().getTime() - System.currentTimeMillis();
+            if (ttl > 0) {
+                verifyCache.put(cacheKey, verifiedToken, ttl);
+            }
+        }
+        return verifiedToken;
+    }
+
+    /**
+     * 从已验证Token缓存中移除（登出时调用）
+     *
+     * @param token JWT Token
+     */
+    public void evictVerified(String token) {
+        if (verifyCache != null && token != null) {
+            verifyCache.remove(DigestUtil.sha256Hex(token));
+        }
+    }
+
+    /**
+     * 获取已验证Token缓存统计
+     *
+     * @return 命中数、未命中数、当前条目数等
+     */
+    public Map<String, Object> getVerifyCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = cacheHits.sum();
+        long misses = cacheMisses.sum();
+        stats.put("enabled", verifyCache != null);
+        stats.put("maxSize", verifyCacheMaxSize);
+        stats.put("size", verifyCache != null ? verifyCache.size() : 0);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses == 0 ? 0D : (double) hits / (hits + misses));
+        return stats;
+    }
+
+    /**
+     * 完整解析并校验签名
+     */
+    private VerifiedToken parseAndVerify(String token) {
+        try {
+            return new VerifiedToken(getClaimsFromToken(token), token);
+        } catch (ExpiredJwtException e) {
+            LogUtil.debug(logger, "Token已过期: {}", e.getMessage());
+            return null;
+        } catch (Exception e) {
+            LogUtil.warn(logger, "Token验证失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * 从Token中获取用户名
      *
@@ -129,13 +309,8 @@ public class JwtUtil {
      * @return 是否有效
      */
     public boolean validateToken(String token, String username) {
-        try {
-            String tokenUsername = getUsernameFromToken(token);
-            return (username.equals(tokenUsername) && !isTokenExpired(token));
-        } catch (Exception e) {
-            LogUtil.error(logger, "验证Token失败", e);
-            return false;
-        }
+        VerifiedToken verifiedToken = verify(token);
+        return verifiedToken != null && username.equals(verifiedToken.getUsername());
     }
 
     /**
@@ -145,24 +320,7 @@ public class JwtUtil {
      * @return 是否有效
      */
     public boolean validateToken(String token) {
-        try {
-            getClaimsFromToken(token);
-            return !isTokenExpired(token);
-        } catch (Exception e) {
-            LogUtil.error(logger, "验证Token失败", e);
-            return false;
-        }
-    }
-
-    /**
-     * 检查Token是否过期
-     *
-     * @param token JWT Token
-     * @return 是否过期
-     */
-    private boolean isTokenExpired(String token) {
-        Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
+        return verify(token) != null;
     }
 
     /**
@@ -172,19 +330,15 @@ public class JwtUtil {
      * @return Claims
      */
     private Claims getClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return jwtParser.parseClaimsJws(token).getBody();
     }
 
     /**
-     * 获取签名密钥
+     * 派生签名密钥
      *
      * @return 签名密钥
      */
-    private SecretKey getSigningKey() {
+    private SecretKey buildSigningKey() {
         try {
             // 确保密钥长度至少为64字节（512位）
             byte[] keyBytes = secret.getBytes("UTF-8");
@@ -219,21 +373,69 @@ public class JwtUtil {
     }
 
     /**
-     * 刷新Token
-     *
-     * @param token 原Token
-     * @return 新Token
+     * 已验证的Token信息
      */
-    public String refreshToken(String token) {
-        try {
-            Claims claims = getClaimsFromToken(token);
-            Long userId = claims.get("userId", Long.class);
-            String username = claims.getSubject();
+    @Getter
+    public static class VerifiedToken {
 
-            return generateToken(userId, username, false);
-        } catch (Exception e) {
-            LogUtil.error(logger, "刷新Token失败", e);
-            return null;
+        /**
+         * 用户ID
+         */
+        private final Long userId;
+
+        /**
+         * 用户名
+         */
+        private final String username;
+
+        /**
+         * 过期时间
+         */
+        private final Date expiration;
+
+        /**
+         * Token唯一标识（早期签发的Token没有jti，使用Token摘要代替）
+         */
+        private final String jti;
+
+        /**
+         * 刷新令牌族ID（通过登录或刷新签发的Token才有）
+         */
+        private final String familyId;
+
+        /**
+         * 角色编码（仅自包含Token）
+         */
+        private final List<String> roles;
+
+        /**
+         * 权限指纹（仅自包含Token）
+         */
+        private final String permissionFingerprint;
+
+        /**
+         * 用户Token版本号（仅自包含Token）
+         */
+        private final Long tokenVersion;
+
+        @SuppressWarnings("unchecked")
+        private VerifiedToken(Claims claims, String token) {
+            this.userId = claims.get("userId", Long.class);
+            this.username = claims.getSubject();
+            this.expiration = claims.getExpiration();
+            this.jti = claims.getId() != null ? claims.getId() : DigestUtil.sha256Hex(token);
+            this.familyId = claims.get("fid", String.class);
+            List<String> roleClaim = claims.get("roles", List.class);
+            this.roles = roleClaim != null ? Collections.unmodifiableList(roleClaim) : null;
+            this.permissionFingerprint = claims.get("pfp", String.class);
+            this.tokenVersion = claims.get("ver", Long.class);
+        }
+
+        /**
+         * 是否为自包含Token
+         */
+        public boolean isSelfContained() {
+            return roles != null && tokenVersion != null;
         }
     }
 }
@@ -0,0 +1,241 @@
+package com.ankai.websocket;
+
+import com.ankai.config.RateLimitProperties;
+import com.ankai.dto.WebSocketCommand;
+import com.ankai.entity.User;
+import com.ankai.exception.BusinessException;
+import com.ankai.exception.ServiceUnavailableException;
+import com.ankai.exception.TooManyRequestsException;
+import com.ankai.security.CustomUserDetails;
+import com.ankai.security.RedisRateLimiter;
+import com.ankai.security.TokenRevocationService;
+import com.ankai.security.TokenVersionService;
+import com.ankai.security.UserDetailsServiceImpl;
+import com.ankai.service.AnnouncementService;
+import com.ankai.service.MessageService;
+import com.ankai.service.SseService;
+import com.ankai.service.UserService;
+import com.ankai.sse.SseConnection;
+import com.ankai.utils.JwtUtil;
+import com.ankai.utils.LogUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * WebSocket事件处理器
+ * 服务端到客户端：与SSE相同的事件（通过SseService推送，格式为{"id","event","data"}）；
+ * 客户端到服务端：发送消息、标记聊天已读、标记公告已读，每条命令以ack事件应答
+ *
+ * @author AnKai
+ */
+@Component
+public class EventWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LogUtil.getLogger(EventWebSocketHandler.class);
+
+    /**
+     * 会话属性：连接ID
+     */
+    private static final String CONNECTION_ID_ATTRIBUTE = "ankai.connectionId";
+
+    @Autowired
+    private SseService sseService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private AnnouncementService announcementService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    private RedisRateLimiter rateLimiter;
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 单次发送的最长阻塞时间（毫秒），超过后关闭会话
+    @Value("${websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    // 慢客户端允许积压的发送缓冲（字节），超过后关闭会话
+    @Value("${websocket.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        JwtUtil.VerifiedToken verifiedToken = getVerifiedToken(session);
+        String lastEventId = (String) session.getAttributes().get(WebSocketAuthInterceptor.LAST_EVENT_ID_ATTRIBUTE);
+        // 心跳、推送与应答可能来自不同线程，装饰后的会话保证发送串行
+        WebSocketSession concurrentSession = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimit);
+        try {
+            // 连接只接收推送时不会再经过命令处理，由心跳检查定期确认Token仍然有效
+            String connectionId = sseService.createWebSocketConnection(verifiedToken.getUserId(), concurrentSession,
+                    lastEventId, () -> isTokenValid(verifiedToken));
+            session.getAttributes().put(CONNECTION_ID_ATTRIBUTE, connectionId);
+        } catch (TooManyRequestsException e) {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("too many connections"));
+        } catch (ServiceUnavailableException e) {
+            session.close(CloseStatus.SERVICE_OVERLOAD.withReason("retry after " + e.getRetryAfterSeconds() + "s"));
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        JwtUtil.VerifiedToken verifiedToken = getVerifiedToken(session);
+        // 握手后不再逐条验签，只检查过期、吊销与版本号
+        if (!isTokenValid(verifiedToken)) {
+            LogUtil.info(logger, "WebSocket Token已失效，关闭连接: userId={}", verifiedToken.getUserId());
+            session.close(SseConnection.TOKEN_INVALID);
+            return;
+        }
+
+        Long userId = verifiedToken.getUserId();
+        String connectionId = (String) session.getAttributes().get(CONNECTION_ID_ATTRIBUTE);
+        if (connectionId == null) {
+            return;
+        }
+
+        WebSocketCommand command;
+        try {
+            command = objectMapper.readValue(message.getPayload(), WebSocketCommand.class);
+        } catch (IOException e) {
+            ack(userId, connectionId, null, false, "命令格式错误");
+            return;
+        }
+
+        try {
+            handleCommand(verifiedToken, command);
+            ack(userId, connectionId, command.getRequestId(), true, "操作成功");
+        } catch (BusinessException e) {
+            ack(userId, connectionId, command.getRequestId(), false, e.getMessage());
+        } catch (Exception e) {
+            LogUtil.error(logger, "WebSocket命令处理失败: userId={}, type={}", userId, command.getType(), e);
+            ack(userId, connectionId, command.getRequestId(), false, "操作失败");
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        LogUtil.warn(logger, "WebSocket传输错误: sessionId={}, error={}", session.getId(), exception.getMessage());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        String connectionId = (String) session.getAttributes().get(CONNECTION_ID_ATTRIBUTE);
+        if (connectionId != null) {
+            sseService.removeConnection(getVerifiedToken(session).getUserId(), connectionId);
+        }
+    }
+
+    private void handleCommand(JwtUtil.VerifiedToken verifiedToken, WebSocketCommand command) {
+        Long userId = verifiedToken.getUserId();
+        String type = command.getType() != null ? command.getType() : "";
+        switch (type) {
+            case "send_message" -> {
+                if (command.getReceiverId() == null || !StringUtils.hasText(command.getContent())) {
+                    throw new BusinessException(400, "接收者ID和消息内容不能为空");
+                }
+                // 与 SendMessageRequest 相同的长度限制
+                if (command.getContent().length() > MessageService.MAX_CONTENT_LENGTH) {
+                    throw new BusinessException(400, "消息内容不能超过" + MessageService.MAX_CONTENT_LENGTH + "个字符");
+                }
+                // 与HTTP接口 /message/send 共用限流规则
+                checkRateLimit("/message/send", userId);
+                User receiver = userService.getById(command.getReceiverId());
+                if (receiver == null) {
+                    throw new BusinessException(404, "接收者不存在");
+                }
+                if (messageService.sendMessage(userId, verifiedToken.getUsername(),
+                        receiver.getId(), receiver.getUsername(), command.getContent()) == null) {
+                    throw new BusinessException("发送失败");
+                }
+            }
+            case "mark_chat_read" -> {
+                if (command.getOtherUserId() == null) {
+                    throw new BusinessException(400, "聊天对象ID不能为空");
+                }
+                messageService.markChatAsRead(userId, command.getOtherUserId());
+            }
+            case "mark_announcement_read" -> {
+                if (command.getAnnouncementId() == null) {
+                    throw new BusinessException(400, "公告ID不能为空");
+                }
+                announcementService.markAsRead(command.getAnnouncementId(), userId);
+            }
+            default -> throw new BusinessException(400, "不支持的命令: " + type);
+        }
+    }
+
+    private void checkRateLimit(String path, Long userId) {
+        RateLimitProperties.Rule rule = rateLimitProperties.matchRule(path);
+        if (!rateLimitProperties.isEnabled() || rule == null) {
+            return;
+        }
+        long waitMillis = rateLimiter.tryAcquire(rule, "u" + userId);
+        if (waitMillis > 0) {
+            throw new TooManyRequestsException("请求过于频繁，请稍后重试", Math.max(1, (waitMillis + 999) / 1000));
+        }
+    }
+
+    private void ack(Long userId, String connectionId, String requestId, boolean success, String message) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("requestId", requestId);
+        data.put("success", success);
+        data.put("message", message);
+        sseService.sendToConnection(userId, connectionId, "ack", data);
+    }
+
+    /**
+     * Token是否仍然有效：未过期、未吊销；携带版本号的Token版本号未变更（角色或密码变更后递增），
+     * 不携带版本号的Token检查用户快照（与HTTP请求相同的进程内缓存），用户被禁用或删除后失效
+     */
+    private boolean isTokenValid(JwtUtil.VerifiedToken verifiedToken) {
+        if (verifiedToken.getExpiration().getTime() <= System.currentTimeMillis()
+                || tokenRevocationService.isRevoked(verifiedToken.getJti())) {
+            return false;
+        }
+        Long tokenVersion = verifiedToken.getTokenVersion();
+        if (tokenVersion != null) {
+            return tokenVersion == tokenVersionService.getVersion(verifiedToken.getUserId());
+        }
+        try {
+            CustomUserDetails userDetails = userDetailsService.loadCachedUserByUsername(verifiedToken.getUsername());
+            return userDetails.isEnabled() && verifiedToken.getUserId().equals(userDetails.getUserId());
+        } catch (UsernameNotFoundException e) {
+            return false;
+        }
+    }
+
+    private JwtUtil.VerifiedToken getVerifiedToken(WebSocketSession session) {
+        return (JwtUtil.VerifiedToken) session.getAttributes().get(WebSocketAuthInterceptor.VERIFIED_TOKEN_ATTRIBUTE);
+    }
+}
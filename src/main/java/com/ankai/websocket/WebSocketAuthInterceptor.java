@@ -0,0 +1,81 @@
+package com.ankai.websocket;
+
+import com.ankai.security.TokenRevocationService;
+import com.ankai.utils.JwtUtil;
+import com.ankai.utils.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * WebSocket握手认证拦截器
+ * 仅在握手时验证一次Token，之后的消息复用会话属性中的用户身份；
+ * 浏览器WebSocket无法设置请求头，因此同时支持token查询参数
+ *
+ * @author AnKai
+ */
+@Component
+public class WebSocketAuthInterceptor implements HandshakeInterceptor {
+
+    private static final Logger logger = LogUtil.getLogger(WebSocketAuthInterceptor.class);
+
+    /**
+     * 会话属性：已验证的Token
+     */
+    public static final String VERIFIED_TOKEN_ATTRIBUTE = "ankai.verifiedToken";
+
+    /**
+     * 会话属性：客户端最后收到的事件ID
+     */
+    public static final String LAST_EVENT_ID_ATTRIBUTE = "ankai.lastEventId";
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        Map<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().toSingleValueMap();
+
+        String token = params.get("token");
+        if (!StringUtils.hasText(token)) {
+            String bearerToken = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+                token = bearerToken.substring(7);
+            }
+        }
+
+        JwtUtil.VerifiedToken verifiedToken = StringUtils.hasText(token) ? jwtUtil.verify(token) : null;
+        if (verifiedToken == null || verifiedToken.getUserId() == null
+                || tokenRevocationService.isRevoked(verifiedToken.getJti())) {
+            LogUtil.warn(logger, "WebSocket握手认证失败: remote={}", request.getRemoteAddress());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        attributes.put(VERIFIED_TOKEN_ATTRIBUTE, verifiedToken);
+        String lastEventId = params.get("lastEventId");
+        if (StringUtils.hasText(lastEventId)) {
+            attributes.put(LAST_EVENT_ID_ATTRIBUTE, lastEventId);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Exception exception) {
+    }
+}
@@ -325,9 +325,27 @@ CREATE TABLE `sys_message` (
   KEY `idx_receiver_id` (`receiver_id`),
   KEY `idx_is_read` (`is_read`),
   KEY `idx_create_time` (`create_time`),
-  KEY `idx_sender_receiver` (`sender_id`, `receiver_id`)
+  KEY `idx_sender_receiver_time` (`sender_id`, `receiver_id`, `create_time`, `id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='站内信/聊天消息表';
 
+-- ==================== 聊天会话表 ====================
+DROP TABLE IF EXISTS `sys_conversation`;
+CREATE TABLE `sys_conversation` (
+  `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `owner_id` bigint NOT NULL COMMENT '会话所属用户ID',
+  `peer_id` bigint NOT NULL COMMENT '对方用户ID',
+  `peer_name` varchar(50) DEFAULT NULL COMMENT '对方用户名（对方用户不存在时展示）',
+  `last_message_id` bigint NOT NULL DEFAULT '0' COMMENT '最后一条消息ID',
+  `last_message` varchar(200) DEFAULT NULL COMMENT '最后一条消息内容（截断）',
+  `last_time` datetime NOT NULL COMMENT '最后消息时间',
+  `unread_count` int NOT NULL DEFAULT '0' COMMENT '所属用户未读的消息数',
+  `create_time` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_owner_peer` (`owner_id`, `peer_id`),
+  KEY `idx_owner_last_time` (`owner_id`, `last_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='聊天会话表（每对用户每一方一行，随消息收发维护）';
+
 -- ==================== 待办事项表 ====================
 DROP TABLE IF EXISTS `sys_todo`;
 CREATE TABLE `sys_todo` (
@@ -0,0 +1,43 @@
+-- ==================== 聊天会话表更新脚本 ====================
+-- 执行此脚本以添加聊天会话表，并由已有的站内信生成会话数据
+-- 会话列表接口改为直接分页读取该表，不再加载用户的全部消息
+
+-- ==================== 聊天会话表 ====================
+DROP TABLE IF EXISTS `sys_conversation`;
+CREATE TABLE `sys_conversation` (
+  `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `owner_id` bigint NOT NULL COMMENT '会话所属用户ID',
+  `peer_id` bigint NOT NULL COMMENT '对方用户ID',
+  `peer_name` varchar(50) DEFAULT NULL COMMENT '对方用户名（对方用户不存在时展示）',
+  `last_message_id` bigint NOT NULL DEFAULT '0' COMMENT '最后一条消息ID',
+  `last_message` varchar(200) DEFAULT NULL COMMENT '最后一条消息内容（截断）',
+  `last_time` datetime NOT NULL COMMENT '最后消息时间',
+  `unread_count` int NOT NULL DEFAULT '0' COMMENT '所属用户未读的消息数',
+  `create_time` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_owner_peer` (`owner_id`, `peer_id`),
+  KEY `idx_owner_last_time` (`owner_id`, `last_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='聊天会话表（每对用户每一方一行，随消息收发维护）';
+
+-- ==================== 由已有消息生成会话 ====================
+-- 每个用户与每个对方取最新一条未删除的消息，未读数只统计所属用户收到的未读消息
+INSERT INTO `sys_conversation` (`owner_id`, `peer_id`, `peer_name`, `last_message_id`, `last_message`, `last_time`, `unread_count`)
+SELECT p.owner_id,
+       p.peer_id,
+       IF(m.sender_id = p.peer_id, m.sender_name, m.receiver_name),
+       m.id,
+       LEFT(m.content, 200),
+       m.create_time,
+       (SELECT COUNT(*) FROM `sys_message` u
+        WHERE u.receiver_id = p.owner_id AND u.sender_id = p.peer_id AND u.is_read = 0 AND u.deleted = 0)
+FROM (
+    SELECT owner_id, peer_id, MAX(id) AS last_id
+    FROM (
+        SELECT sender_id AS owner_id, receiver_id AS peer_id, id FROM `sys_message` WHERE deleted = 0
+        UNION ALL
+        SELECT receiver_id AS owner_id, sender_id AS peer_id, id FROM `sys_message` WHERE deleted = 0
+    ) t
+    GROUP BY owner_id, peer_id
+) p
+JOIN `sys_message` m ON m.id = p.last_id;
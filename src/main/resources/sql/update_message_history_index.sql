@@ -0,0 +1,8 @@
+-- ==================== 聊天记录索引更新脚本 ====================
+-- 执行此脚本以支持聊天记录游标分页（GET /message/chat/{otherUserId}/history）
+-- 两个方向的消息分别在 (sender_id, receiver_id, create_time, id) 上做范围读取，
+-- 原 (sender_id, receiver_id) 索引是新索引的前缀，一并替换
+
+ALTER TABLE `sys_message`
+  DROP INDEX `idx_sender_receiver`,
+  ADD INDEX `idx_sender_receiver_time` (`sender_id`, `receiver_id`, `create_time`, `id`);
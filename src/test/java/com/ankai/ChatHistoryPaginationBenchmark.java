@@ -0,0 +1,199 @@
+package com.ankai;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聊天记录分页性能对比
+ * 在H2（MySQL兼容模式）中生成一段百万条消息的对话，对比不同翻页深度下
+ * OFFSET分页（OR条件 + COUNT）与游标分页（两个方向UNION ALL + 索引范围读取）的单页耗时
+ * 直接运行main方法即可，无需启动Spring容器和MySQL
+ */
+public class ChatHistoryPaginationBenchmark {
+
+    private static final long USER_A = 1L;
+    private static final long USER_B = 2L;
+
+    private static final int CONVERSATION_MESSAGES = 1_000_000;
+    private static final int OTHER_MESSAGES = 200_000;
+    private static final int PAGE_SIZE = 20;
+    private static final int[] PAGE_DEPTHS = {1, 100, 1_000, 10_000, 49_000};
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 10;
+
+    /**
+     * 原 getChatHistory 的查询（MyBatis-Plus 分页插件生成的COUNT与LIMIT OFFSET），
+     * 排序补充id保证结果确定，便于与游标分页比对
+     */
+    private static final String OFFSET_COUNT_SQL = "SELECT COUNT(*) FROM sys_message WHERE deleted = 0 AND "
+            + "((sender_id = ? AND receiver_id = ?) OR (sender_id = ? AND receiver_id = ?))";
+    private static final String OFFSET_PAGE_SQL = "SELECT * FROM sys_message WHERE deleted = 0 AND "
+            + "((sender_id = ? AND receiver_id = ?) OR (sender_id = ? AND receiver_id = ?)) "
+            + "ORDER BY create_time DESC, id DESC LIMIT ? OFFSET ?";
+
+    /**
+     * 与 MessageMapper.selectChatHistoryBefore 相同的游标查询
+     * H2只有ORDER BY与索引列（含方向）完全一致时才按索引顺序读取，且不能反向扫描索引；
+     * MySQL会忽略等值条件列并反向扫描升序索引。这里补充等值列并配合降序索引，使H2的执行计划与MySQL一致
+     */
+    private static final String KEYSET_BRANCH = "(SELECT * FROM sys_message WHERE sender_id = ? AND receiver_id = ? AND deleted = 0"
+            + " AND create_time <= ? AND (create_time < ? OR id < ?)"
+            + " ORDER BY sender_id, receiver_id, create_time DESC, id DESC LIMIT ?)";
+    private static final String KEYSET_SQL = KEYSET_BRANCH + " UNION ALL " + KEYSET_BRANCH
+            + " ORDER BY create_time DESC, id DESC LIMIT ?";
+
+    public static void main(String[] args) throws SQLException {
+        System.out.println("========== 聊天记录分页性能对比 ==========\n");
+
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:chat_history;MODE=MySQL;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE")) {
+            prepare(connection);
+
+            LocalDateTime latest = LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(CONVERSATION_MESSAGES);
+            for (int depth : PAGE_DEPTHS) {
+                // 游标取上一页最后一条（通过OFFSET查询得到，不计入耗时）
+                Object[] cursor = depth == 1 ? new Object[]{Timestamp.valueOf(latest.plusDays(1)), Long.MAX_VALUE}
+                        : cursorAt(connection, (depth - 1) * PAGE_SIZE - 1);
+
+                List<Long> offsetIds = offsetPage(connection, depth);
+                List<Long> keysetIds = keysetPage(connection, cursor);
+                if (!offsetIds.equals(keysetIds)) {
+                    throw new IllegalStateException("两种分页结果不一致: depth=" + depth);
+                }
+
+                double offsetMs = measure(() -> offsetPage(connection, depth));
+                double keysetMs = measure(() -> keysetPage(connection, cursor));
+                System.out.printf("第%6d页: OFFSET分页 %8.2f ms, 游标分页 %6.3f ms%n", depth, offsetMs, keysetMs);
+            }
+        }
+
+        System.out.println("\n========== 测试完成 ==========");
+    }
+
+    private static void prepare(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE sys_message ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, sender_id BIGINT NOT NULL, receiver_id BIGINT NOT NULL, "
+                    + "content VARCHAR(200) NOT NULL, is_read TINYINT DEFAULT 0, create_time DATETIME, deleted TINYINT DEFAULT 0)");
+            statement.execute("CREATE INDEX idx_receiver_id ON sys_message (receiver_id)");
+            // 降序索引仅为H2所需，见KEYSET_BRANCH
+            statement.execute("CREATE INDEX idx_sender_receiver_time ON sys_message (sender_id, receiver_id, create_time DESC, id DESC)");
+        }
+
+        long start = System.nanoTime();
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO sys_message (sender_id, receiver_id, content, create_time) VALUES (?, ?, ?, ?)")) {
+            int otherEvery = CONVERSATION_MESSAGES / OTHER_MESSAGES;
+            for (int i = 0; i < CONVERSATION_MESSAGES; i++) {
+                // 两人穿插发送，每两条消息同一秒（验证同一时间的消息按ID排序）
+                boolean fromA = i % 3 != 0;
+                Timestamp time = Timestamp.valueOf(base.plusSeconds(i / 2));
+                addRow(insert, fromA ? USER_A : USER_B, fromA ? USER_B : USER_A, "消息" + i, time);
+                if (i % otherEvery == 0) {
+                    // 其他用户之间的消息
+                    addRow(insert, 3 + i % 50, i % 2 == 0 ? USER_A : 60 + i % 7, "其他" + i, time);
+                }
+                if (i % 10_000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        System.out.printf("生成 %d 条对话消息 + %d 条其他消息，耗时 %d ms%n%n",
+                CONVERSATION_MESSAGES, OTHER_MESSAGES, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void addRow(PreparedStatement insert, long senderId, long receiverId, String content, Timestamp time)
+            throws SQLException {
+        insert.setLong(1, senderId);
+        insert.setLong(2, receiverId);
+        insert.setString(3, content);
+        insert.setTimestamp(4, time);
+        insert.addBatch();
+    }
+
+    private static Object[] cursorAt(Connection connection, int offset) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT create_time, id FROM sys_message WHERE deleted = 0 AND "
+                + "((sender_id = ? AND receiver_id = ?) OR (sender_id = ? AND receiver_id = ?)) "
+                + "ORDER BY create_time DESC, id DESC LIMIT 1 OFFSET ?")) {
+            bindPair(statement);
+            statement.setInt(5, offset);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return new Object[]{rs.getTimestamp(1), rs.getLong(2)};
+            }
+        }
+    }
+
+    private static List<Long> offsetPage(Connection connection, int depth) throws SQLException {
+        try (PreparedStatement count = connection.prepareStatement(OFFSET_COUNT_SQL)) {
+            bindPair(count);
+            try (ResultSet rs = count.executeQuery()) {
+                rs.next();
+            }
+        }
+        try (PreparedStatement page = connection.prepareStatement(OFFSET_PAGE_SQL)) {
+            bindPair(page);
+            page.setInt(5, PAGE_SIZE);
+            page.setInt(6, (depth - 1) * PAGE_SIZE);
+            return ids(page);
+        }
+    }
+
+    private static List<Long> keysetPage(Connection connection, Object[] cursor) throws SQLException {
+        try (PreparedStatement page = connection.prepareStatement(KEYSET_SQL)) {
+            int index = 1;
+            for (long[] direction : new long[][]{{USER_A, USER_B}, {USER_B, USER_A}}) {
+                page.setLong(index++, direction[0]);
+                page.setLong(index++, direction[1]);
+                page.setTimestamp(index++, (Timestamp) cursor[0]);
+                page.setTimestamp(index++, (Timestamp) cursor[0]);
+                page.setLong(index++, (Long) cursor[1]);
+                page.setInt(index++, PAGE_SIZE);
+            }
+            page.setInt(index, PAGE_SIZE);
+            return ids(page);
+        }
+    }
+
+    private static void bindPair(PreparedStatement statement) throws SQLException {
+        statement.setLong(1, USER_A);
+        statement.setLong(2, USER_B);
+        statement.setLong(3, USER_B);
+        statement.setLong(4, USER_A);
+    }
+
+    private static List<Long> ids(PreparedStatement statement) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong("id"));
+            }
+        }
+        return ids;
+    }
+
+    private static double measure(PageQuery query) throws SQLException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            query.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / MEASURE_ROUNDS;
+    }
+
+    @FunctionalInterface
+    private interface PageQuery {
+        List<Long> run() throws SQLException;
+    }
+}
@@ -0,0 +1,68 @@
+package com.ankai;
+
+import com.ankai.utils.JwtUtil;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JWT验证性能对比
+ * 对比无缓存（每次完整HS512验证）与已验证Token缓存两种路径的单次耗时
+ * 直接运行main方法即可，无需启动Spring容器
+ */
+public class JwtVerifyBenchmark {
+
+    private static final int TOKEN_COUNT = 200;
+    private static final int WARMUP_ROUNDS = 50_000;
+    private static final int MEASURE_ROUNDS = 500_000;
+
+    public static void main(String[] args) {
+        System.out.println("========== JWT验证性能对比 ==========\n");
+
+        JwtUtil uncached = newJwtUtil(0);
+        JwtUtil cached = newJwtUtil(10_000);
+
+        // 模拟多个在线用户各自重复携带同一Token
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < TOKEN_COUNT; i++) {
+            tokens.add(uncached.generateToken((long) i, "user" + i, null));
+        }
+
+        run("无缓存", uncached, tokens);
+        run("有缓存", cached, tokens);
+
+        System.out.println("缓存统计: " + cached.getVerifyCacheStats());
+        System.out.println("\n========== 测试完成 ==========");
+    }
+
+    private static JwtUtil newJwtUtil(int cacheSize) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret",
+                "ankai-backend-jwt-secret-key-2024-very-long-secret-key-for-hs512-algorithm-must-be-at-least-512-bits");
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 900L);
+        ReflectionTestUtils.setField(jwtUtil, "verifyCacheMaxSize", cacheSize);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    private static void run(String name, JwtUtil jwtUtil, List<String> tokens) {
+        long blackhole = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            blackhole += jwtUtil.verify(tokens.get(i % tokens.size())).getUserId();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            blackhole += jwtUtil.verify(tokens.get(i % tokens.size())).getUserId();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("【" + name + "】");
+        System.out.printf("总耗时: %d ms, 单次: %.2f µs, 吞吐: %.0f ops/s (校验和 %d)%n%n",
+                elapsed / 1_000_000,
+                elapsed / 1000.0 / MEASURE_ROUNDS,
+                MEASURE_ROUNDS * 1e9 / elapsed,
+                blackhole);
+    }
+}
@@ -0,0 +1,111 @@
+package com.ankai;
+
+import com.ankai.security.PublicRoutes;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.List;
+
+/**
+ * 公开路由匹配性能对比
+ * 对比原startsWith/equals链、逐条AntPathMatcher与前缀树三种方式的单次匹配耗时
+ * 路径样本按真实流量比例构造：大部分为需要认证的业务接口，少量为公开接口
+ * 直接运行main方法即可，无需启动Spring容器
+ */
+public class PublicRoutesBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2_000_000;
+    private static final int MEASURE_ROUNDS = 10_000_000;
+
+    private static final String[] PATHS = {
+            "/message/sessions",
+            "/message/unread-count",
+            "/message/chat/128/read",
+            "/message/send",
+            "/sse/connect",
+            "/dashboard/stats",
+            "/dashboard/weather",
+            "/user/page",
+            "/role/list",
+            "/todo/list",
+            "/announcement/latest",
+            "/monitor/metrics",
+            "/auth/currentUser",
+            "/auth/login",
+            "/v3/api-docs/swagger-config",
+            "/favicon.ico"
+    };
+
+    public static void main(String[] args) {
+        System.out.println("========== 公开路由匹配性能对比 ==========\n");
+
+        PublicRoutes trie = new PublicRoutes();
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        List<String> patterns = PublicRoutes.PUBLIC_PATTERNS;
+
+        // 三种方式的结果必须一致
+        for (String path : PATHS) {
+            boolean expected = legacyMatches(path);
+            if (trie.matches(path) != expected || antMatches(antPathMatcher, patterns, path) != expected) {
+                throw new IllegalStateException("匹配结果不一致: " + path);
+            }
+        }
+
+        run("startsWith链", path -> legacyMatches(path));
+        run("AntPathMatcher", path -> antMatches(antPathMatcher, patterns, path));
+        run("前缀树", trie::matches);
+
+        System.out.println("========== 测试完成 ==========");
+    }
+
+    private static void run(String name, PathPredicate predicate) {
+        long blackhole = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            blackhole += predicate.test(PATHS[i % PATHS.length]) ? 1 : 0;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            blackhole += predicate.test(PATHS[i % PATHS.length]) ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("【" + name + "】");
+        System.out.printf("总耗时: %d ms, 单次: %.1f ns (校验和 %d)%n%n",
+                elapsed / 1_000_000,
+                (double) elapsed / MEASURE_ROUNDS,
+                blackhole);
+    }
+
+    private static boolean antMatches(AntPathMatcher matcher, List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (matcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 原JwtAuthenticationFilter.shouldSkipFilter的判断逻辑
+     */
+    private static boolean legacyMatches(String requestPath) {
+        return requestPath.startsWith("/auth/")
+                || requestPath.startsWith("/test/")
+                || requestPath.startsWith("/password/")
+                || requestPath.startsWith("/health/")
+                || requestPath.startsWith("/swagger-ui/")
+                || requestPath.startsWith("/v3/api-docs")
+                || requestPath.equals("/swagger-ui.html")
+                || requestPath.startsWith("/swagger-resources/")
+                || requestPath.startsWith("/webjars/")
+                || requestPath.startsWith("/css/")
+                || requestPath.startsWith("/js/")
+                || requestPath.startsWith("/images/")
+                || requestPath.equals("/favicon.ico")
+                || requestPath.equals("/error");
+    }
+
+    private interface PathPredicate {
+        boolean test(String path);
+    }
+}
@@ -0,0 +1,168 @@
+package com.ankai;
+
+import com.ankai.sse.SseConnection;
+import com.ankai.sse.SseDispatcher;
+import com.ankai.sse.SseEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE广播性能对比
+ * 模拟10000个在线连接，对比逐个连接序列化并顺序写出（旧实现）
+ * 与序列化一次、共享预编码帧并由发送线程池并行写出（新实现）两种路径
+ * 直接运行main方法即可，无需启动Spring容器
+ */
+public class SseBroadcastBenchmark {
+
+    private static final int CONNECTION_COUNT = 10_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURE_ROUNDS = 50;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 所有模拟连接累计写出的字节数
+     */
+    private static final LongAdder writtenBytes = new LongAdder();
+
+    /**
+     * 所有模拟连接累计写出的事件数
+     */
+    private static final LongAdder writtenEvents = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("========== SSE广播性能对比（" + CONNECTION_COUNT + "个连接） ==========\n");
+
+        Map<String, Object> notice = new LinkedHashMap<>();
+        notice.put("id", 1024);
+        notice.put("title", "系统维护通知");
+        notice.put("content", "系统将于今晚22:00至23:00进行维护，届时部分功能暂停使用，请提前保存工作内容。");
+        notice.put("type", 1);
+        notice.put("publishTime", "2024-01-01 12:00:00");
+
+        List<SseConnection> connections = new ArrayList<>(CONNECTION_COUNT);
+        for (int i = 0; i < CONNECTION_COUNT; i++) {
+            SseConnection connection = new SseConnection((long) i, new SimulatedEmitter(), 64);
+            connection.start(Collections.emptyList());
+            connections.add(connection);
+        }
+
+        runLegacy(connections, notice);
+
+        SseDispatcher dispatcher = newDispatcher(Runtime.getRuntime().availableProcessors());
+        runShared(dispatcher, connections, notice);
+        System.out.println("发送器统计: " + dispatcher.getStats());
+        dispatcher.destroy();
+
+        System.out.println("\n========== 测试完成 ==========");
+    }
+
+    private static SseDispatcher newDispatcher(int threads) {
+        SseDispatcher dispatcher = new SseDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "threads", threads);
+        ReflectionTestUtils.setField(dispatcher, "queueCapacity", 64);
+        ReflectionTestUtils.setField(dispatcher, "overflowPolicy", SseDispatcher.OverflowPolicy.DROP_OLDEST);
+        dispatcher.init();
+        return dispatcher;
+    }
+
+    /**
+     * 旧实现：每个连接各自序列化、构建事件并在调用线程上顺序写出
+     */
+    private static void runLegacy(List<SseConnection> connections, Object data) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            legacyBroadcast(connections, data);
+        }
+        reset();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            legacyBroadcast(connections, data);
+        }
+        report("逐连接序列化 + 顺序写出", System.nanoTime() - start);
+    }
+
+    private static void legacyBroadcast(List<SseConnection> connections, Object data) throws Exception {
+        for (SseConnection connection : connections) {
+            String json = objectMapper.writeValueAsString(data);
+            connection.getEmitter().send(SseEmitter.event().name("notice").data(json));
+        }
+    }
+
+    /**
+     * 新实现：序列化一次，所有连接共享同一事件（帧只编码一次），由发送线程池并行写出
+     */
+    private static void runShared(SseDispatcher dispatcher, List<SseConnection> connections, Object data)
+            throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sharedBroadcast(dispatcher, connections, data);
+        }
+        reset();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            sharedBroadcast(dispatcher, connections, data);
+        }
+        report("序列化一次 + 共享帧并行写出", System.nanoTime() - start);
+    }
+
+    private static void sharedBroadcast(SseDispatcher dispatcher, List<SseConnection> connections, Object data)
+            throws Exception {
+        long target = writtenEvents.sum() + connections.size();
+        SseEvent event = new SseEvent("notice", objectMapper.writeValueAsString(data));
+        for (SseConnection connection : connections) {
+            dispatcher.dispatch(connection, event);
+        }
+        // 等待所有连接写出完成，计入完整的广播耗时
+        while (writtenEvents.sum() < target) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void reset() {
+        writtenBytes.reset();
+        writtenEvents.reset();
+    }
+
+    private static void report(String name, long elapsed) {
+        long events = writtenEvents.sum();
+        System.out.println("【" + name + "】");
+        System.out.printf("总耗时: %d ms, 单次广播: %.2f ms, 单连接: %.0f ns, 吞吐: %.0f events/s, 写出 %d 字节%n%n",
+                elapsed / 1_000_000,
+                elapsed / 1e6 / MEASURE_ROUNDS,
+                (double) elapsed / events,
+                events * 1e9 / elapsed,
+                writtenBytes.sum());
+    }
+
+    /**
+     * 模拟连接：按消息转换器的方式把事件各部分转为字节写入缓冲区，不产生网络IO
+     */
+    private static final class SimulatedEmitter extends SseEmitter {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+        @Override
+        public synchronized void send(SseEventBuilder builder) {
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                Object data = part.getData();
+                byte[] bytes = data instanceof byte[] ? (byte[]) data
+                        : data.toString().getBytes(StandardCharsets.UTF_8);
+                buffer.write(bytes, 0, bytes.length);
+                writtenBytes.add(bytes.length);
+            }
+            // 模拟刷出到网络后清空缓冲区
+            buffer.reset();
+            writtenEvents.increment();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ankai.security;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.ankai.exception.BusinessException;
+import com.ankai.support.RedisTestSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 刷新令牌轮换脚本测试（需要Redis，见RedisTestSupport）
+ * 覆盖宽限期内的并发刷新与宽限期外重复使用旧令牌作废令牌族
+ */
+class RefreshTokenServiceRedisTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+
+    private RefreshTokenService refreshTokenService;
+
+    /**
+     * 测试中出现的令牌与令牌族，结束后删除对应的key
+     */
+    private final List<String> tokens = new ArrayList<>();
+    private final List<String> families = new ArrayList<>();
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestSupport.connect();
+        stringRedisTemplate = RedisTestSupport.template(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        refreshTokenService = new RefreshTokenService();
+        ReflectionTestUtils.setField(refreshTokenService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(refreshTokenService, "expiration", 600L);
+        ReflectionTestUtils.setField(refreshTokenService, "expirationRemember", 600L);
+        ReflectionTestUtils.setField(refreshTokenService, "reuseGraceSeconds", 30L);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        List<String> keys = new ArrayList<>();
+        for (String token : tokens) {
+            String hash = DigestUtil.sha256Hex(token);
+            keys.add("auth:refresh:" + hash);
+            keys.add("auth:refresh-grace:" + hash);
+        }
+        families.forEach(familyId -> keys.add("auth:refresh-family:" + familyId));
+        stringRedisTemplate.delete(keys);
+    }
+
+    @Test
+    void concurrentRefreshWithinGraceWindowReturnsTheSameSuccessor() {
+        String first = issue();
+
+        String second = rotate(first);
+        // 另一个标签页携带同一个旧令牌刷新
+        assertEquals(second, rotate(first));
+
+        // 新令牌正常轮换
+        String third = rotate(second);
+        assertNotEquals(second, third);
+        assertEquals(1L, refreshTokenService.getStats().get("graceReused"));
+        assertEquals(0L, refreshTokenService.getStats().get("reuseDetected"));
+    }
+
+    @Test
+    void reuseAfterSuccessorWasRotatedAgainRevokesTheFamily() {
+        String first = issue();
+        String second = rotate(first);
+        String third = rotate(second);
+
+        // 宽限期记录指向的新令牌已不是当前令牌：视为重复使用，整个令牌族作废
+        BusinessException reused = assertThrows(BusinessException.class, () -> rotate(first));
+        assertEquals(401, reused.getCode());
+        assertEquals(1L, refreshTokenService.getStats().get("reuseDetected"));
+
+        BusinessException revoked = assertThrows(BusinessException.class, () -> rotate(third));
+        assertEquals(401, revoked.getCode());
+    }
+
+    @Test
+    void reuseWithoutGraceWindowRevokesTheFamily() {
+        ReflectionTestUtils.setField(refreshTokenService, "reuseGraceSeconds", 0L);
+        String first = issue();
+        String second = rotate(first);
+
+        assertThrows(BusinessException.class, () -> rotate(first));
+        assertThrows(BusinessException.class, () -> rotate(second));
+        assertEquals(1L, refreshTokenService.getStats().get("reuseDetected"));
+    }
+
+    private String issue() {
+        RefreshTokenService.RefreshGrant grant = refreshTokenService.issue(7L, false);
+        tokens.add(grant.getToken());
+        families.add(grant.getFamilyId());
+        return grant.getToken();
+    }
+
+    private String rotate(String token) {
+        String next = refreshTokenService.rotate(token).getToken();
+        tokens.add(next);
+        return next;
+    }
+}
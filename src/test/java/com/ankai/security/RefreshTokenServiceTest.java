@@ -0,0 +1,130 @@
+package com.ankai.security;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.ankai.exception.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 刷新令牌轮换测试：宽限期内的并发刷新与旧令牌重复使用
+ * Redis为模拟对象，轮换脚本的返回值按各场景给出（脚本本身见RefreshTokenServiceRedisTest）
+ */
+class RefreshTokenServiceTest {
+
+    private static final String RECORD = "7:family:0";
+
+    private StringRedisTemplate stringRedisTemplate;
+    private RefreshTokenService refreshTokenService;
+
+    /**
+     * 每次调用轮换脚本的参数（ARGV）
+     */
+    private final List<Object[]> rotations = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenReturn(RECORD);
+
+        refreshTokenService = new RefreshTokenService();
+        ReflectionTestUtils.setField(refreshTokenService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(refreshTokenService, "expiration", 86400L);
+        ReflectionTestUtils.setField(refreshTokenService, "expirationRemember", 604800L);
+        ReflectionTestUtils.setField(refreshTokenService, "reuseGraceSeconds", 5L);
+    }
+
+    @Test
+    void rotationReturnsNewTokenAndSealsItForTheGraceWindow() {
+        scriptReturns("1");
+
+        RefreshTokenService.RefreshGrant grant = refreshTokenService.rotate("old-token");
+
+        assertNotEquals("old-token", grant.getToken());
+        assertEquals(7L, grant.getUserId());
+        assertEquals("family", grant.getFamilyId());
+        // 宽限期记录只保存新令牌的摘要和密文
+        Object[] argv = rotations.get(0);
+        assertEquals(DigestUtil.sha256Hex(grant.getToken()), argv[1]);
+        assertFalse(argv[4].toString().contains(grant.getToken()));
+        assertEquals("5000", argv[5]);
+    }
+
+    @Test
+    void concurrentRefreshWithinGraceWindowGetsTheSameSuccessor() {
+        scriptReturns("1");
+        RefreshTokenService.RefreshGrant first = refreshTokenService.rotate("old-token");
+
+        // 第二个请求仍携带旧令牌：脚本返回第一次轮换保存的密文
+        scriptReturns(rotations.get(0)[4].toString());
+        RefreshTokenService.RefreshGrant second = refreshTokenService.rotate("old-token");
+
+        assertEquals(first.getToken(), second.getToken());
+        assertEquals(1L, refreshTokenService.getStats().get("graceReused"));
+        assertEquals(0L, refreshTokenService.getStats().get("reuseDetected"));
+    }
+
+    @Test
+    void graceRecordCannotBeOpenedWithAnotherToken() {
+        scriptReturns("1");
+        refreshTokenService.rotate("old-token");
+
+        scriptReturns(rotations.get(0)[4].toString());
+        BusinessException error = assertThrows(BusinessException.class, () -> refreshTokenService.rotate("forged-token"));
+
+        assertEquals(401, error.getCode());
+        assertEquals(1L, refreshTokenService.getStats().get("rejected"));
+        assertEquals(0L, refreshTokenService.getStats().get("graceReused"));
+    }
+
+    @Test
+    void reuseOfRotatedTokenOutsideGraceWindowIsRejected() {
+        scriptReturns("-1");
+
+        BusinessException error = assertThrows(BusinessException.class, () -> refreshTokenService.rotate("old-token"));
+
+        assertEquals(401, error.getCode());
+        assertEquals(1L, refreshTokenService.getStats().get("reuseDetected"));
+        assertEquals(0L, refreshTokenService.getStats().get("graceReused"));
+    }
+
+    @Test
+    void unknownTokenIsRejectedWithoutRunningTheScript() {
+        when(stringRedisTemplate.opsForValue().get(anyString())).thenReturn(null);
+
+        BusinessException error = assertThrows(BusinessException.class, () -> refreshTokenService.rotate("unknown"));
+
+        assertEquals(401, error.getCode());
+        assertEquals(0, rotations.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void scriptReturns(String result) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            Object[] argv = new Object[arguments.length - 2];
+            System.arraycopy(arguments, 2, argv, 0, argv.length);
+            rotations.add(argv);
+            return result;
+        });
+    }
+}
@@ -0,0 +1,128 @@
+package com.ankai.service;
+
+import com.ankai.entity.Conversation;
+import com.ankai.mapper.ConversationMapper;
+import com.ankai.mapper.MessageMapper;
+import com.ankai.support.RedisTestSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 未读计数脚本测试（需要Redis，见RedisTestSupport）
+ * 覆盖减到负数时的归零处理，以及重建与并发更新的版本号检查
+ */
+class UnreadCounterServiceRedisTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+
+    private ConversationMapper conversationMapper;
+    private UnreadCounterService unreadCounterService;
+    private Long userId;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = RedisTestSupport.connect();
+        stringRedisTemplate = RedisTestSupport.template(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        conversationMapper = mock(ConversationMapper.class);
+        unreadCounterService = new UnreadCounterService();
+        ReflectionTestUtils.setField(unreadCounterService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(unreadCounterService, "conversationMapper", conversationMapper);
+        ReflectionTestUtils.setField(unreadCounterService, "messageMapper", mock(MessageMapper.class));
+        ReflectionTestUtils.setField(unreadCounterService, "ttlSeconds", 600L);
+        userId = ThreadLocalRandom.current().nextLong(1_000_000_000L, Long.MAX_VALUE);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        stringRedisTemplate.delete(List.of("msg:unread:" + userId, "msg:unread-gen:" + userId));
+    }
+
+    @Test
+    void decrementBelowZeroClampsConversationAndTotal() {
+        unreadCounterService.clearAll(userId);
+
+        unreadCounterService.decrement(userId, 5L);
+        assertEquals(0, unreadCounterService.getUnreadCount(userId));
+        assertNull(field("5"));
+
+        unreadCounterService.increment(userId, 5L);
+        unreadCounterService.increment(userId, 5L);
+        unreadCounterService.decrement(userId, 5L);
+        unreadCounterService.decrement(userId, 5L);
+        unreadCounterService.decrement(userId, 5L);
+        assertEquals(0, unreadCounterService.getUnreadCount(userId));
+        assertNull(field("5"));
+    }
+
+    @Test
+    void clampedDecrementDoesNotTakeFromOtherConversations() {
+        unreadCounterService.clearAll(userId);
+        unreadCounterService.increment(userId, 5L);
+        unreadCounterService.increment(userId, 6L);
+        unreadCounterService.increment(userId, 6L);
+
+        unreadCounterService.decrement(userId, 5L);
+        unreadCounterService.decrement(userId, 5L);
+
+        assertEquals(2, unreadCounterService.getUnreadCount(userId));
+        assertNull(field("5"));
+        assertEquals("2", field("6"));
+    }
+
+    @Test
+    void updateCommittedDuringRebuildIsNotOverwrittenByStaleCount() {
+        // 重建读取会话表期间提交了一条新消息：读取结果不含这条消息，不能写入缓存
+        when(conversationMapper.selectList(any())).thenAnswer(invocation -> {
+            unreadCounterService.increment(userId, 5L);
+            return List.of(conversation(5L, 1));
+        });
+        assertEquals(1, unreadCounterService.getUnreadCount(userId));
+        assertFalse(Boolean.TRUE.equals(stringRedisTemplate.hasKey("msg:unread:" + userId)));
+
+        // 下次查询重新重建
+        when(conversationMapper.selectList(any())).thenReturn(List.of(conversation(5L, 2)));
+        assertEquals(2, unreadCounterService.getUnreadCount(userId));
+        assertTrue(Boolean.TRUE.equals(stringRedisTemplate.hasKey("msg:unread:" + userId)));
+        assertEquals("2", field("5"));
+    }
+
+    private Object field(String name) {
+        return stringRedisTemplate.opsForHash().get("msg:unread:" + userId, name);
+    }
+
+    private static Conversation conversation(Long peerId, int unread) {
+        Conversation conversation = new Conversation();
+        conversation.setPeerId(peerId);
+        conversation.setUnreadCount(unread);
+        return conversation;
+    }
+}
@@ -0,0 +1,155 @@
+package com.ankai.service.impl;
+
+import com.ankai.entity.Conversation;
+import com.ankai.entity.Message;
+import com.ankai.mapper.ConversationMapper;
+import com.ankai.mapper.MessageMapper;
+import com.ankai.service.MessageService;
+import com.ankai.service.MessageStreamService;
+import com.ankai.service.UnreadCounterService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 写后模式落库测试
+ * 数据库与Redis均为模拟对象，通过事务拦截器调用，保证落库时可以创建保存点
+ */
+class MessageServiceImplPersistTest {
+
+    private MessageMapper messageMapper;
+    private ConversationMapper conversationMapper;
+    private MessageStreamService messageStreamService;
+    private UnreadCounterService unreadCounterService;
+    private TransactionStatus transactionStatus;
+    private MessageService messageService;
+
+    @BeforeEach
+    void setUp() {
+        messageMapper = mock(MessageMapper.class);
+        conversationMapper = mock(ConversationMapper.class);
+        messageStreamService = mock(MessageStreamService.class);
+        unreadCounterService = mock(UnreadCounterService.class);
+
+        MessageServiceImpl target = new MessageServiceImpl();
+        ReflectionTestUtils.setField(target, "baseMapper", messageMapper);
+        ReflectionTestUtils.setField(target, "conversationMapper", conversationMapper);
+        ReflectionTestUtils.setField(target, "messageStreamService", messageStreamService);
+        ReflectionTestUtils.setField(target, "unreadCounterService", unreadCounterService);
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        transactionStatus = mock(TransactionStatus.class);
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+        messageService = (MessageService) proxyFactory.getProxy();
+    }
+
+    @Test
+    void redeliveryOfPersistedBatchIsSkipped() {
+        List<Message> batch = List.of(message(1L, 10L, 20L), message(2L, 10L, 21L));
+        when(messageMapper.selectExistingIds(anyList())).thenReturn(List.of());
+        when(messageMapper.insertBatchWithId(anyList())).thenReturn(2);
+
+        assertEquals(2, messageService.persistPendingMessages(batch));
+
+        // 确认失败后同一批消息重复投递：已全部落库，不再插入，也不再更新会话和未读数
+        when(messageMapper.selectExistingIds(anyList())).thenReturn(List.of(1L, 2L));
+        assertEquals(0, messageService.persistPendingMessages(List.of(message(1L, 10L, 20L), message(2L, 10L, 21L))));
+
+        verify(messageMapper, times(1)).insertBatchWithId(anyList());
+        verify(conversationMapper, times(1)).upsertLastMessages(anyList());
+        verify(unreadCounterService, times(1)).incrementAll(List.of(20L, 21L), 10L);
+    }
+
+    @Test
+    void partiallyPersistedBatchOnlyCountsRowsInsertedByThisTransaction() {
+        // 接管的消息正被原消费者同时落库：多行插入只插入了一行，回滚到保存点后逐条插入
+        when(messageMapper.selectExistingIds(anyList())).thenReturn(List.of());
+        when(messageMapper.insertBatchWithId(anyList())).thenAnswer(invocation -> {
+            List<Message> rows = invocation.getArgument(0);
+            if (rows.size() > 1) {
+                return 1;
+            }
+            return rows.get(0).getId() == 2L ? 1 : 0;
+        });
+
+        assertEquals(1, messageService.persistPendingMessages(List.of(message(1L, 10L, 20L), message(2L, 10L, 21L))));
+
+        verify(transactionStatus).rollbackToSavepoint(any());
+        verify(unreadCounterService).incrementAll(List.of(21L), 10L);
+        verify(unreadCounterService, never()).incrementAll(List.of(20L), 10L);
+    }
+
+    @Test
+    void intentsRecordedBeforePersistAreWrittenWithTheRow() {
+        Message deleted = message(1L, 10L, 20L);
+        Message read = message(2L, 10L, 20L);
+        when(messageMapper.selectExistingIds(anyList())).thenReturn(List.of());
+        when(messageMapper.insertBatchWithId(anyList())).thenReturn(2);
+        when(messageStreamService.getIntents(List.of(1L, 2L))).thenReturn(Map.of(
+                1L, MessageStreamService.INTENT_DELETE,
+                2L, MessageStreamService.INTENT_READ));
+
+        assertEquals(2, messageService.persistPendingMessages(List.of(deleted, read)));
+
+        assertEquals(1, deleted.getDeleted());
+        assertEquals(1, read.getIsRead());
+        assertNotNull(read.getReadTime());
+        // 已删除的消息不进入会话，已读的消息不计入未读数
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Conversation>> conversations = ArgumentCaptor.forClass(List.class);
+        verify(conversationMapper).upsertLastMessages(conversations.capture());
+        assertTrue(conversations.getValue().stream().allMatch(conversation -> conversation.getLastMessageId() == 2L));
+        assertTrue(conversations.getValue().stream().allMatch(conversation -> conversation.getUnreadCount() == 0));
+        verify(unreadCounterService, never()).incrementAll(anyList(), anyLong());
+    }
+
+    @Test
+    void fullyPersistedRedeliveryDoesNotReadIntents() {
+        when(messageMapper.selectExistingIds(anyList())).thenReturn(List.of(5L));
+
+        assertEquals(0, messageService.persistPendingMessages(List.of(message(5L, 10L, 20L))));
+
+        verifyNoInteractions(messageStreamService, conversationMapper, unreadCounterService);
+    }
+
+    private static Message message(Long id, Long senderId, Long receiverId) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSenderId(senderId);
+        message.setSenderName("user" + senderId);
+        message.setReceiverId(receiverId);
+        message.setReceiverName("user" + receiverId);
+        message.setContent("hello");
+        message.setMessageType(2);
+        message.setIsRead(0);
+        message.setDeleted(0);
+        message.setCreateTime(LocalDateTime.now());
+        return message;
+    }
+}
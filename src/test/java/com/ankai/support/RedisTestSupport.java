@@ -0,0 +1,46 @@
+package com.ankai.support;
+
+import org.junit.jupiter.api.Assumptions;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * 测试用Redis连接
+ * 连接 -Dtest.redis.host / -Dtest.redis.port / -Dtest.redis.database 指定的Redis（默认 localhost:6379 第15号库），
+ * 不可用时跳过依赖Redis的测试；测试只读写各自生成的key，用完删除
+ */
+public final class RedisTestSupport {
+
+    private RedisTestSupport() {
+    }
+
+    /**
+     * 创建连接工厂，Redis不可用时跳过当前测试类
+     */
+    public static LettuceConnectionFactory connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("test.redis.host", "localhost"),
+                Integer.getInteger("test.redis.port", 6379));
+        configuration.setDatabase(Integer.getInteger("test.redis.database", 15));
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration,
+                LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(2)).build());
+        factory.afterPropertiesSet();
+        try {
+            factory.getConnection().close();
+        } catch (Exception e) {
+            factory.destroy();
+            Assumptions.abort("Redis不可用，跳过: " + e.getMessage());
+        }
+        return factory;
+    }
+
+    public static StringRedisTemplate template(LettuceConnectionFactory factory) {
+        StringRedisTemplate template = new StringRedisTemplate(factory);
+        template.afterPropertiesSet();
+        return template;
+    }
+}